@@ -0,0 +1,197 @@
+package com.mtgcre;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+
+/***
+ *  A BooleanQuery object is a node of a parsed query (see QueryParser) as:
+ *      term (the stemmed index of a leaf node, null for groups)
+ *      phrase (the exact text of a phrase leaf, found with the TrigramIndex, null for the other nodes)
+ *      phraseTerms (the stemmed indexes of a phrase's words, it is scored by them)
+ *      must (clauses every matching document has to match)
+ *      should (optional clauses, a group without must clauses has to match at least one of them)
+ *      mustNot (clauses no matching document may match, a group of only these matches every other document)
+ *  The matching documents are found on the doc id sorted posts: the must clauses are intersected starting from
+ *  the rarest one, skipping through the others, so a conjunction costs about the length of its rarest list.
+ */
+public class BooleanQuery {
+
+    public enum Occur {
+        MUST,
+        SHOULD,
+        MUST_NOT
+    }
+
+    private static final int[] NO_DOCS = new int[0];
+
+    private final String term;
+    private final String phrase;
+    private final ArrayList<String> phraseTerms;
+    private final ArrayList<BooleanQuery> must;
+    private final ArrayList<BooleanQuery> should;
+    private final ArrayList<BooleanQuery> mustNot;
+
+    private BooleanQuery(String _term, String _phrase, ArrayList<String> _phraseTerms) {
+        this.term = _term;
+        this.phrase = _phrase;
+        this.phraseTerms = _phraseTerms;
+        this.must = new ArrayList<>();
+        this.should = new ArrayList<>();
+        this.mustNot = new ArrayList<>();
+    }
+
+    public static BooleanQuery group() {
+        return new BooleanQuery(null, null, null);
+    }
+
+    public static BooleanQuery leaf(String term) {
+        return new BooleanQuery(term, null, null);
+    }
+
+    /***
+     * @param text exact text to be found (see TrigramIndex.find())
+     * @param terms stemmed indexes of the text's words, the matching documents are scored by them
+     */
+    public static BooleanQuery phrase(String text, ArrayList<String> terms) {
+        return new BooleanQuery(null, text, terms);
+    }
+
+    /***
+     *  Adds a clause to a group
+     * @param clause leaf or group
+     * @param occur how the clause has to match
+     */
+    public void add(BooleanQuery clause, Occur occur) {
+        if (occur == Occur.MUST) must.add(clause);
+        else if (occur == Occur.SHOULD) should.add(clause);
+        else mustNot.add(clause);
+    }
+
+    public boolean isEmpty() {
+        return term == null && phrase == null && must.isEmpty() && should.isEmpty() && mustNot.isEmpty();
+    }
+
+    /***
+     *  Collects the terms of the leaves which are not excluded, these are the terms the results are scored by
+     * @param terms list to add the terms to
+     */
+    public void collectPositiveTerms(ArrayList<String> terms) {
+        if (term != null) {
+            terms.add(term);
+            return;
+        }
+        if (phrase != null) {
+            terms.addAll(phraseTerms);
+            return;
+        }
+        for (BooleanQuery clause : must) clause.collectPositiveTerms(terms);
+        for (BooleanQuery clause : should) clause.collectPositiveTerms(terms);
+    }
+
+    /***
+     *  Finds all the documents matching the query
+     * @param index the index snapshot the search runs against
+     * @return ids of the matching documents in ascending order
+     */
+    public int[] matches(IndexSnapshot index) {
+        if (term != null) {
+            IndexData indexData = index.getInverseIndexes().get(term);
+            return indexData == null ? NO_DOCS : Arrays.copyOf(indexData.getDocIds(), indexData.getDocumentFrequency());
+        }
+        if (phrase != null) {
+            return index.getTrigrams().find(phrase);
+        }
+
+        PostingsCursor[] excluded = cursors(mustNot, index);
+        int[] result = new int[16];
+        int size = 0;
+
+        if (!must.isEmpty()) {
+            PostingsCursor[] required = cursors(must, index);
+            Arrays.sort(required, new Comparator<PostingsCursor>() {
+                @Override
+                public int compare(PostingsCursor a, PostingsCursor b) {
+                    return Integer.compare(a.cost(), b.cost());
+                }
+            });
+            PostingsCursor lead = required[0];
+            int doc = lead.next();
+            candidates:
+            while (doc != PostingsCursor.NO_MORE_DOCS) {
+                for (int i = 1; i < required.length; i++) {
+                    int other = required[i].advance(doc);
+                    if (other > doc) {
+                        doc = lead.advance(other);
+                        continue candidates;
+                    }
+                }
+                if (!isExcluded(doc, excluded)) {
+                    if (size == result.length) result = Arrays.copyOf(result, size * 2);
+                    result[size++] = doc;
+                }
+                doc = lead.next();
+            }
+        } else if (!should.isEmpty()) {
+            BitSet union = new BitSet();
+            for (PostingsCursor cursor : cursors(should, index)) {
+                for (int doc = cursor.next(); doc != PostingsCursor.NO_MORE_DOCS; doc = cursor.next()) {
+                    union.set(doc);
+                }
+            }
+            for (int doc = union.nextSetBit(0); doc >= 0; doc = union.nextSetBit(doc + 1)) {
+                if (!isExcluded(doc, excluded)) {
+                    if (size == result.length) result = Arrays.copyOf(result, size * 2);
+                    result[size++] = doc;
+                }
+            }
+        } else if (!mustNot.isEmpty()) {
+            /* only exclusions (eg. -planeswalker): all the documents but the excluded ones */
+            for (int doc = 0; doc < index.documentCount(); doc++) {
+                if (!isExcluded(doc, excluded)) {
+                    if (size == result.length) result = Arrays.copyOf(result, size * 2);
+                    result[size++] = doc;
+                }
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /***
+     *  Leaves are walked on their own posts (with skip pointers), groups and phrases are evaluated first
+     */
+    private static PostingsCursor[] cursors(ArrayList<BooleanQuery> clauses, IndexSnapshot index) {
+        PostingsCursor[] cursors = new PostingsCursor[clauses.size()];
+        for (int i = 0; i < cursors.length; i++) {
+            BooleanQuery clause = clauses.get(i);
+            IndexData indexData = clause.term == null ? null : index.getInverseIndexes().get(clause.term);
+            if (indexData != null) {
+                cursors[i] = indexData.cursor();
+            } else {
+                int[] docIds = clause.term == null ? clause.matches(index) : NO_DOCS;
+                cursors[i] = new PostingsCursor(docIds, docIds.length, PostingsCursor.createSkips(docIds, docIds.length));
+            }
+        }
+        return cursors;
+    }
+
+    /***
+     *  The documents are checked in ascending order, so the excluded cursors only move forward
+     */
+    private static boolean isExcluded(int doc, PostingsCursor[] excluded) {
+        for (PostingsCursor cursor : excluded) {
+            if (cursor.advance(doc) == doc) return true;
+        }
+        return false;
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public String getTerm() {
+        return term;
+    }
+    public String getPhrase() {
+        return phrase;
+    }
+}
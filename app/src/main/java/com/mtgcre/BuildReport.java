@@ -0,0 +1,242 @@
+package com.mtgcre;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/***
+ *  A BuildReport object describes how the engine's index was built, filled in by the SearchEngine constructor:
+ *      phases (wall time and allocated bytes of each step of the build, in the order they first ran)
+ *      counts (size of the corpus and the index: documents, dropped rules, distinct terms, posts...)
+ *      topTerms (the indexes with the most documents, the first candidates for the stoplist)
+ *  The time is measured with a single running clock: lap() charges everything since the previous lap to a phase,
+ *  so the phases add up to the whole build and a phase can be charged in several pieces. Two steps which alternate
+ *  too often for a lap each time (eg. the analysis of each rule between the parsing of two lines) are charged to
+ *  one phase, and the time measured for the other is then moved with transfer(). The allocated bytes are only known
+ *  if an AllocationCounter was given, as the VM has no portable way of measuring them.
+ */
+public class BuildReport {
+
+    /** Names of the counts */
+    public static final String STOPLIST_WORDS = "stoplist.words";
+    public static final String RULES = "rules";
+    public static final String RULES_DROPPED = "rules.dropped";
+    public static final String EXAMPLES = "examples";
+    public static final String DOCUMENTS = "documents";
+    public static final String TERMS = "terms";
+    public static final String TERM_OCCURRENCES = "terms.occurrences";
+    public static final String POSTS = "posts";
+    public static final String GLOSSARY_ENTRIES = "glossary.entries";
+    public static final String RULEBOOK_ENTRIES = "rulebook.entries";
+    public static final String TRIGRAM_POSTS = "trigrams.posts";
+    public static final String DENSE_COLUMNS = "dense.columns";
+
+    /** Number of indexes in topTerms */
+    public static final int TOP_TERMS = 20;
+
+    /***
+     *  Measures the bytes allocated by the current thread
+     */
+    public interface AllocationCounter {
+        /***
+         * @return bytes allocated by the calling thread so far, or a negative number if it is unknown
+         */
+        long allocatedBytes();
+    }
+
+    /***
+     *  A step of the build
+     */
+    public static class Phase {
+        private final String name;
+        private long nanos;
+        private long allocatedBytes;
+
+        public Phase(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+        public long getNanos() {
+            return nanos;
+        }
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+    }
+
+    /***
+     *  An index and the number of documents it is in
+     */
+    public static class TermFrequency {
+        private final String term;
+        private final int documentFrequency;
+
+        public TermFrequency(String term, int documentFrequency) {
+            this.term = term;
+            this.documentFrequency = documentFrequency;
+        }
+
+        public String getTerm() {
+            return term;
+        }
+        public int getDocumentFrequency() {
+            return documentFrequency;
+        }
+    }
+
+    private final AllocationCounter allocationCounter;
+    private final LinkedHashMap<String, Phase> phases;
+    private final LinkedHashMap<String, Long> counts;
+    private final ArrayList<TermFrequency> topTerms;
+    private long lapNanos;
+    private long lapAllocated;
+    private boolean allocationsKnown;
+
+    /***
+     * @param allocationCounter measures the allocations of the building thread, null if they cannot be measured
+     */
+    public BuildReport(AllocationCounter allocationCounter) {
+        this.allocationCounter = allocationCounter;
+        this.phases = new LinkedHashMap<>();
+        this.counts = new LinkedHashMap<>();
+        this.topTerms = new ArrayList<>();
+        this.lapNanos = System.nanoTime();
+        this.lapAllocated = allocated();
+        this.allocationsKnown = lapAllocated >= 0;
+    }
+
+    /***
+     *  Charges the time and the allocations since the previous lap (or the creation of the report) to a phase
+     * @param name name of the phase (eg. rules.parse)
+     */
+    public void lap(String name) {
+        long now = System.nanoTime();
+        long allocated = allocated();
+        Phase phase = phases.get(name);
+        if (phase == null) {
+            phase = new Phase(name);
+            phases.put(name, phase);
+        }
+        phase.nanos += now - lapNanos;
+        if (allocated >= 0 && lapAllocated >= 0) phase.allocatedBytes += allocated - lapAllocated;
+        else allocationsKnown = false;
+        lapNanos = now;
+        lapAllocated = allocated;
+    }
+
+    /***
+     *  Moves time from a phase to another one, the allocated bytes stay with the first one
+     * @param from name of the phase which was charged (eg. rules.parse)
+     * @param to name of the phase the time belongs to (eg. rules.analysis)
+     * @param nanos time to be moved
+     */
+    public void transfer(String from, String to, long nanos) {
+        Phase source = phases.get(from);
+        if (source == null) return;
+        Phase phase = phases.get(to);
+        if (phase == null) {
+            phase = new Phase(to);
+            phases.put(to, phase);
+        }
+        nanos = Math.min(nanos, source.nanos);
+        source.nanos -= nanos;
+        phase.nanos += nanos;
+    }
+
+    private long allocated() {
+        return allocationCounter == null ? -1 : allocationCounter.allocatedBytes();
+    }
+
+    public void setCount(String name, long count) {
+        counts.put(name, count);
+    }
+
+    /***
+     *  Keeps the indexes with the most documents, the ones with the same number of documents in term id order
+     * @param documentFrequencies number of documents of each index, by term id
+     * @param dictionary the dictionary of the indexes
+     */
+    public void setTopTerms(final int[] documentFrequencies, TermDictionary dictionary) {
+        topTerms.clear();
+        int[] top = new int[Math.min(TOP_TERMS, documentFrequencies.length)];
+        int size = 0;
+        for (int id = 0; id < documentFrequencies.length; id++) {
+            if (size == top.length && documentFrequencies[top[size - 1]] >= documentFrequencies[id]) continue;
+            int position = size == top.length ? size - 1 : size++;
+            while (position > 0 && documentFrequencies[top[position - 1]] < documentFrequencies[id]) {
+                top[position] = top[position - 1];
+                position--;
+            }
+            top[position] = id;
+        }
+        for (int i = 0; i < size; i++) {
+            topTerms.add(new TermFrequency(dictionary.term(top[i]), documentFrequencies[top[i]]));
+        }
+    }
+
+    /***
+     *  Formats the report as tables of the phases with a total line, the counts and the top terms
+     * @return multi-line string
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT, "%-20s %12s %16s%n", "phase", "ms", "allocated bytes"));
+        for (Phase phase : phases.values()) {
+            builder.append(String.format(Locale.ROOT, "%-20s %12.3f %16s%n", phase.getName(), phase.getNanos() / 1e6,
+                    allocationsKnown ? String.valueOf(phase.getAllocatedBytes()) : "-"));
+        }
+        builder.append(String.format(Locale.ROOT, "%-20s %12.3f %16s%n%n", "total", getTotalNanos() / 1e6,
+                allocationsKnown ? String.valueOf(getTotalAllocatedBytes()) : "-"));
+
+        builder.append(String.format(Locale.ROOT, "%-20s %12s%n", "count", "value"));
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            builder.append(String.format(Locale.ROOT, "%-20s %12d%n", count.getKey(), count.getValue()));
+        }
+
+        builder.append(String.format(Locale.ROOT, "%n%-20s %12s", "top term", "documents"));
+        for (TermFrequency term : topTerms) {
+            builder.append(String.format(Locale.ROOT, "%n%-20s %12d", term.getTerm(), term.getDocumentFrequency()));
+        }
+        return builder.toString();
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public ArrayList<Phase> getPhases() {
+        return new ArrayList<>(phases.values());
+    }
+    public Phase getPhase(String name) {
+        return phases.get(name);
+    }
+    public Map<String, Long> getCounts() {
+        return counts;
+    }
+    /***
+     * @return the count with the name, -1 if it was not set
+     */
+    public long getCount(String name) {
+        Long count = counts.get(name);
+        return count == null ? -1 : count;
+    }
+    public ArrayList<TermFrequency> getTopTerms() {
+        return topTerms;
+    }
+    public boolean isAllocationsKnown() {
+        return allocationsKnown;
+    }
+    public long getTotalNanos() {
+        long total = 0;
+        for (Phase phase : phases.values()) total += phase.getNanos();
+        return total;
+    }
+    public long getTotalAllocatedBytes() {
+        long total = 0;
+        for (Phase phase : phases.values()) total += phase.getAllocatedBytes();
+        return total;
+    }
+}
@@ -0,0 +1,35 @@
+package com.mtgcre;
+
+import java.util.concurrent.CancellationException;
+
+/***
+ *  A CancellationToken object lets the caller of a search stop it cooperatively. The engine checks the token
+ *  between the phases and regularly inside the collecting and scoring loops, and gives up the search with a
+ *  CancellationException once it is cancelled. Checking costs a single volatile read.
+ */
+public class CancellationToken {
+
+    /** A token that is never cancelled, for the searches which cannot be abandoned */
+    public static final CancellationToken NONE = new CancellationToken();
+
+    private volatile boolean cancelled;
+
+    /***
+     *  Asks the search using this token to stop
+     */
+    public void cancel() {
+        if (this != NONE) cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /***
+     *  Gives up the running search if the token was cancelled
+     * @throws CancellationException if cancel() was called
+     */
+    public void throwIfCancelled() {
+        if (cancelled) throw new CancellationException("search cancelled");
+    }
+}
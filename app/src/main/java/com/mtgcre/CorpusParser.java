@@ -0,0 +1,299 @@
+package com.mtgcre;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/***
+ *  A CorpusParser object walks one of the raw text resources (rules, glossary or stoplist) as UTF-8 bytes:
+ *      buffer (the whole resource, a memory mapped view of the file or the bytes read into the heap)
+ *      start (position of the first byte after the optional byte order mark)
+ *  It never decodes the text itself. Lines are found by a byte-level state machine and handed to a handler as
+ *  [start, end) byte offsets into the buffer, so the caller decides which spans become Strings (see decode()).
+ *  Line breaks are \n, \r or \r\n, and blank means only bytes up to 0x20, the same as readLine() and trim().
+ */
+public class CorpusParser {
+
+    /***
+     *  Receives the spans of a rules file
+     */
+    public interface RuleHandler {
+        /** A line which is a rule (or any other non-blank line shorter than 5 characters) */
+        void rule(int start, int end);
+        /** A line starting with "Example" right after a rule or another example of it */
+        void example(int start, int end);
+    }
+
+    /***
+     *  Receives the entries of a glossary file
+     */
+    public interface GlossaryHandler {
+        /***
+         * @param titleStart first byte of the title line
+         * @param titleEnd end of the title line
+         * @param textStart first byte of the definition lines, textEnd if the entry has none
+         * @param textEnd end of the last definition line, the line breaks between the lines included
+         */
+        void entry(int titleStart, int titleEnd, int textStart, int textEnd);
+    }
+
+    /***
+     *  Receives the non-blank lines of a file
+     */
+    public interface LineHandler {
+        void line(int start, int end);
+    }
+
+    private static final byte[] EXAMPLE = "Example".getBytes(StandardCharsets.US_ASCII);
+
+    /** States of the rules file */
+    private static final int SCANNING = 0;
+    private static final int AFTER_RULE = 1;
+
+    private final ByteBuffer buffer;
+    private final int start;
+
+    public CorpusParser(ByteBuffer buffer) {
+        this.buffer = buffer;
+        int position = buffer.position();
+        if (buffer.limit() - position >= 3 && buffer.get(position) == (byte) 0xEF
+                && buffer.get(position + 1) == (byte) 0xBB && buffer.get(position + 2) == (byte) 0xBF) {
+            position += 3;
+        }
+        this.start = position;
+    }
+
+    /***
+     *  Reads a stream into a heap buffer, for the resources which cannot be memory mapped
+     * @param stream stream of the resource, it is closed
+     * @return buffer of the whole resource
+     */
+    public static ByteBuffer read(InputStream stream) throws IOException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(stream.available(), 8192));
+            byte[] chunk = new byte[8192];
+            for (int read = stream.read(chunk); read != -1; read = stream.read(chunk)) {
+                bytes.write(chunk, 0, read);
+            }
+            return ByteBuffer.wrap(bytes.toByteArray());
+        } finally {
+            stream.close();
+        }
+    }
+
+    /***
+     *  Walks a rules file:
+     *      SCANNING: a non-blank line is a rule if its 5th character is a digit (702.4g), lines longer than 4
+     *      characters which are not rules are skipped (headers, contents), shorter ones are passed as rules too
+     *      AFTER_RULE: the lines starting with "Example" are the examples of the last rule, anything else goes
+     *      back to SCANNING
+     *  Rule numbers are ASCII, so a non-ASCII 5th character never counts as a digit.
+     * @param handler receives the rule and example lines
+     */
+    public void parseRules(RuleHandler handler) {
+        int state = SCANNING;
+        int limit = buffer.limit();
+        int lineStart = start;
+        while (lineStart < limit) {
+            int lineEnd = lineEnd(lineStart);
+            if (state == AFTER_RULE && startsWith(lineStart, lineEnd, EXAMPLE)) {
+                handler.example(lineStart, lineEnd);
+            } else {
+                state = SCANNING;
+                int length = trimmedLength(lineStart, lineEnd);
+                if (length != 0 && (length <= 4 || isDigitAt(lineStart, lineEnd, 4))) {
+                    handler.rule(lineStart, lineEnd);
+                    state = AFTER_RULE;
+                }
+            }
+            lineStart = nextLine(lineEnd);
+        }
+    }
+
+    /***
+     *  Walks a glossary file: a non-blank line after a blank one (or the start) is a title, the non-blank lines
+     *  following it are its definition
+     * @param handler receives the entries
+     */
+    public void parseGlossary(GlossaryHandler handler) {
+        int limit = buffer.limit();
+        int lineStart = start;
+        while (lineStart < limit) {
+            int lineEnd = lineEnd(lineStart);
+            if (trimmedLength(lineStart, lineEnd) == 0) {
+                lineStart = nextLine(lineEnd);
+                continue;
+            }
+            int titleStart = lineStart, titleEnd = lineEnd;
+            int textStart = -1, textEnd = -1;
+            lineStart = nextLine(lineEnd);
+            while (lineStart < limit) {
+                lineEnd = lineEnd(lineStart);
+                if (trimmedLength(lineStart, lineEnd) == 0) break;
+                if (textStart < 0) textStart = lineStart;
+                textEnd = lineEnd;
+                lineStart = nextLine(lineEnd);
+            }
+            if (textStart < 0) textStart = textEnd = titleEnd;
+            handler.entry(titleStart, titleEnd, textStart, textEnd);
+        }
+    }
+
+    /***
+     *  Walks every non-blank line of a file
+     * @param handler receives the lines, untrimmed
+     */
+    public void parseLines(LineHandler handler) {
+        parseLines(start, buffer.limit(), handler);
+    }
+
+    /***
+     *  Walks the non-blank lines of a part of the file
+     * @param from first byte of the part, the start of a line
+     * @param to end of the part
+     * @param handler receives the lines, untrimmed
+     */
+    public void parseLines(int from, int to, LineHandler handler) {
+        int limit = Math.min(to, buffer.limit());
+        int lineStart = Math.max(from, start);
+        while (lineStart < limit) {
+            int lineEnd = lineEnd(lineStart);
+            if (trimmedLength(lineStart, lineEnd) != 0) handler.line(lineStart, lineEnd);
+            lineStart = nextLine(lineEnd);
+        }
+    }
+
+    /***
+     *  Whether a line starts with "Example", as the examples of the rules do
+     */
+    public boolean isExample(int start, int end) {
+        return startsWith(start, end, EXAMPLE);
+    }
+
+    /***
+     *  Decodes a span of the buffer
+     * @param start first byte
+     * @param end end of the span
+     * @return the UTF-8 text of the span
+     */
+    public String decode(int start, int end) {
+        return decode(buffer, start, end);
+    }
+
+    /***
+     *  Decodes a span of a buffer without moving its position, straight from the backing array if it has one
+     */
+    public static String decode(ByteBuffer buffer, int start, int end) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[end - start];
+        ByteBuffer view = buffer.duplicate();
+        view.position(start);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /***
+     *  Decodes a span of several lines as one line: each line is preceded by a single space and the line breaks
+     *  are dropped (" line1 line2"), as the definitions of the glossary are shown
+     */
+    public String decodeJoined(int start, int end) {
+        return decodeJoined(buffer, start, end);
+    }
+
+    /***
+     *  Decodes a span of several lines of a buffer as one line, the same way as decodeJoined(int, int)
+     */
+    public static String decodeJoined(ByteBuffer buffer, int start, int end) {
+        if (start == end) return "";
+        String text = decode(buffer, start, end);
+        StringBuilder joined = new StringBuilder(text.length() + 8).append(' ');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\r' || c == '\n') {
+                if (c == '\r' && i + 1 < text.length() && text.charAt(i + 1) == '\n') i++;
+                joined.append(' ');
+            } else {
+                joined.append(c);
+            }
+        }
+        return joined.toString();
+    }
+
+    /***
+     *  Estimated retained bytes of the buffer on the heap (a mapped buffer lives outside of it), see FootprintReport
+     */
+    public long footprint() {
+        return FootprintReport.object(8) + (buffer.hasArray() ? FootprintReport.array(buffer.capacity(), 1) : 0);
+    }
+
+    /** LINE STATE MACHINE **/
+
+    private int lineEnd(int position) {
+        int limit = buffer.limit();
+        while (position < limit) {
+            byte b = buffer.get(position);
+            if (b == '\n' || b == '\r') break;
+            position++;
+        }
+        return position;
+    }
+
+    private int nextLine(int lineEnd) {
+        int limit = buffer.limit();
+        if (lineEnd < limit && buffer.get(lineEnd) == '\r') {
+            lineEnd++;
+            if (lineEnd < limit && buffer.get(lineEnd) == '\n') lineEnd++;
+            return lineEnd;
+        }
+        return lineEnd + 1;
+    }
+
+    /***
+     *  Number of UTF-16 characters of the line without its leading and trailing bytes up to 0x20, as
+     *  String.trim().length(): continuation bytes are not counted and 4 byte sequences count as 2 (a surrogate pair)
+     */
+    private int trimmedLength(int start, int end) {
+        while (start < end && (buffer.get(start) & 0xFF) <= 0x20) start++;
+        while (end > start && (buffer.get(end - 1) & 0xFF) <= 0x20) end--;
+        int length = 0;
+        for (int position = start; position < end; position++) {
+            int b = buffer.get(position) & 0xFF;
+            if ((b & 0xC0) != 0x80) length++;
+            if ((b & 0xF8) == 0xF0) length++;
+        }
+        return length;
+    }
+
+    /***
+     *  Whether the UTF-16 character at the index of the line is an ASCII digit, as line.charAt(index)
+     */
+    private boolean isDigitAt(int start, int end, int index) {
+        int characters = 0;
+        for (int position = start; position < end; position++) {
+            int b = buffer.get(position) & 0xFF;
+            if ((b & 0xC0) == 0x80) continue;
+            if (characters == index) return b >= '0' && b <= '9';
+            characters += (b & 0xF8) == 0xF0 ? 2 : 1;
+            if (characters > index) return false;
+        }
+        return false;
+    }
+
+    private boolean startsWith(int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(start + i) != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+}
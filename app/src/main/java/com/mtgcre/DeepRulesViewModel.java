@@ -0,0 +1,118 @@
+package com.mtgcre;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.ViewModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/***
+ *  Collects and styles the rows of the ShowDeepRules activity on a background thread, and keeps them while the
+ *  activity is recreated. It contains:
+ *      rows (the rows of the subsection of the clicked rule, then the header and the related rules)
+ *      title (title of the clicked rule the rows belong to)
+ */
+public class DeepRulesViewModel extends ViewModel {
+
+    private final MutableLiveData<List<RuleRow>> rows = new MutableLiveData<>();
+    private String title;
+
+    /***
+     *  Starts collecting the rows of a rule, unless they are already collected for it
+     * @param clickedTitle title of the clicked rule
+     * @param relatedHeader text of the header of the related rules
+     */
+    public void load(final String clickedTitle, final String relatedHeader) {
+        if (clickedTitle == null || clickedTitle.equals(title)) {
+            return;
+        }
+        this.title = clickedTitle;
+
+        final SearchEngine searchEngine = InitActivity.getSearchEngine();
+        SearchViewModel.SEARCH_EXECUTOR.execute(new Runnable() {
+            /***
+             *  From the documents, if it is in the same subcategory as the clicked rule, adds it to a list.
+             *  Adds the related rules of the clicked rule after them, under a header.
+             *  The texts come from the engine's DocumentStore: the related rules are decoded in the background while
+             *  the subsection is sorted. The subsection is sorted by its texts decoded once up front, not by asking
+             *  the store at every comparison.
+             */
+            @Override
+            public void run() {
+                ArrayList<Document> subsection = subsection(searchEngine, clickedTitle);
+                ArrayList<Document> relatedRules = searchEngine.relatedRules(clickedTitle);
+                searchEngine.getDocumentStore().prefetch(relatedRules);
+                final String[] texts = new String[subsection.size()];
+                Integer[] order = new Integer[subsection.size()];
+                for (int i = 0; i < texts.length; i++) {
+                    texts[i] = subsection.get(i).getText();
+                    order[i] = i;
+                }
+                Arrays.sort(order, new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer first, Integer second) {
+                        return texts[first].compareTo(texts[second]);
+                    }
+                });
+                ArrayList<Document> sorted = new ArrayList<>(order.length);
+                for (int i : order) sorted.add(subsection.get(i));
+                subsection = sorted;
+
+                RuleRowFormatter formatter = RuleRowFormatter.shared();
+                List<String> noHighlight = Collections.emptyList();
+                ArrayList<RuleRow> list = new ArrayList<>(formatter.format(searchEngine, subsection,
+                        RuleRowFormatter.GROUP_RESULTS, noHighlight));
+                if (relatedRules != null && !relatedRules.isEmpty()) {
+                    list.add(formatter.header(0, relatedHeader));
+                    list.addAll(formatter.format(searchEngine, relatedRules, RuleRowFormatter.GROUP_RELATED, noHighlight));
+                }
+                rows.postValue(list);
+            }
+        });
+    }
+
+    /***
+     *  Finds the documents in the same subsection as a rule (702.19b: 702.19., 702.19a ... 702.19g), in no order
+     * @param searchEngine the engine of the documents
+     * @param clickedTitle title of the rule
+     * @return list of the documents, the rule included
+     */
+    static ArrayList<Document> subsection(SearchEngine searchEngine, String clickedTitle) {
+        String clickedRule = getOnlyRuleNumber(clickedTitle);
+        ArrayList<Document> subsection = new ArrayList<>();
+        for (Document document : searchEngine.getDocuments().values()) {
+            if (getOnlyRuleNumber(document.getTitle()).equals(clickedRule)) {
+                subsection.add(document);
+            }
+        }
+        return subsection;
+    }
+
+    /***
+     *  Gets only the numbers (section,subsection) from a rule title (paragraph name)
+     * @param str A rule's paragraph's title as a string
+     * @return a string that contains only the numbers
+     */
+    static String getOnlyRuleNumber(String str){
+        StringBuilder temp = new StringBuilder();
+        for (int i = 0; i < str.length(); i++) {
+            if (Character.isLetter(str.charAt(i))){
+                break;
+            }else{
+                temp.append(str.charAt(i));
+            }
+        }
+        temp = new StringBuilder(temp.toString().replaceAll("\\.", ""));
+        return temp.toString().trim();
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public LiveData<List<RuleRow>> getRows() {
+        return rows;
+    }
+}
@@ -0,0 +1,108 @@
+package com.mtgcre;
+
+import java.util.Arrays;
+
+/***
+ *  A DenseColumns object stores the weights of the most frequent indexes (player, abil, card ...) for every doc id,
+ *  so the weight of such an index in a document is a single array read instead of a search in its posts:
+ *      termIds (term ids of the indexes with a column, in ascending order)
+ *      weights (the w_ij of every column, column c is the documentCount values from c * documentCount, 0 where
+ *      the document does not have the index)
+ *      presence (1 where the document has the index and 0 where it does not, with the same layout)
+ *  An index gets a column when it is in at least 1 / DENSE_FRACTION of the documents, at most MAX_COLUMNS of them
+ *  with the most documents, the rarer ones are only looked up in their posts. The boolean queries score their
+ *  matching documents with the columns. The posts of the dense indexes are kept as well: walking them is still
+ *  cheaper than a pass over every doc id for collecting the candidates of a plain question, as they are in at
+ *  most half of the rulebook's documents.
+ */
+public class DenseColumns {
+
+    /** An index needs to be in at least this fraction of the documents to get a column */
+    public static final int DENSE_FRACTION = 8;
+    public static final int MAX_COLUMNS = 32;
+
+    private final int documentCount;
+    private final int[] termIds;
+    private final float[] weights;
+    private final byte[] presence;
+
+    private DenseColumns(int documentCount, int[] termIds, float[] weights, byte[] presence) {
+        this.documentCount = documentCount;
+        this.termIds = termIds;
+        this.weights = weights;
+        this.presence = presence;
+    }
+
+    /***
+     *  Picks the dense indexes and scatters their weights into the columns
+     * @param inverseIndexesById the posts in term id order, with their weights already calculated
+     * @param documentCount number of documents
+     * @return DenseColumns object, without columns if no index is frequent enough
+     */
+    public static DenseColumns build(IndexData[] inverseIndexesById, int documentCount) {
+        int threshold = Math.max(1, documentCount / DENSE_FRACTION);
+        /* the most frequent candidates first, the ones with the same number of documents in term id order */
+        long[] candidates = new long[inverseIndexesById.length];
+        int count = 0;
+        for (int termId = 0; termId < inverseIndexesById.length; termId++) {
+            int documentFrequency = inverseIndexesById[termId].getDocumentFrequency();
+            if (documentFrequency >= threshold) candidates[count++] = ((long) (Integer.MAX_VALUE - documentFrequency) << 32) | termId;
+        }
+        Arrays.sort(candidates, 0, count);
+        int[] termIds = new int[Math.min(count, MAX_COLUMNS)];
+        for (int c = 0; c < termIds.length; c++) termIds[c] = (int) candidates[c];
+        Arrays.sort(termIds);
+
+        float[] weights = new float[termIds.length * documentCount];
+        byte[] presence = new byte[termIds.length * documentCount];
+        for (int c = 0; c < termIds.length; c++) {
+            IndexData indexData = inverseIndexesById[termIds[c]];
+            int[] docIds = indexData.getDocIds();
+            float[] w_ij = indexData.getW_ij();
+            for (int post = 0; post < indexData.getDocumentFrequency(); post++) {
+                weights[c * documentCount + docIds[post]] = w_ij[post];
+                presence[c * documentCount + docIds[post]] = 1;
+            }
+        }
+        return new DenseColumns(documentCount, termIds, weights, presence);
+    }
+
+    /***
+     * @param termId term id of an index
+     * @return the column of the index, -1 if it is only stored as posts
+     */
+    public int column(int termId) {
+        int column = Arrays.binarySearch(termIds, termId);
+        return column >= 0 ? column : -1;
+    }
+
+    /***
+     * @return the position of a column's first value in weights and presence
+     */
+    public int offset(int column) {
+        return column * documentCount;
+    }
+
+    /***
+     *  Estimated retained bytes of the columns, see FootprintReport
+     */
+    public long footprint() {
+        return FootprintReport.object(4) + FootprintReport.array(termIds.length, 4)
+                + FootprintReport.array(weights.length, 4) + FootprintReport.array(presence.length, 1);
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public int getColumnCount() {
+        return termIds.length;
+    }
+    public int getTermId(int column) {
+        return termIds[column];
+    }
+    public float[] getWeights() {
+        return weights;
+    }
+    public byte[] getPresence() {
+        return presence;
+    }
+}
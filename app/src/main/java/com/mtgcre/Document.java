@@ -3,21 +3,46 @@ import java.util.ArrayList;
 
 /***
  *  A document object contains a rule's:
+ *      id (doc id, the position of the rule among the engine's documents in rulebook order)
  *      title (paragraph id, eg. 702.4g)
- *      text
- *      indexes (indexes of the document's text)
- *      examples (any eample that belongs to a rule in a list)
+ *      store, textPiece (the DocumentStore the text comes from and the rule's line in its rules arena, the text is
+ *      fetched through the store every time it is asked for)
+ *      indexes (indexes of the document's text, only kept until the engine has built its index)
+ *      termIds (forward index: ids of the distinct indexes in the engine's TermDictionary, in ascending order)
+ *      termFrequencies (forward index: occurrences of the term with the same position in termIds)
+ *      (the forward index can be dropped under memory pressure, the engine builds it again from the posts)
+ *      norm (sum of the squared weights of all the index occurrences, the document side of the cosine measure)
+ *      exampleCount (any eample that belongs to a rule in a list, they are the pieces right after textPiece)
+ *  A glossary entry shown among the results is a document without a store, which holds its text as a String.
  */
 public class Document {
 
+    private int id;
     private String title;
     private final String text;
     private ArrayList<String> indexes;
-    private final ArrayList<String> examples;
+    private volatile int[] termIds;
+    private volatile int[] termFrequencies;
+    private double norm;
+    private final DocumentStore store;
+    private final int textPiece;
+    private int exampleCount;
 
     public Document(String _text) {
         this.text = _text;
-        this.examples = new ArrayList<>();
+        this.store = null;
+        this.textPiece = -1;
+    }
+
+    /***
+     *  A document whose text is in a DocumentStore
+     * @param store store of the rules file
+     * @param textPiece id of the rule's line in the store's rules arena, its examples have to be added right after it
+     */
+    public Document(DocumentStore store, int textPiece) {
+        this.text = null;
+        this.store = store;
+        this.textPiece = textPiece;
     }
 
     /***
@@ -35,14 +60,23 @@ public class Document {
 
     /** GETTERS & SETTERS **/
 
+    public int getId() {
+        return id;
+    }
+    public void setId(int id) {
+        this.id = id;
+    }
     public String getTitle() {
         return title;
     }
     public void setTitle(String title) {
         this.title = title;
     }
+    /***
+     * @return the text of the rule, from the store
+     */
     public String getText() {
-        return text;
+        return store == null ? text : store.getText(id);
     }
     public ArrayList<String> getIndexes() {
         return indexes;
@@ -50,7 +84,41 @@ public class Document {
     public void setIndexes(ArrayList<String> indexes) {
         this.indexes = indexes;
     }
+    public int[] getTermIds() {
+        return termIds;
+    }
+    public int[] getTermFrequencies() {
+        return termFrequencies;
+    }
+    public void setForwardIndex(int[] termIds, int[] termFrequencies) {
+        this.termIds = termIds;
+        this.termFrequencies = termFrequencies;
+    }
+    public double getNorm() {
+        return norm;
+    }
+    public void setNorm(double norm) {
+        this.norm = norm;
+    }
+    /***
+     * @return the examples of the rule, from the store
+     */
     public ArrayList<String> getExamples() {
-        return examples;
+        return store == null ? new ArrayList<String>() : store.getExamples(id);
+    }
+    public DocumentStore getStore() {
+        return store;
+    }
+    public int getTextPiece() {
+        return textPiece;
+    }
+    public int getExampleCount() {
+        return exampleCount;
+    }
+    /***
+     *  Counts an example of the rule, its line has to be the next piece added to the arena
+     */
+    public void addExample() {
+        exampleCount++;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,266 @@
+package com.mtgcre;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/***
+ *  A DocumentStore object is where the shown text of the documents comes from: the rules with their examples and
+ *  the definitions of the glossary entries. It contains:
+ *      rules (the TextArena of the rules file, the memory mapped raw resource, so the text stays in the file)
+ *      glossary (the TextArena of the glossary file, an entry is its title piece and the definition after it)
+ *      pieceOffsets (doc id -> first piece of the document in rules, the pieces of doc d are pieceOffsets[d] to
+ *      pieceOffsets[d + 1]: the rule's line then its examples)
+ *      decoded (the last CACHE_SIZE decoded documents and definitions, least recently used first)
+ *      prefetcher (a background thread decoding the documents a list is about to show, see prefetch())
+ *      pending (the latest list waiting for the prefetcher, a newer list replaces it)
+ *      hits, misses (lookup counters of decoded)
+ *  A list never shows more than a few pages of documents at once, so only those stay decoded on the heap, the rest
+ *  is decoded again from the file when it is asked for. It is safe to use from any number of threads at once.
+ */
+public class DocumentStore {
+
+    /** About three pages of results */
+    public static final int CACHE_SIZE = 64;
+
+    /***
+     *  A decoded document: the text of a rule and its examples, or the definition of a glossary entry
+     */
+    private static class Decoded {
+        private final String text;
+        private final String[] examples;
+
+        Decoded(String text, String[] examples) {
+            this.text = text;
+            this.examples = examples;
+        }
+    }
+
+    private static final String[] NO_EXAMPLES = new String[0];
+
+    private static final ExecutorService PREFETCHER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "document-prefetch");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    private final TextArena rules;
+    private final TextArena glossary;
+    private int[] pieceOffsets;
+    private final LinkedHashMap<Integer, Decoded> decoded;
+    private final AtomicReference<List<Document>> pending;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    /***
+     * @param rules arena of the rules file, the documents' pieces are added to it while the rules are parsed
+     * @param glossary arena of the glossary file
+     */
+    public DocumentStore(TextArena rules, TextArena glossary) {
+        this.rules = rules;
+        this.glossary = glossary;
+        this.pieceOffsets = new int[1];
+        this.decoded = new LinkedHashMap<Integer, Decoded>(2 * CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Decoded> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+        this.pending = new AtomicReference<>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /***
+     *  Builds the doc id offset table, once the rules are parsed and before the engine is published
+     * @param documentsById documents in doc id order, their pieces have to be consecutive in the same order
+     */
+    public void index(List<Document> documentsById) {
+        int[] offsets = new int[documentsById.size() + 1];
+        for (int doc = 0; doc < documentsById.size(); doc++) {
+            offsets[doc] = documentsById.get(doc).getTextPiece();
+        }
+        Document last = documentsById.isEmpty() ? null : documentsById.get(documentsById.size() - 1);
+        offsets[documentsById.size()] = last == null ? 0 : last.getTextPiece() + 1 + last.getExampleCount();
+        this.pieceOffsets = offsets;
+    }
+
+    /***
+     * @param doc doc id
+     * @return the text of the rule
+     */
+    public String getText(int doc) {
+        return rule(doc).text;
+    }
+
+    /***
+     * @param doc doc id
+     * @return the examples of the rule, a new list
+     */
+    public ArrayList<String> getExamples(int doc) {
+        return new ArrayList<>(Arrays.asList(rule(doc).examples));
+    }
+
+    /***
+     * @param titlePiece id of the title of a glossary entry in the glossary arena
+     * @return the definition of the entry as one line, see CorpusParser.decodeJoined()
+     */
+    public String getDefinition(int titlePiece) {
+        /* the keys of the definitions are negative, so they never meet the doc ids */
+        Integer key = -1 - titlePiece;
+        Decoded entry = cached(key);
+        if (entry == null) {
+            entry = new Decoded(glossary.decodeJoined(titlePiece + 1), NO_EXAMPLES);
+            cache(key, entry);
+        }
+        return entry.text;
+    }
+
+    /***
+     *  Decodes the rules of a list on the background thread, so they are already decoded when the list is shown.
+     *  The documents which are not rules of this store (glossary entries) and the decoded ones are skipped. Only
+     *  the latest list is waiting at a time: a list which is replaced before the prefetcher gets to it is not shown
+     *  anymore, so it is not decoded either.
+     * @param documents documents about to be shown, the list must not be changed afterwards
+     */
+    public void prefetch(List<Document> documents) {
+        if (documents == null || documents.isEmpty()) return;
+        if (pending.getAndSet(documents) != null) return;
+        PREFETCHER.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<Document> page = pending.getAndSet(null);
+                if (page == null) return;
+                for (int i = 0; i < Math.min(page.size(), CACHE_SIZE); i++) {
+                    Document document = page.get(i);
+                    if (document.getStore() == DocumentStore.this) {
+                        Integer key = document.getId();
+                        boolean present;
+                        synchronized (decoded) {
+                            present = decoded.containsKey(key);
+                        }
+                        if (!present) cache(key, decode(document.getId()));
+                    }
+                }
+            }
+        });
+    }
+
+    /***
+     *  Drops every decoded document, to give back memory when the system runs low on it
+     */
+    public void clear() {
+        synchronized (decoded) {
+            decoded.clear();
+        }
+    }
+
+    private Decoded rule(int doc) {
+        Integer key = doc;
+        Decoded entry = cached(key);
+        if (entry == null) {
+            entry = decode(doc);
+            cache(key, entry);
+        }
+        return entry;
+    }
+
+    /***
+     *  Decodes a rule outside of the lock, so a slow decode never holds up the other lookups
+     */
+    private Decoded decode(int doc) {
+        int first = pieceOffsets[doc];
+        int end = pieceOffsets[doc + 1];
+        String[] examples = end - first > 1 ? new String[end - first - 1] : NO_EXAMPLES;
+        for (int piece = first + 1; piece < end; piece++) {
+            examples[piece - first - 1] = rules.decode(piece);
+        }
+        return new Decoded(rules.decode(first), examples);
+    }
+
+    private Decoded cached(Integer key) {
+        Decoded entry;
+        synchronized (decoded) {
+            entry = decoded.get(key);
+        }
+        if (entry != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return entry;
+    }
+
+    private void cache(Integer key, Decoded entry) {
+        synchronized (decoded) {
+            decoded.put(key, entry);
+        }
+    }
+
+    /***
+     * @param doc doc id
+     * @return id of the rule's line in the rules arena
+     */
+    public int firstPiece(int doc) {
+        return pieceOffsets[doc];
+    }
+
+    /***
+     * @param doc doc id
+     * @return end of the document's pieces in the rules arena, the piece of the next document
+     */
+    public int endPiece(int doc) {
+        return pieceOffsets[doc + 1];
+    }
+
+    /***
+     *  Estimated retained bytes of the offset table and the decoded documents, see FootprintReport (the arenas
+     *  are counted by the engine)
+     */
+    public long footprint() {
+        long bytes = FootprintReport.object(7) + FootprintReport.array(pieceOffsets.length, 4);
+        synchronized (decoded) {
+            bytes += FootprintReport.hashMap(decoded) + decoded.size() * FootprintReport.object(2);
+            for (Map.Entry<Integer, Decoded> entry : decoded.entrySet()) {
+                bytes += FootprintReport.boxed(entry.getKey()) + FootprintReport.string(entry.getValue().text)
+                        + FootprintReport.array(entry.getValue().examples.length, FootprintReport.REFERENCE)
+                        + FootprintReport.strings(Arrays.asList(entry.getValue().examples));
+            }
+        }
+        return bytes;
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public TextArena getRules() {
+        return rules;
+    }
+    public TextArena getGlossary() {
+        return glossary;
+    }
+    public int getDocumentCount() {
+        return pieceOffsets.length - 1;
+    }
+    public int getDecodedCount() {
+        synchronized (decoded) {
+            return decoded.size();
+        }
+    }
+    public long getHitCount() {
+        return hits.sum();
+    }
+    public long getMissCount() {
+        return misses.sum();
+    }
+}
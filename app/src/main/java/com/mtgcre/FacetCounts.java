@@ -0,0 +1,129 @@
+package com.mtgcre;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/***
+ *  A FacetCounts object counts the documents matching a search by the parts of the rulebook they are in:
+ *      shards (the section and chapter table of the index the search ran against, see SectionShards)
+ *      chapterCounts (matching documents of each chapter, by the chapter's slot in the table)
+ *      total (number of matching documents)
+ *  The engine counts a document while it collects it, looking its chapter up by doc id, so no extra pass is made
+ *  over the postings or the results. The counts are of every document matching the question, not only of the
+ *  ranked answers, and a document only found by the latent measure is not counted.
+ */
+public class FacetCounts {
+
+    /***
+     *  A part of the rulebook and its number of matching documents
+     */
+    public static class Facet {
+        private final int part;
+        private final int count;
+
+        public Facet(int part, int count) {
+            this.part = part;
+            this.count = count;
+        }
+
+        /***
+         * @return the in: restriction of the part (eg. in:702), which searches only it
+         */
+        public String getRestriction() {
+            return "in:" + part;
+        }
+        public int getPart() {
+            return part;
+        }
+        public int getCount() {
+            return count;
+        }
+    }
+
+    private static final Comparator<Facet> BY_COUNT = new Comparator<Facet>() {
+        @Override
+        public int compare(Facet a, Facet b) {
+            return a.count != b.count ? Integer.compare(b.count, a.count) : Integer.compare(a.part, b.part);
+        }
+    };
+
+    private SectionShards shards;
+    private int[] chapterCounts;
+    private int total;
+
+    /***
+     *  Clears the counts for a new search
+     * @param shards the table of the index the search runs against
+     */
+    public void start(SectionShards shards) {
+        this.shards = shards;
+        if (chapterCounts == null || chapterCounts.length != shards.getChapterCount()) {
+            chapterCounts = new int[shards.getChapterCount()];
+        } else {
+            Arrays.fill(chapterCounts, 0);
+        }
+        total = 0;
+    }
+
+    /***
+     * @return the counts the engine adds to, by chapter slot
+     */
+    int[] getChapterCounts() {
+        return chapterCounts;
+    }
+
+    void setTotal(int total) {
+        this.total = total;
+    }
+
+    /***
+     * @return the chapters with matching documents (702), most matches first
+     */
+    public List<Facet> getChapters() {
+        ArrayList<Facet> chapters = new ArrayList<>();
+        for (int slot = 0; chapterCounts != null && slot < chapterCounts.length; slot++) {
+            if (chapterCounts[slot] > 0) chapters.add(new Facet(shards.getChapter(slot), chapterCounts[slot]));
+        }
+        Collections.sort(chapters, BY_COUNT);
+        return chapters;
+    }
+
+    /***
+     * @return the sections with matching documents (7), most matches first
+     */
+    public List<Facet> getSections() {
+        int[] sectionCounts = new int[10];
+        for (int slot = 0; chapterCounts != null && slot < chapterCounts.length; slot++) {
+            sectionCounts[SectionShards.sectionOfChapter(shards.getChapter(slot))] += chapterCounts[slot];
+        }
+        ArrayList<Facet> sections = new ArrayList<>();
+        for (int section = 0; section < sectionCounts.length; section++) {
+            if (sectionCounts[section] > 0) sections.add(new Facet(section, sectionCounts[section]));
+        }
+        Collections.sort(sections, BY_COUNT);
+        return sections;
+    }
+
+    /***
+     *  Formats the chapters as "702: 14 hits, 509: 3 hits"
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Facet facet : getChapters()) {
+            if (builder.length() > 0) builder.append(", ");
+            builder.append(String.format(Locale.ROOT, "%d: %d %s", facet.getPart(), facet.getCount(), facet.getCount() == 1 ? "hit" : "hits"));
+        }
+        return builder.toString();
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public int getTotal() {
+        return total;
+    }
+}
@@ -0,0 +1,158 @@
+package com.mtgcre;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/***
+ *  A FootprintReport object contains the estimated retained heap of the engine's data structures as:
+ *      items (one line per structure: name, number of entries, estimated bytes)
+ *
+ *  The estimates use a 64 bit VM layout with compressed references (12 byte object headers, 4 byte references,
+ *  16 byte array headers, 8 byte alignment) and count strings as UTF-16. They are meant for tracking regressions
+ *  between versions, not for matching a heap dump byte by byte.
+ */
+public class FootprintReport {
+
+    public static final int OBJECT_HEADER = 12;
+    public static final int REFERENCE = 4;
+    public static final int ARRAY_HEADER = 16;
+
+    /***
+     *  A single line of the report
+     */
+    public static class Item {
+        private final String name;
+        private final long entries;
+        private final long bytes;
+
+        public Item(String name, long entries, long bytes) {
+            this.name = name;
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+        public long getEntries() {
+            return entries;
+        }
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    private final ArrayList<Item> items;
+
+    public FootprintReport() {
+        this.items = new ArrayList<>();
+    }
+
+    /***
+     *  Adds a structure to the report
+     * @param name name of the structure (eg. documents.text)
+     * @param entries number of entries in it
+     * @param bytes estimated retained bytes
+     */
+    public void add(String name, long entries, long bytes) {
+        items.add(new Item(name, entries, bytes));
+    }
+
+    /***
+     *  Formats the report as a table with a total line
+     * @return multi-line string
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT, "%-28s %10s %14s%n", "structure", "entries", "bytes"));
+        for (Item item : items) {
+            builder.append(String.format(Locale.ROOT, "%-28s %10d %14d%n", item.getName(), item.getEntries(), item.getBytes()));
+        }
+        builder.append(String.format(Locale.ROOT, "%-28s %10s %14d (%.2f MB)", "total", "", getTotalBytes(), getTotalBytes() / (1024.0 * 1024.0)));
+        return builder.toString();
+    }
+
+    /** SIZE ESTIMATES **/
+
+    public static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /***
+     * @param fields number of reference or int sized fields
+     * @return size of a plain object with that many fields
+     */
+    public static long object(int fields) {
+        return align(OBJECT_HEADER + (long) fields * 4);
+    }
+
+    public static long array(long length, int elementSize) {
+        return align(ARRAY_HEADER + length * elementSize);
+    }
+
+    /***
+     *  String object (hash, value reference) and its UTF-16 character array
+     */
+    public static long string(String string) {
+        return string == null ? 0 : object(2) + array(string.length(), 2);
+    }
+
+    public static long strings(Collection<String> strings) {
+        long bytes = 0;
+        for (String string : strings) bytes += string(string);
+        return bytes;
+    }
+
+    /***
+     *  ArrayList object and its backing array, without the elements
+     */
+    public static long arrayList(Collection<?> list) {
+        return object(3) + array(list.size(), REFERENCE);
+    }
+
+    /***
+     *  HashMap object, its table and one node per entry, without the keys and values
+     */
+    public static long hashMap(Map<?, ?> map) {
+        return hashTable(map.size());
+    }
+
+    /***
+     *  HashSet object and its backing HashMap, without the elements
+     */
+    public static long hashSet(Set<?> set) {
+        return object(1) + hashTable(set.size());
+    }
+
+    private static long hashTable(int size) {
+        long capacity = 16;
+        while (capacity * 3 / 4 < size) capacity <<= 1;
+        return object(8) + array(capacity, REFERENCE) + (long) size * object(4);
+    }
+
+    /***
+     *  Boxed Double or Integer (Integers between -128 and 127 are cached and cost nothing)
+     */
+    public static long boxed(Object value) {
+        if (value instanceof Integer) {
+            int integer = (Integer) value;
+            if (integer >= -128 && integer <= 127) return 0;
+        }
+        return value == null ? 0 : align(OBJECT_HEADER + 8);
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public ArrayList<Item> getItems() {
+        return items;
+    }
+    public long getTotalBytes() {
+        long total = 0;
+        for (Item item : items) total += item.getBytes();
+        return total;
+    }
+}
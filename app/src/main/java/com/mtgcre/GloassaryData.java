@@ -1,31 +1,43 @@
 package com.mtgcre;
 
 import java.util.ArrayList;
+import java.util.Locale;
 
 /***
  *  A GlossaryData object contains a glossary entry from the rulebook as:
- *      title (name of the glossary entry)
- *      text
+ *      store, titlePiece (the entry's title in the glossary arena of the DocumentStore, its text is the next piece)
  *      titleTokens (string tokens of the title)
+ *  The title is decoded every time it is asked for and the text is fetched through the store, only the tokens of
+ *  the title are kept for finding the entries in the questions.
  */
 public class GloassaryData {
 
-    private final String title;
-    private final String text;
+    private final DocumentStore store;
+    private final int titlePiece;
     private ArrayList<String> titleTokens;
 
-    public GloassaryData(String _title, String _text){
-        title = _title;
-        text = _text;
+    /***
+     * @param store store of the glossary file
+     * @param titlePiece id of the entry's title in the store's glossary arena, its text has to be added right after it
+     */
+    public GloassaryData(DocumentStore store, int titlePiece){
+        this.store = store;
+        this.titlePiece = titlePiece;
     }
 
     /** GETTERS & SETTERS **/
 
+    /***
+     * @return the title in lower case
+     */
     public String getTitle() {
-        return title;
+        return store.getGlossary().decode(titlePiece).toLowerCase(Locale.ROOT);
     }
+    /***
+     * @return the text as one line, see DocumentStore.getDefinition()
+     */
     public String getText() {
-        return text;
+        return store.getDefinition(titlePiece);
     }
     public ArrayList<String> getTitleTokens() {
         return titleTokens;
@@ -1,62 +1,96 @@
 package com.mtgcre;
 
-import java.util.Collections;
-import java.util.HashMap;
-
 /***
  *  An IndexData object contains data about the indexes in the documents as:
  *      word (which is the index)
- *      posts (pairs of <document in which the index is in, how many time it occurs in there>)
- *      w_ij (pairs as the i index's weight in document j <document, weight>)
+ *      termId (id of the word in the engine's TermDictionary)
+ *      docIds (ids of the documents in which the index is in, in ascending order)
+ *      frequencies (how many times it occurs in the document with the same position in docIds)
+ *      w_ij (the index's weight in the document with the same position in docIds)
+ *      skipDocIds (skip pointers: the doc id at every SKIP_INTERVAL-th position, see PostingsCursor)
  */
 public class IndexData {
 
     private final String word;
-    private final HashMap<String, Integer> posts;
-    private final HashMap<String, Double> w_ij;
+    private final int termId;
+    private final int[] docIds;
+    private final int[] frequencies;
+    private final float[] w_ij;
+    private int[] skipDocIds;
+    private int size;
 
 
-    public IndexData(String _word, HashMap<String, Document> documentHashMap){
+    /***
+     * @param _word the index
+     * @param _termId id of the index in the dictionary
+     * @param documentFrequency number of documents the index is in, the posts are added with addPost()
+     */
+    public IndexData(String _word, int _termId, int documentFrequency){
         this.word = _word;
-        posts = new HashMap<>();
-        w_ij = new HashMap<>();
-        this.createPosts(documentHashMap);
-        this.createWeights(documentHashMap);
+        this.termId = _termId;
+        this.docIds = new int[documentFrequency];
+        this.frequencies = new int[documentFrequency];
+        this.w_ij = new float[documentFrequency];
     }
 
     /***
-     *  Creates the posts for the index based on the given document set
-     * @param documentHashMap all the engine's documents
+     *  Adds a post for the index, the posts have to be added in ascending doc id order
+     * @param docId id of the document the index is in
+     * @param frequency how many times it occurs in there
      */
-    private void createPosts(HashMap<String, Document> documentHashMap) {
-        for (Document document : documentHashMap.values()) {
-            if (document.getIndexes().contains(this.word)) {
-                this.posts.put(document.getTitle(), Collections.frequency(document.getIndexes(), this.word));
-            }
-        }
+    public void addPost(int docId, int frequency) {
+        this.docIds[size] = docId;
+        this.frequencies[size] = frequency;
+        size++;
     }
 
     /***
-     *  Calculates the weights for the index for every document it appears in
+     *  Calculates the weights for the index for every document it appears in and creates the skip pointers
+     * @param documentCount number of all the engine's documents
      */
-    private void createWeights(HashMap<String, Document> documentHashMap) {
-        this.posts.forEach(
-                (key,value)-> weightCalculator(key, value, documentHashMap)
-        );
+    public void createWeights(int documentCount) {
+        for (int i = 0; i < size; i++) {
+            this.w_ij[i] = (float) weightCalculator(this.frequencies[i], documentCount);
+        }
+        this.skipDocIds = PostingsCursor.createSkips(this.docIds, this.size);
     }
 
-    private void weightCalculator(String key, Integer value, HashMap<String, Document> documentHashMap){
+    private double weightCalculator(int value, int documentCount){
         /** TF_IDF **/
         int f_ij = value;
-        Double m = (double) documentHashMap.size();
-        Double F_i = (double) this.posts.size();
-        double y = f_ij*Math.log(m/F_i);
-        w_ij.put(key, y);
+        Double m = (double) documentCount;
+        Double F_i = (double) this.size;
+        return f_ij*Math.log(m/F_i);
+    }
+
+    /***
+     * @return a new cursor over the posts, using the skip pointers
+     */
+    public PostingsCursor cursor() {
+        return new PostingsCursor(this.docIds, this.size, this.skipDocIds);
     }
 
     /** GETTERS & SETTERS **/
 
-    public HashMap<String, Double> getW_ij() {
+    public String getWord() {
+        return word;
+    }
+    public int getTermId() {
+        return termId;
+    }
+    public int getDocumentFrequency() {
+        return size;
+    }
+    public int[] getDocIds() {
+        return docIds;
+    }
+    public int[] getFrequencies() {
+        return frequencies;
+    }
+    public float[] getW_ij() {
         return w_ij;
     }
+    public int[] getSkipDocIds() {
+        return skipDocIds;
+    }
 }
@@ -0,0 +1,109 @@
+package com.mtgcre;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/***
+ *  An IndexSnapshot object holds everything a search reads, built once by the SearchEngine:
+ *      documents (map of the documents by title <title of document, document>)
+ *      documentsById (the same documents in the order of the rulebook, the position of a document is its doc id)
+ *      dictionary (the distinct indexes of the documents with their term ids)
+ *      inverseIndexes (map of the posts by index <index, data of it>)
+ *      inverseIndexesById (the same IndexData objects, the position of one is its term id)
+ *      glossaries (list of glossary entries from the rulebook)
+ *      neighbours (the most similar documents of every document, see NeighbourTable)
+ *      shards (the posts split by the sections of the rulebook, for the in: restriction, see SectionShards)
+ *      trigrams (the trigrams of the raw text of the documents, for the quoted phrases, see TrigramIndex)
+ *      denseColumns (the weights of the most frequent indexes for every doc id, see DenseColumns)
+ *  All the fields are final and the collections are read-only views, so once the snapshot is published through a
+ *  final field any number of threads can read it without locking. Two structures reached from it are not immutable:
+ *  SearchEngine.trimMemory(TRIM_REBUILDABLE) drops them and the next reader builds them again.
+ *      the forward indexes of the documents (Document.getTermIds(), getTermFrequencies()) are set to null under the
+ *      engine's forwardIndexLock, moreLikeThis() holds that lock and calls loadForwardIndexes() before it
+ *      reads them
+ *      the posts of the trigrams are released by TrigramIndex.release(), every search of the trigram index reads
+ *      them once through its posts(), which builds them again if they are gone
+ *  Everything else is never changed after the snapshot is built.
+ */
+public final class IndexSnapshot {
+
+    private final Map<String, Document> documents;
+    private final List<Document> documentsById;
+    private final TermDictionary dictionary;
+    private final Map<String, IndexData> inverseIndexes;
+    private final IndexData[] inverseIndexesById;
+    private final List<GloassaryData> glossaries;
+    private final NeighbourTable neighbours;
+    private final SectionShards shards;
+    private final TrigramIndex trigrams;
+    private final DenseColumns denseColumns;
+
+    public IndexSnapshot(Map<String, Document> documents, List<Document> documentsById, TermDictionary dictionary,
+                         Map<String, IndexData> inverseIndexes, IndexData[] inverseIndexesById, List<GloassaryData> glossaries,
+                         NeighbourTable neighbours, SectionShards shards, TrigramIndex trigrams, DenseColumns denseColumns) {
+        this.documents = Collections.unmodifiableMap(documents);
+        this.documentsById = Collections.unmodifiableList(documentsById);
+        this.dictionary = dictionary;
+        this.inverseIndexes = Collections.unmodifiableMap(inverseIndexes);
+        this.inverseIndexesById = inverseIndexesById;
+        this.glossaries = Collections.unmodifiableList(glossaries);
+        this.neighbours = neighbours;
+        this.shards = shards;
+        this.trigrams = trigrams;
+        this.denseColumns = denseColumns;
+    }
+
+    /***
+     * @param id doc id
+     * @return the document with the doc id
+     */
+    public Document document(int id) {
+        return documentsById.get(id);
+    }
+
+    /***
+     * @param termId term id
+     * @return the posts of the index with the term id
+     */
+    public IndexData postings(int termId) {
+        return inverseIndexesById[termId];
+    }
+
+    public int documentCount() {
+        return documentsById.size();
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public Map<String, Document> getDocuments() {
+        return documents;
+    }
+    public List<Document> getDocumentsById() {
+        return documentsById;
+    }
+    public TermDictionary getDictionary() {
+        return dictionary;
+    }
+    public Map<String, IndexData> getInverseIndexes() {
+        return inverseIndexes;
+    }
+    public int getTermCount() {
+        return inverseIndexesById.length;
+    }
+    public List<GloassaryData> getGlossaries() {
+        return glossaries;
+    }
+    public NeighbourTable getNeighbours() {
+        return neighbours;
+    }
+    public SectionShards getShards() {
+        return shards;
+    }
+    public TrigramIndex getTrigrams() {
+        return trigrams;
+    }
+    public DenseColumns getDenseColumns() {
+        return denseColumns;
+    }
+}
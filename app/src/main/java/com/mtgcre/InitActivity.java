@@ -2,20 +2,66 @@ package com.mtgcre;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import android.content.ComponentCallbacks2;
 import android.content.Intent;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Configuration;
+import android.content.res.Resources;
 import android.os.Bundle;
 import android.os.Handler;
+import android.util.Log;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Objects;
 
 /***
  *   Activity that initializes the search engine. Loads in the documents and does the weight calculations.
  */
 public class InitActivity extends AppCompatActivity {
+    static final String TAG = "mtgcre";
+    private static final String QUERY_LOG = "queries.log";
+
     private static SearchEngine searchEngine;
+    private static EngineMemoryCallbacks memoryCallbacks;
+    private static QueryLog queryLog;
+
+    /***
+     *  Gives back the engine's rebuildable data and the cached rows when the system asks the app to trim its memory.
+     *  Hiding the UI only drops the caches, the background and running-low levels drop everything the engine can
+     *  build again (see SearchEngine.trimMemory()). It is registered on the application, so it is static to not
+     *  keep the finished activity alive.
+     */
+    private static class EngineMemoryCallbacks implements ComponentCallbacks2 {
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+                trim(level, SearchEngine.TRIM_REBUILDABLE);
+            } else if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_MODERATE) {
+                trim(level, SearchEngine.TRIM_CACHES);
+            }
+        }
+
+        @Override
+        public void onLowMemory() {
+            trim(TRIM_MEMORY_COMPLETE, SearchEngine.TRIM_REBUILDABLE);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+
+        private static void trim(int level, int engineLevel) {
+            int rows = RuleRowFormatter.shared().trimMemory();
+            SearchEngine engine = searchEngine;
+            if (engine == null) return;
+            FootprintReport freed = engine.trimMemory(engineLevel);
+            Log.i(TAG, "trim level " + level + ": " + rows + " cached rows, "
+                    + freed.getTotalBytes() + " engine bytes freed\n" + freed);
+        }
+    }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -42,19 +88,45 @@ public class InitActivity extends AppCompatActivity {
      *  then initializes the search engine based on those.
      */
     private void initEngine() {
-        /* Comprehensive Rules */
-        InputStream iStream_1 = this.getResources().openRawResource(R.raw.mtg_cr);
-        BufferedReader compRules = new BufferedReader(new InputStreamReader(iStream_1));
+        try {
+            /* Comprehensive Rules */
+            ByteBuffer compRules = openRaw(R.raw.mtg_cr);
+
+            /* Comprehensive Rules Glossary */
+            ByteBuffer compRulesGlossary = openRaw(R.raw.mtg_cr_glossary);
 
-        /* Comprehensive Rules Glossary */
-        InputStream iStream_2 = this.getResources().openRawResource(R.raw.mtg_cr_glossary);
-        BufferedReader compRulesGlossary = new BufferedReader(new InputStreamReader(iStream_2));
+            /* Time Stoplist */
+            ByteBuffer stopList = openRaw(R.raw.time_stoplist);
 
-        /* Time Stoplist */
-        InputStream iStream_3 = this.getResources().openRawResource(R.raw.time_stoplist);
-        BufferedReader stopList = new BufferedReader(new InputStreamReader(iStream_3));
+            searchEngine = new SearchEngine(compRules, compRulesGlossary, stopList);
+            if (queryLog == null) queryLog = new QueryLog(new File(getFilesDir(), QUERY_LOG));
+            searchEngine.setQueryLog(queryLog);
+            if (memoryCallbacks == null) {
+                memoryCallbacks = new EngineMemoryCallbacks();
+                getApplicationContext().registerComponentCallbacks(memoryCallbacks);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read the rules", e);
+        }
+    }
 
-        searchEngine = new SearchEngine(compRules, compRulesGlossary, stopList);
+    /***
+     *  Maps a raw resource straight from the APK, the text resources are stored uncompressed for this
+     *  (noCompress in build.gradle). Falls back to reading it into the heap if it is compressed anyway.
+     * @param id id of the raw resource
+     * @return the bytes of the resource
+     */
+    private ByteBuffer openRaw(int id) throws IOException {
+        try (AssetFileDescriptor descriptor = this.getResources().openRawResourceFd(id)) {
+            if (descriptor != null) {
+                try (FileChannel channel = descriptor.createInputStream().getChannel()) {
+                    return channel.map(FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(), descriptor.getLength());
+                }
+            }
+        } catch (Resources.NotFoundException e) {
+            /* compressed in the APK, it can only be streamed */
+        }
+        return CorpusParser.read(this.getResources().openRawResource(id));
     }
 
     public static SearchEngine getSearchEngine() {
@@ -0,0 +1,108 @@
+package com.mtgcre;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/***
+ *  A LatencyHistogram object aggregates recorded values (nanoseconds or plain counts) as:
+ *      counts (log-linear buckets: one bucket range per power of two, split into SUB_BUCKETS linear parts)
+ *      total (number of recorded values)
+ *      sum (sum of the recorded values, for the mean)
+ *      max (largest recorded value)
+ *  Recording is lock free, so it can be shared by searches running on different threads.
+ *  Percentiles are reported as the upper bound of the bucket they fall in (at most 1/SUB_BUCKETS relative error).
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong total;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.total = new AtomicLong();
+        this.sum = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    /***
+     *  Records a single value. Negative values are counted as 0.
+     * @param value nanoseconds or a count
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(bucketOf(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /***
+     *  Gives back the value below which the given fraction of the recorded values are
+     * @param quantile between 0 and 1 (eg. 0.95)
+     * @return upper bound of the matching bucket, 0 if nothing was recorded
+     */
+    public long percentile(double quantile) {
+        long recorded = total.get();
+        if (recorded == 0) return 0;
+        long rank = (long) Math.ceil(quantile * recorded);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(bucket), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /***
+     *  Clears all the recorded values
+     */
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) counts.set(bucket, 0);
+        total.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /***
+     *  Values below SUB_BUCKETS get a bucket each, above that every power of two is split into SUB_BUCKETS parts.
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public long getTotal() {
+        return total.get();
+    }
+    public long getMax() {
+        return max.get();
+    }
+    public double getMean() {
+        long recorded = total.get();
+        return recorded == 0 ? 0.0 : (double) sum.get() / recorded;
+    }
+}
@@ -0,0 +1,302 @@
+package com.mtgcre;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/***
+ *  A LatentIndex object contains a latent semantic index (LSI) of the documents as:
+ *      dimensions (k, the number of kept singular vectors)
+ *      singularValues (the k largest singular values of the index-document weight matrix, largest first)
+ *      termVectors (k values per term id: the rows of U_k, used to project a question into the latent space)
+ *      documentVectors (k values per doc id: the documents projected into the latent space, scaled to unit length)
+ *  Both vector tables are single contiguous arrays, so scoring every document is one tight dot product loop.
+ *  Indexes that often occur together end up close to each other in the latent space, so a question can match a
+ *  document which uses different words for the same thing.
+ */
+public class LatentIndex {
+
+    public static final int DEFAULT_DIMENSIONS = 64;
+
+    /** Extra columns of the random sample and rounds of subspace iteration, for the accuracy of the truncated SVD */
+    private static final int OVERSAMPLING = 16;
+    private static final int POWER_ITERATIONS = 3;
+    private static final long SEED = 42L;
+
+    private final int dimensions;
+    private final int documentCount;
+    private final double[] singularValues;
+    private final float[] termVectors;
+    private final float[] documentVectors;
+
+    private LatentIndex(int dimensions, int documentCount, double[] singularValues, float[] termVectors, float[] documentVectors) {
+        this.dimensions = dimensions;
+        this.documentCount = documentCount;
+        this.singularValues = singularValues;
+        this.termVectors = termVectors;
+        this.documentVectors = documentVectors;
+    }
+
+    /***
+     *  Computes the truncated SVD A ~ U_k S_k V_k^T of the index-document matrix A (a_ij = w_ij of the posts) with a
+     *  randomized range finder:
+     *      Y = A * R for a random Gaussian R with k + OVERSAMPLING columns, refined by POWER_ITERATIONS rounds of
+     *      multiplying with A^T and A, orthonormalizing in between (Gram-Schmidt), gives Q with the range of A
+     *      The small matrix B = Q^T A is decomposed through the eigenvectors W of B B^T (Jacobi rotations)
+     *      U = Q W, and the documents are projected as U_k^T A = (B^T W)_k
+     *  Everything is done locally from the posts, the random generator has a fixed seed so the result is the same
+     *  on every build.
+     * @param inverseIndexesById posts with their weights, the position of one is its term id
+     * @param documentCount number of documents
+     * @param dimensions k, the number of singular vectors to keep
+     * @return LatentIndex object
+     */
+    public static LatentIndex build(IndexData[] inverseIndexesById, int documentCount, int dimensions) {
+        int termCount = inverseIndexesById.length;
+        int k = Math.min(dimensions, Math.min(termCount, documentCount));
+        int l = Math.min(k + OVERSAMPLING, Math.min(termCount, documentCount));
+
+        Random random = new Random(SEED);
+        double[] sample = new double[documentCount * l];
+        for (int i = 0; i < sample.length; i++) sample[i] = random.nextGaussian();
+
+        double[] range = multiply(inverseIndexesById, sample, termCount, l);
+        orthonormalize(range, termCount, l);
+        for (int iteration = 0; iteration < POWER_ITERATIONS; iteration++) {
+            double[] transposed = multiplyTransposed(inverseIndexesById, range, documentCount, l);
+            orthonormalize(transposed, documentCount, l);
+            range = multiply(inverseIndexesById, transposed, termCount, l);
+            orthonormalize(range, termCount, l);
+        }
+
+        /* B^T = A^T Q (documentCount x l) and the eigenvectors of B B^T = (B^T)^T B^T (l x l) */
+        double[] b_t = multiplyTransposed(inverseIndexesById, range, documentCount, l);
+        double[] gram = new double[l * l];
+        for (int doc = 0; doc < documentCount; doc++) {
+            int row = doc * l;
+            for (int i = 0; i < l; i++) {
+                double value = b_t[row + i];
+                if (value == 0.0) continue;
+                for (int j = i; j < l; j++) gram[i * l + j] += value * b_t[row + j];
+            }
+        }
+        for (int i = 0; i < l; i++) {
+            for (int j = 0; j < i; j++) gram[i * l + j] = gram[j * l + i];
+        }
+        double[] eigenvectors = new double[l * l];
+        int[] order = eigen(gram, eigenvectors, l);
+
+        double[] singularValues = new double[k];
+        for (int c = 0; c < k; c++) singularValues[c] = Math.sqrt(Math.max(0.0, gram[order[c] * l + order[c]]));
+
+        float[] termVectors = new float[termCount * k];
+        for (int term = 0; term < termCount; term++) {
+            for (int c = 0; c < k; c++) {
+                double value = 0.0;
+                for (int i = 0; i < l; i++) value += range[term * l + i] * eigenvectors[i * l + order[c]];
+                termVectors[term * k + c] = (float) value;
+            }
+        }
+
+        float[] documentVectors = new float[documentCount * k];
+        double[] vector = new double[k];
+        for (int doc = 0; doc < documentCount; doc++) {
+            double length = 0.0;
+            for (int c = 0; c < k; c++) {
+                double value = 0.0;
+                for (int i = 0; i < l; i++) value += b_t[doc * l + i] * eigenvectors[i * l + order[c]];
+                vector[c] = value;
+                length += value * value;
+            }
+            length = Math.sqrt(length);
+            for (int c = 0; c < k; c++) {
+                documentVectors[doc * k + c] = length == 0.0 ? 0f : (float) (vector[c] / length);
+            }
+        }
+        return new LatentIndex(k, documentCount, singularValues, termVectors, documentVectors);
+    }
+
+    /***
+     *  Projects the weights of a question into the latent space and scales the result to unit length
+     * @param termIds term ids of the question's indexes
+     * @param weights weights of the question's indexes, with the same position as termIds
+     * @return k values, null if the question has no known index or its projection is zero
+     */
+    public float[] project(int[] termIds, double[] weights) {
+        double[] vector = new double[dimensions];
+        for (int i = 0; i < termIds.length; i++) {
+            int offset = termIds[i] * dimensions;
+            for (int c = 0; c < dimensions; c++) vector[c] += weights[i] * termVectors[offset + c];
+        }
+        double length = 0.0;
+        for (int c = 0; c < dimensions; c++) length += vector[c] * vector[c];
+        if (length == 0.0) return null;
+        length = Math.sqrt(length);
+        float[] projected = new float[dimensions];
+        for (int c = 0; c < dimensions; c++) projected[c] = (float) (vector[c] / length);
+        return projected;
+    }
+
+    /***
+     *  Cosine measure of every document against a projected question, in doc id order.
+     *  The dot product is summed into four independent partial sums, so the additions don't wait for each other.
+     * @param question unit length vector from project()
+     * @param scores array with a slot for every document, it is overwritten
+     */
+    public void score(float[] question, float[] scores) {
+        final int k = dimensions;
+        final int unrolled = k & ~3;
+        final float[] vectors = documentVectors;
+        for (int doc = 0, offset = 0; doc < documentCount; doc++, offset += k) {
+            float dot0 = 0f, dot1 = 0f, dot2 = 0f, dot3 = 0f;
+            int c = 0;
+            for (; c < unrolled; c += 4) {
+                dot0 += vectors[offset + c] * question[c];
+                dot1 += vectors[offset + c + 1] * question[c + 1];
+                dot2 += vectors[offset + c + 2] * question[c + 2];
+                dot3 += vectors[offset + c + 3] * question[c + 3];
+            }
+            for (; c < k; c++) {
+                dot0 += vectors[offset + c] * question[c];
+            }
+            scores[doc] = (dot0 + dot1) + (dot2 + dot3);
+        }
+    }
+
+    /***
+     *  Estimated retained bytes of the vectors, see FootprintReport
+     */
+    public long footprint() {
+        return FootprintReport.object(5) + FootprintReport.array(singularValues.length, 8)
+                + FootprintReport.array(termVectors.length, 4) + FootprintReport.array(documentVectors.length, 4);
+    }
+
+    /** MATRIX OPERATIONS **/
+
+    /***
+     *  A * x for a documentCount x columns row-major x, gives termCount x columns
+     */
+    private static double[] multiply(IndexData[] inverseIndexesById, double[] x, int termCount, int columns) {
+        double[] result = new double[termCount * columns];
+        for (int term = 0; term < termCount; term++) {
+            IndexData indexData = inverseIndexesById[term];
+            int[] docIds = indexData.getDocIds();
+            float[] w_ij = indexData.getW_ij();
+            int row = term * columns;
+            for (int post = 0; post < indexData.getDocumentFrequency(); post++) {
+                double weight = w_ij[post];
+                int source = docIds[post] * columns;
+                for (int c = 0; c < columns; c++) result[row + c] += weight * x[source + c];
+            }
+        }
+        return result;
+    }
+
+    /***
+     *  A^T * y for a termCount x columns row-major y, gives documentCount x columns
+     */
+    private static double[] multiplyTransposed(IndexData[] inverseIndexesById, double[] y, int documentCount, int columns) {
+        double[] result = new double[documentCount * columns];
+        for (int term = 0; term < inverseIndexesById.length; term++) {
+            IndexData indexData = inverseIndexesById[term];
+            int[] docIds = indexData.getDocIds();
+            float[] w_ij = indexData.getW_ij();
+            int source = term * columns;
+            for (int post = 0; post < indexData.getDocumentFrequency(); post++) {
+                double weight = w_ij[post];
+                int row = docIds[post] * columns;
+                for (int c = 0; c < columns; c++) result[row + c] += weight * y[source + c];
+            }
+        }
+        return result;
+    }
+
+    /***
+     *  Gram-Schmidt on the columns of a rows x columns row-major matrix. The projections of a column on all the
+     *  columns before it are computed in one pass over the rows (so the matrix is read in memory order) and the
+     *  pass is done twice, which keeps the columns orthogonal as well as the modified Gram-Schmidt would.
+     *  Columns which are (numerically) dependent on the ones before them are set to zero.
+     */
+    private static void orthonormalize(double[] matrix, int rows, int columns) {
+        double[] dots = new double[columns];
+        for (int j = 0; j < columns; j++) {
+            for (int pass = 0; pass < 2 && j > 0; pass++) {
+                Arrays.fill(dots, 0, j, 0.0);
+                for (int r = 0, row = 0; r < rows; r++, row += columns) {
+                    double value = matrix[row + j];
+                    if (value == 0.0) continue;
+                    for (int i = 0; i < j; i++) dots[i] += matrix[row + i] * value;
+                }
+                for (int r = 0, row = 0; r < rows; r++, row += columns) {
+                    double projection = 0.0;
+                    for (int i = 0; i < j; i++) projection += dots[i] * matrix[row + i];
+                    matrix[row + j] -= projection;
+                }
+            }
+            double norm = 0.0;
+            for (int r = 0; r < rows; r++) norm += matrix[r * columns + j] * matrix[r * columns + j];
+            norm = Math.sqrt(norm);
+            double scale = norm < 1e-10 ? 0.0 : 1.0 / norm;
+            for (int r = 0; r < rows; r++) matrix[r * columns + j] *= scale;
+        }
+    }
+
+    /***
+     *  Cyclic Jacobi eigenvalue algorithm for a symmetric size x size matrix. The matrix is turned into its
+     *  eigenvalues (on the diagonal) and the eigenvectors are written into the columns of vectors.
+     * @return the columns ordered by descending eigenvalue
+     */
+    private static int[] eigen(double[] matrix, double[] vectors, int size) {
+        for (int i = 0; i < size; i++) vectors[i * size + i] = 1.0;
+        for (int sweep = 0; sweep < 100; sweep++) {
+            double off = 0.0;
+            for (int p = 0; p < size; p++) {
+                for (int q = p + 1; q < size; q++) off += matrix[p * size + q] * matrix[p * size + q];
+            }
+            if (off < 1e-22) break;
+            for (int p = 0; p < size; p++) {
+                for (int q = p + 1; q < size; q++) {
+                    double a_pq = matrix[p * size + q];
+                    if (Math.abs(a_pq) < 1e-300) continue;
+                    double theta = (matrix[q * size + q] - matrix[p * size + p]) / (2 * a_pq);
+                    double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1));
+                    if (theta == 0.0) t = 1.0;
+                    double c = 1 / Math.sqrt(t * t + 1);
+                    double s = t * c;
+                    for (int r = 0; r < size; r++) {
+                        double a_rp = matrix[r * size + p];
+                        double a_rq = matrix[r * size + q];
+                        matrix[r * size + p] = c * a_rp - s * a_rq;
+                        matrix[r * size + q] = s * a_rp + c * a_rq;
+                    }
+                    for (int r = 0; r < size; r++) {
+                        double a_pr = matrix[p * size + r];
+                        double a_qr = matrix[q * size + r];
+                        matrix[p * size + r] = c * a_pr - s * a_qr;
+                        matrix[q * size + r] = s * a_pr + c * a_qr;
+                    }
+                    for (int r = 0; r < size; r++) {
+                        double v_rp = vectors[r * size + p];
+                        double v_rq = vectors[r * size + q];
+                        vectors[r * size + p] = c * v_rp - s * v_rq;
+                        vectors[r * size + q] = s * v_rp + c * v_rq;
+                    }
+                }
+            }
+        }
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Arrays.sort(order, (x, y) -> Double.compare(matrix[y * size + y], matrix[x * size + x]));
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) result[i] = order[i];
+        return result;
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public int getDimensions() {
+        return dimensions;
+    }
+    public double[] getSingularValues() {
+        return singularValues.clone();
+    }
+}
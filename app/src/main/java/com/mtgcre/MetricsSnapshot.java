@@ -0,0 +1,119 @@
+package com.mtgcre;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/***
+ *  A MetricsSnapshot object is an immutable copy of the search metrics at a given time as:
+ *      queries (number of measured queries)
+ *      phases (pairs of <phase, [p50, p95, p99, mean, max] in nanoseconds>)
+ *      candidates ([p50, p95, p99, mean, max] of the scored documents per query)
+ *      postings ([p50, p95, p99, mean, max] of the touched postings per query)
+ *      lastQuery (nanoseconds of each phase of the most recent query, null if there was none)
+ *      stemHits, stemMisses (lookups of the stem cache since the engine was built, index build included)
+ */
+public class MetricsSnapshot {
+
+    public static final int P50 = 0;
+    public static final int P95 = 1;
+    public static final int P99 = 2;
+    public static final int MEAN = 3;
+    public static final int MAX = 4;
+
+    private final long queries;
+    private final EnumMap<SearchMetrics.Phase, long[]> phases;
+    private final long[] candidates;
+    private final long[] postings;
+    private final long[] lastQuery;
+    private final long stemHits;
+    private final long stemMisses;
+
+    MetricsSnapshot(Map<SearchMetrics.Phase, LatencyHistogram> phaseHistograms, LatencyHistogram candidateHistogram,
+                    LatencyHistogram postingHistogram, QueryTimer last, StemCache stemCache) {
+        this.phases = new EnumMap<>(SearchMetrics.Phase.class);
+        for (Map.Entry<SearchMetrics.Phase, LatencyHistogram> entry : phaseHistograms.entrySet()) {
+            phases.put(entry.getKey(), summarize(entry.getValue()));
+        }
+        this.queries = phaseHistograms.get(SearchMetrics.Phase.TOTAL).getTotal();
+        this.candidates = summarize(candidateHistogram);
+        this.postings = summarize(postingHistogram);
+        if (last != null) {
+            this.lastQuery = new long[SearchMetrics.Phase.values().length];
+            for (SearchMetrics.Phase phase : SearchMetrics.Phase.values()) {
+                lastQuery[phase.ordinal()] = last.getNanos(phase);
+            }
+        } else {
+            this.lastQuery = null;
+        }
+        this.stemHits = stemCache == null ? 0 : stemCache.getHits();
+        this.stemMisses = stemCache == null ? 0 : stemCache.getMisses();
+    }
+
+    private static long[] summarize(LatencyHistogram histogram) {
+        return new long[]{
+                histogram.percentile(0.50),
+                histogram.percentile(0.95),
+                histogram.percentile(0.99),
+                Math.round(histogram.getMean()),
+                histogram.getMax()
+        };
+    }
+
+    /***
+     *  Formats the snapshot as a readable table (milliseconds for the phases)
+     * @return multi-line string
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT, "queries: %d%n", queries));
+        builder.append(String.format(Locale.ROOT, "%-16s %8s %8s %8s %8s%n", "phase (ms)", "last", "p50", "p95", "p99"));
+        for (SearchMetrics.Phase phase : SearchMetrics.Phase.values()) {
+            long[] values = phases.get(phase);
+            builder.append(String.format(Locale.ROOT, "%-16s %8.3f %8.3f %8.3f %8.3f%n",
+                    phase.name().toLowerCase(Locale.ROOT),
+                    lastQuery == null ? 0.0 : lastQuery[phase.ordinal()] / 1e6,
+                    values[P50] / 1e6, values[P95] / 1e6, values[P99] / 1e6));
+        }
+        builder.append(String.format(Locale.ROOT, "candidates p50/p95/p99: %d/%d/%d%n",
+                candidates[P50], candidates[P95], candidates[P99]));
+        builder.append(String.format(Locale.ROOT, "postings   p50/p95/p99: %d/%d/%d",
+                postings[P50], postings[P95], postings[P99]));
+        builder.append(String.format(Locale.ROOT, "%nstem cache hit rate: %.1f%% (%d/%d)",
+                getStemHitRate() * 100, stemHits, stemHits + stemMisses));
+        return builder.toString();
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public long getQueries() {
+        return queries;
+    }
+    /***
+     * @param phase phase of the search
+     * @return [p50, p95, p99, mean, max] in nanoseconds, use the P50.. constants as indexes
+     */
+    public long[] getPhase(SearchMetrics.Phase phase) {
+        return phases.get(phase).clone();
+    }
+    public long[] getCandidates() {
+        return candidates.clone();
+    }
+    public long[] getPostings() {
+        return postings.clone();
+    }
+    public long[] getLastQuery() {
+        return lastQuery == null ? null : lastQuery.clone();
+    }
+    public long getStemHits() {
+        return stemHits;
+    }
+    public long getStemMisses() {
+        return stemMisses;
+    }
+    public double getStemHitRate() {
+        long lookups = stemHits + stemMisses;
+        return lookups == 0 ? 0.0 : (double) stemHits / lookups;
+    }
+}
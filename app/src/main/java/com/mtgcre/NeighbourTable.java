@@ -0,0 +1,180 @@
+package com.mtgcre;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ *  A NeighbourTable object contains the most similar documents of every document ("related rules") as:
+ *      neighbours (number of neighbours kept per document, N)
+ *      docIds (N doc ids per document, best first, -1 where a document has fewer than N neighbours)
+ *      scores (the cosine measure of the neighbour with the same position in docIds)
+ *  It is computed once from the TF-IDF weights of the posts, so looking up the neighbours of a document is just
+ *  an offset (docId * N) into the two arrays.
+ */
+public class NeighbourTable {
+
+    public static final int DEFAULT_NEIGHBOURS = 10;
+
+    /** Number of documents a worker takes at once while the table is built */
+    private static final int BLOCK = 64;
+
+    private final int neighbours;
+    private final int[] docIds;
+    private final float[] scores;
+
+    private NeighbourTable(int neighbours, int[] docIds, float[] scores) {
+        this.neighbours = neighbours;
+        this.docIds = docIds;
+        this.scores = scores;
+    }
+
+    /***
+     *  Computes the top N neighbours of every document by the cosine measure of their weight vectors:
+     *      cos(a, b) = sum(w_at * w_bt) / (|a| * |b|)
+     *  The dot products are a sparse matrix-matrix product (the document-term matrix times its transpose) done one
+     *  row at a time: for every index of document a, its posts are walked and w_at * w_bt is added to b's
+     *  accumulator. The rows are split into blocks which are taken by one worker per core, each with its own
+     *  accumulators. A row is always summed by a single worker in ascending term id order, so the table is the same
+     *  whatever the number of workers is.
+     * @param documentsById documents with their forward indexes, the position of a document is its doc id
+     * @param inverseIndexesById posts with their weights, the position of one is its term id
+     * @param neighbours N, the number of neighbours to keep per document
+     * @return NeighbourTable object
+     */
+    public static NeighbourTable build(List<Document> documentsById, IndexData[] inverseIndexesById, int neighbours) {
+        int documentCount = documentsById.size();
+        int[] docIds = new int[documentCount * neighbours];
+        float[] scores = new float[documentCount * neighbours];
+        Arrays.fill(docIds, -1);
+
+        double[] lengths = new double[documentCount];
+        for (IndexData indexData : inverseIndexesById) {
+            float[] w_ij = indexData.getW_ij();
+            for (int post = 0; post < indexData.getDocumentFrequency(); post++) {
+                lengths[indexData.getDocIds()[post]] += (double) w_ij[post] * w_ij[post];
+            }
+        }
+        for (int docId = 0; docId < documentCount; docId++) {
+            lengths[docId] = Math.sqrt(lengths[docId]);
+        }
+
+        int workers = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), (documentCount + BLOCK - 1) / BLOCK));
+        AtomicInteger nextBlock = new AtomicInteger();
+        Runnable worker = () -> {
+            double[] dots = new double[documentCount];
+            int[] touched = new int[documentCount];
+            for (int start = nextBlock.getAndAdd(BLOCK); start < documentCount; start = nextBlock.getAndAdd(BLOCK)) {
+                int end = Math.min(start + BLOCK, documentCount);
+                for (int docId = start; docId < end; docId++) {
+                    fillRow(documentsById.get(docId), inverseIndexesById, lengths, neighbours, dots, touched,
+                            docIds, scores);
+                }
+            }
+        };
+
+        if (workers == 1) {
+            worker.run();
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(workers);
+            try {
+                ArrayList<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < workers; i++) {
+                    futures.add(executor.submit(worker));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Building the neighbour table was interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Building the neighbour table failed", e.getCause());
+            } finally {
+                executor.shutdown();
+            }
+        }
+        return new NeighbourTable(neighbours, docIds, scores);
+    }
+
+    /***
+     *  Computes one row of the product and keeps its top N documents. dots has to be all zeros when it is called
+     *  and is left that way.
+     */
+    private static void fillRow(Document document, IndexData[] inverseIndexesById, double[] lengths, int neighbours,
+                                double[] dots, int[] touched, int[] docIds, float[] scores) {
+        int a = document.getId();
+        int touchedCount = 0;
+        for (int termId : document.getTermIds()) {
+            IndexData indexData = inverseIndexesById[termId];
+            int[] postDocIds = indexData.getDocIds();
+            float[] w_ij = indexData.getW_ij();
+            int size = indexData.getDocumentFrequency();
+            float w_at = w_ij[Arrays.binarySearch(postDocIds, 0, size, a)];
+            if (w_at == 0f) continue;
+            for (int post = 0; post < size; post++) {
+                int b = postDocIds[post];
+                if (dots[b] == 0.0) touched[touchedCount++] = b;
+                dots[b] += (double) w_at * w_ij[post];
+            }
+        }
+
+        TopK topK = new TopK(neighbours);
+        for (int i = 0; i < touchedCount; i++) {
+            int b = touched[i];
+            if (b != a) topK.offer(b, dots[b] / (lengths[a] * lengths[b]));
+            dots[b] = 0.0;
+        }
+        for (int rank = 0; rank < topK.size(); rank++) {
+            docIds[a * neighbours + rank] = topK.getDocId(rank);
+            scores[a * neighbours + rank] = (float) topK.getScore(rank);
+        }
+    }
+
+    /***
+     * @param docId doc id of a document
+     * @return number of its neighbours (at most N)
+     */
+    public int count(int docId) {
+        int offset = docId * neighbours;
+        int count = 0;
+        while (count < neighbours && docIds[offset + count] != -1) count++;
+        return count;
+    }
+
+    /***
+     * @param docId doc id of a document
+     * @param rank 0 for the most similar one, below count(docId)
+     * @return doc id of the neighbour
+     */
+    public int neighbour(int docId, int rank) {
+        return docIds[docId * neighbours + rank];
+    }
+
+    /***
+     * @param docId doc id of a document
+     * @param rank 0 for the most similar one, below count(docId)
+     * @return cosine measure of the neighbour
+     */
+    public float score(int docId, int rank) {
+        return scores[docId * neighbours + rank];
+    }
+
+    /***
+     *  Estimated retained bytes of the table, see FootprintReport
+     */
+    public long footprint() {
+        return FootprintReport.object(3) + FootprintReport.array(docIds.length, 4) + FootprintReport.array(scores.length, 4);
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public int getNeighbours() {
+        return neighbours;
+    }
+}
@@ -0,0 +1,92 @@
+package com.mtgcre;
+
+/***
+ *  A PostingsCursor object walks through a list of doc ids in ascending order as:
+ *      docIds (the doc ids, only the first length entries are used)
+ *      skipDocIds (skip pointers: skipDocIds[k] is the doc id at position k * interval, can be null)
+ *      position (the current position, -1 before the first next() or advance())
+ *  advance() uses the skip pointers to jump over whole blocks of doc ids, so intersecting a rare list
+ *  with a frequent one costs about the length of the rare list.
+ */
+public class PostingsCursor {
+
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+    private static final int MIN_SKIP_INTERVAL = 8;
+
+    private final int[] docIds;
+    private final int length;
+    private final int[] skipDocIds;
+    private final int interval;
+    private int position;
+
+    public PostingsCursor(int[] docIds, int length, int[] skipDocIds) {
+        this.docIds = docIds;
+        this.length = length;
+        this.skipDocIds = skipDocIds;
+        this.interval = skipInterval(length);
+        this.position = -1;
+    }
+
+    /***
+     *  The skip interval is about the square root of the list's length
+     */
+    private static int skipInterval(int length) {
+        return Math.max(MIN_SKIP_INTERVAL, (int) Math.sqrt(length));
+    }
+
+    /***
+     *  Creates the skip pointers of a doc id list
+     * @param docIds doc ids in ascending order
+     * @param length number of used entries in docIds
+     * @return the doc ids at every interval-th position, null if the list is too short to need them
+     */
+    public static int[] createSkips(int[] docIds, int length) {
+        int interval = skipInterval(length);
+        if (length <= interval) return null;
+        int[] skips = new int[(length + interval - 1) / interval];
+        for (int k = 0; k < skips.length; k++) {
+            skips[k] = docIds[k * interval];
+        }
+        return skips;
+    }
+
+    /***
+     *  Moves to the next doc id
+     * @return the doc id, NO_MORE_DOCS at the end of the list
+     */
+    public int next() {
+        if (position < length) position++;
+        return doc();
+    }
+
+    /***
+     *  Moves to the first doc id which is greater or equal to the target, never moves backwards
+     * @param target doc id
+     * @return the doc id, NO_MORE_DOCS if there is no such doc id
+     */
+    public int advance(int target) {
+        if (position >= 0 && (position >= length || docIds[position] >= target)) return doc();
+        if (skipDocIds != null) {
+            int skip = (position < 0 ? 0 : position / interval) + 1;
+            while (skip < skipDocIds.length && skipDocIds[skip] <= target) skip++;
+            int jump = (skip - 1) * interval;
+            if (jump > position) position = jump - 1;
+        }
+        while (++position < length) {
+            if (docIds[position] >= target) return docIds[position];
+        }
+        return NO_MORE_DOCS;
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public int doc() {
+        return position < 0 ? -1 : position >= length ? NO_MORE_DOCS : docIds[position];
+    }
+    public int position() {
+        return position;
+    }
+    public int cost() {
+        return length;
+    }
+}
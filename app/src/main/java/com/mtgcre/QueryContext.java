@@ -0,0 +1,107 @@
+package com.mtgcre;
+
+import java.util.ArrayList;
+
+/***
+ *  A QueryContext object contains everything that belongs to a single search, so searches do not share any
+ *  mutable state and can run on many threads at once:
+ *      index (the snapshot the search runs against)
+ *      timer (phase timings of the search, null if the metrics are turned off)
+ *      cancellation (lets the caller stop the search, checked regularly while the search runs)
+ *      specificRulings (if an exact rule number is entered in a search, it's matching rule will be stored here)
+ *      specificGlossaries (if an exact glossary word is entered in a search, it's matching glossary entry will be stored here)
+ *      sum_W_ij_W_ik, sum_W_ij, matched, possibleDocuments (the per document accumulators of the cosine measure)
+ *      facets (counts of the matching documents by chapter, null if the caller did not ask for them)
+ */
+public class QueryContext {
+
+    private final IndexSnapshot index;
+    private final QueryTimer timer;
+    private final CancellationToken cancellation;
+    private final ArrayList<Document> specificRulings;
+    private final ArrayList<Document> specificGlossaries;
+    private double[] sum_W_ij_W_ik;
+    private double[] sum_W_ij;
+    private int[] matched;
+    private int[] possibleDocuments;
+    private FacetCounts facets;
+
+    public QueryContext(IndexSnapshot index, QueryTimer timer, CancellationToken cancellation) {
+        this.index = index;
+        this.timer = timer;
+        this.cancellation = cancellation;
+        this.specificRulings = new ArrayList<>();
+        this.specificGlossaries = new ArrayList<>();
+    }
+
+    /***
+     *  Allocates the accumulators, one slot for every document of the snapshot
+     */
+    public void createAccumulators() {
+        int documentCount = index.documentCount();
+        this.sum_W_ij_W_ik = new double[documentCount];
+        this.sum_W_ij = new double[documentCount];
+        this.matched = new int[documentCount];
+        this.possibleDocuments = new int[documentCount];
+    }
+
+    /***
+     *  Lends accumulators of an earlier search to this one, instead of allocating new ones. The sums and counts have
+     *  to be all zeros (see clearAccumulators()).
+     */
+    public void useAccumulators(QueryContext previous) {
+        this.sum_W_ij_W_ik = previous.sum_W_ij_W_ik;
+        this.sum_W_ij = previous.sum_W_ij;
+        this.matched = previous.matched;
+        this.possibleDocuments = previous.possibleDocuments;
+    }
+
+    /***
+     *  Zeroes the accumulators of the collected candidates, so they can be lent to another search
+     * @param candidates number of documents in possibleDocuments
+     */
+    public void clearAccumulators(int candidates) {
+        for (int c = 0; c < candidates; c++) {
+            int doc = possibleDocuments[c];
+            sum_W_ij_W_ik[doc] = 0.0;
+            sum_W_ij[doc] = 0.0;
+            matched[doc] = 0;
+        }
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public IndexSnapshot getIndex() {
+        return index;
+    }
+    public QueryTimer getTimer() {
+        return timer;
+    }
+    public CancellationToken getCancellation() {
+        return cancellation;
+    }
+    public ArrayList<Document> getSpecificRulings() {
+        return specificRulings;
+    }
+    public ArrayList<Document> getSpecificGlossaries() {
+        return specificGlossaries;
+    }
+    public double[] getSum_W_ij_W_ik() {
+        return sum_W_ij_W_ik;
+    }
+    public double[] getSum_W_ij() {
+        return sum_W_ij;
+    }
+    public int[] getMatched() {
+        return matched;
+    }
+    public int[] getPossibleDocuments() {
+        return possibleDocuments;
+    }
+    public FacetCounts getFacets() {
+        return facets;
+    }
+    public void setFacets(FacetCounts facets) {
+        this.facets = facets;
+    }
+}
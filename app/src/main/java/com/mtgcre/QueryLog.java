@@ -0,0 +1,235 @@
+package com.mtgcre;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/***
+ *  A QueryLog object records the searches of an engine for tuning the stoplist and the ranking offline:
+ *      entries (a ring of preallocated entries: time, question, analyzed indexes, result count, top result, latency)
+ *      sequences (the turn of each entry of the ring, so the searching threads and the writer hand them over
+ *      without a lock)
+ *      tail (number of entries ever claimed by the searches), head (number of entries ever written)
+ *      file (the log file, renamed to file.1, file.2 ... when it gets bigger than maxBytes, see rotate())
+ *      dropped (number of searches which found the ring full)
+ *  Recording a search only claims an entry with a compare and set and stores the references it already has, it
+ *  never waits: if the writer is behind and the ring is full, the search is dropped and counted instead. A
+ *  background thread drains the ring every FLUSH_MILLIS and writes the entries in one batch, one line per search:
+ *      time in ms \t latency in microseconds \t result count \t top result \t indexes separated by spaces \t question
+ */
+public class QueryLog {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final long DEFAULT_MAX_BYTES = 1 << 20;
+    public static final int DEFAULT_MAX_FILES = 3;
+    private static final long FLUSH_MILLIS = 2000;
+
+    /***
+     *  A search waiting in the ring to be written
+     */
+    private static class Entry {
+        private long timeMillis;
+        private long latencyNanos;
+        private int resultCount;
+        private String topTitle;
+        private Collection<String> terms;
+        private String question;
+    }
+
+    private final Entry[] entries;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail;
+    private long head;
+    private final LongAdder dropped;
+    private long reportedDropped;
+    private final File file;
+    private final long maxBytes;
+    private final int maxFiles;
+    private final ScheduledExecutorService writer;
+    private final StringBuilder line;
+
+    /***
+     *  Creates the log and starts its writer
+     * @param file the log file, appended to if it exists
+     * @param capacity number of entries in the ring, rounded up to a power of two
+     * @param maxBytes size of the file that starts a new one
+     * @param maxFiles number of files kept, the current one included
+     */
+    public QueryLog(File file, int capacity, long maxBytes, int maxFiles) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.entries = new Entry[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            entries[i] = new Entry();
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.tail = new AtomicLong();
+        this.dropped = new LongAdder();
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxFiles = Math.max(1, maxFiles);
+        this.line = new StringBuilder();
+        this.writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "query-log");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        this.writer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public QueryLog(File file) {
+        this(file, DEFAULT_CAPACITY, DEFAULT_MAX_BYTES, DEFAULT_MAX_FILES);
+    }
+
+    /***
+     *  Records a finished search, from any thread. The collection of the indexes must not be changed afterwards.
+     * @param question the question as it was entered
+     * @param terms the analyzed indexes of the question
+     * @param resultCount number of answers
+     * @param topTitle title of the first answer, null if there is none
+     * @param latencyNanos duration of the search
+     * @return false if the ring was full and the search was dropped
+     */
+    public boolean record(String question, Collection<String> terms, int resultCount, String topTitle, long latencyNanos) {
+        long position = tail.get();
+        while (true) {
+            long difference = sequences.get((int) position & mask) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) break;
+                position = tail.get();
+            } else if (difference < 0) {
+                dropped.increment();
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+        Entry entry = entries[(int) position & mask];
+        entry.timeMillis = System.currentTimeMillis();
+        entry.latencyNanos = latencyNanos;
+        entry.resultCount = resultCount;
+        entry.topTitle = topTitle;
+        entry.terms = terms;
+        entry.question = question;
+        sequences.lazySet((int) position & mask, position + 1);
+        return true;
+    }
+
+    /***
+     *  Writes every recorded entry to the file, called by the writer thread. The entries are given back to the ring
+     *  as soon as they are formatted, the file is only opened if there is something to write.
+     */
+    public synchronized void flush() {
+        line.setLength(0);
+        long dropped = this.dropped.sum();
+        if (dropped != reportedDropped) {
+            line.append("# dropped ").append(dropped - reportedDropped).append('\n');
+            reportedDropped = dropped;
+        }
+        while (true) {
+            int slot = (int) head & mask;
+            if (sequences.get(slot) != head + 1) break;
+            Entry entry = entries[slot];
+            line.append(entry.timeMillis).append('\t')
+                    .append(entry.latencyNanos / 1000).append('\t')
+                    .append(entry.resultCount).append('\t')
+                    .append(entry.topTitle == null ? "-" : entry.topTitle).append('\t');
+            int term = 0;
+            for (String index : entry.terms) {
+                if (term++ > 0) line.append(' ');
+                line.append(index);
+            }
+            line.append('\t');
+            appendClean(entry.question);
+            line.append('\n');
+            entry.topTitle = null;
+            entry.terms = null;
+            entry.question = null;
+            sequences.lazySet(slot, head + entries.length);
+            head++;
+        }
+        if (line.length() == 0) return;
+
+        try {
+            if (file.length() + line.length() > maxBytes) rotate();
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+                out.append(line);
+            }
+        } catch (IOException e) {
+            /* the log is only for tuning, a failed batch is lost and the searches go on */
+        }
+    }
+
+    /***
+     *  The tabs and line breaks of a question would break its line, they are written as spaces
+     */
+    private void appendClean(String question) {
+        for (int i = 0; i < question.length(); i++) {
+            char c = question.charAt(i);
+            line.append(c == '\t' || c == '\n' || c == '\r' ? ' ' : c);
+        }
+    }
+
+    /***
+     *  Shifts file.1 to file.2 ... and the current file to file.1, the oldest one is deleted
+     */
+    private void rotate() {
+        if (maxFiles == 1) {
+            file.delete();
+            return;
+        }
+        new File(file.getPath() + "." + (maxFiles - 1)).delete();
+        for (int i = maxFiles - 2; i >= 1; i--) {
+            File older = new File(file.getPath() + "." + i);
+            if (older.exists()) older.renameTo(new File(file.getPath() + "." + (i + 1)));
+        }
+        file.renameTo(new File(file.getPath() + ".1"));
+    }
+
+    /***
+     *  Stops the writer after writing what is left in the ring
+     */
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public File getFile() {
+        return file;
+    }
+    public int getCapacity() {
+        return entries.length;
+    }
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+}
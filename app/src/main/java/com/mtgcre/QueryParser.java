@@ -0,0 +1,261 @@
+package com.mtgcre;
+
+import java.util.ArrayList;
+
+/***
+ *  Parses questions written with boolean operators into a BooleanQuery:
+ *      +word or word AND word (required)
+ *      -word or NOT word (excluded)
+ *      word or word OR word (optional, this is how a question without operators is treated too)
+ *      ( ... ) (grouping, the group can have a +, - or NOT in front of it as well)
+ *      "exact text" (a phrase, found as it is written with the TrigramIndex, eg. "Gutter Grime", "+1/+1" or "{T}",
+ *      it can have a +, - or NOT in front of it too)
+ *  AND binds tighter than OR: a OR b AND c is a OR (b AND c), the clauses joined by AND are one group of required
+ *  clauses. A + or - is only an operator when it is attached to a letter, a quote or a "(", so a lone "-" between
+ *  words (deathtouch - trample) is just punctuation.
+ *  The operators AND, OR and NOT are only recognized in upper case, so a normal question with "and" or "not"
+ *  in it is not affected. The words are analyzed the same way as the documents (see SearchEngine.analyze()).
+ */
+public class QueryParser {
+
+    private static final String LEFT = "(";
+    private static final String RIGHT = ")";
+    private static final char QUOTE = '"';
+
+    private final ArrayList<String> tokens;
+    private final SearchEngine searchEngine;
+    private int position;
+
+    private QueryParser(String question, SearchEngine searchEngine) {
+        this.tokens = split(question);
+        this.searchEngine = searchEngine;
+        this.position = 0;
+    }
+
+    /***
+     *  Checks if a question uses any of the operators, if not it is searched as before
+     * @param question string which was entered
+     * @return boolean
+     */
+    public static boolean hasOperators(String question) {
+        for (String token : split(question)) {
+            if (token.equals(LEFT) || token.equals("AND") || token.equals("OR") || token.equals("NOT") || isPrefixed(token)
+                    || isPhrase(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /***
+     *  Parses the question
+     * @param question string which was entered
+     * @param searchEngine analyzes the words of the question
+     * @return the root group of the query
+     */
+    public static BooleanQuery parse(String question, SearchEngine searchEngine) {
+        QueryParser parser = new QueryParser(question, searchEngine);
+        BooleanQuery query = parser.parseGroup();
+        /* unbalanced closing parentheses are ignored */
+        while (parser.position < parser.tokens.size()) {
+            parser.position++;
+            BooleanQuery rest = parser.parseGroup();
+            if (!rest.isEmpty()) query.add(rest, BooleanQuery.Occur.SHOULD);
+        }
+        return query;
+    }
+
+    /***
+     *  The words of a question with operators which are looked up as rule numbers and glossary entries: the
+     *  excluded clauses (-word, NOT word, -( ... ), -"phrase") are left out, and so are the operators and the
+     *  parentheses. The question is split the same way as it is parsed, so both agree on what is excluded.
+     * @param question string which was entered
+     * @return the remaining words separated by spaces
+     */
+    public static String lookupText(String question) {
+        ArrayList<String> tokens = split(question);
+        StringBuilder text = new StringBuilder();
+        boolean excluded = false;
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (token.equals("NOT")) {
+                excluded = true;
+                continue;
+            }
+            if (isPrefixed(token)) {
+                excluded |= token.charAt(0) == '-';
+                token = token.substring(1);
+            }
+            if (excluded) {
+                excluded = false;
+                /* an excluded group is skipped up to its closing parenthesis */
+                for (int depth = token.equals(LEFT) ? 1 : 0; depth > 0 && i + 1 < tokens.size(); ) {
+                    String next = tokens.get(++i);
+                    if (next.equals(RIGHT)) depth--;
+                    else if (next.endsWith(LEFT)) depth++;
+                }
+                continue;
+            }
+            if (token.equals(LEFT) || token.equals(RIGHT) || token.equals("AND") || token.equals("OR")) continue;
+            if (text.length() > 0) text.append(' ');
+            /* a word the analysis splits (first-strike) is looked up as its parts, as it is searched */
+            text.append(isPhrase(token) ? token : token.replaceAll("[+\\-]+(?=[a-zA-Z])", " "));
+        }
+        return text.toString();
+    }
+
+    /***
+     *  Parses the clauses up to the closing parenthesis of the group. A run of clauses joined by AND is collected
+     *  into one group first (its clauses are required, or excluded with a -), which is then added to the enclosing
+     *  group as an optional clause like any other word.
+     */
+    private BooleanQuery parseGroup() {
+        BooleanQuery group = BooleanQuery.group();
+        BooleanQuery last = null;
+        BooleanQuery.Occur lastOccur = null;
+        BooleanQuery run = null;
+        boolean and = false;
+        BooleanQuery.Occur prefix = null;
+
+        while (position < tokens.size()) {
+            String token = tokens.get(position);
+            if (token.equals(RIGHT)) break;
+            position++;
+
+            if (token.equals("AND")) {
+                and = last != null;
+                continue;
+            }
+            if (token.equals("OR")) {
+                and = false;
+                continue;
+            }
+            if (token.equals("NOT")) {
+                prefix = BooleanQuery.Occur.MUST_NOT;
+                continue;
+            }
+
+            if (isPrefixed(token)) {
+                prefix = token.charAt(0) == '+' ? BooleanQuery.Occur.MUST : BooleanQuery.Occur.MUST_NOT;
+                token = token.substring(1);
+            }
+
+            BooleanQuery clause;
+            if (token.equals(LEFT)) {
+                clause = parseGroup();
+                if (position < tokens.size()) position++;
+            } else if (isPhrase(token)) {
+                clause = analyzePhrase(token);
+            } else {
+                clause = analyzeWord(token);
+            }
+
+            BooleanQuery.Occur occur = prefix != null ? prefix : BooleanQuery.Occur.SHOULD;
+            if (clause != null && !clause.isEmpty()) {
+                if (and) {
+                    if (run == null) {
+                        run = BooleanQuery.group();
+                        run.add(last, required(lastOccur));
+                    }
+                    run.add(clause, required(occur));
+                } else {
+                    addClause(group, last, lastOccur, run);
+                    run = null;
+                }
+                last = clause;
+                lastOccur = occur;
+            }
+            prefix = null;
+            and = false;
+        }
+        addClause(group, last, lastOccur, run);
+        return group;
+    }
+
+    /***
+     *  Adds the last clause to its group, or the run of AND clauses it ended if there was one
+     */
+    private static void addClause(BooleanQuery group, BooleanQuery last, BooleanQuery.Occur lastOccur, BooleanQuery run) {
+        if (run != null) {
+            group.add(run, BooleanQuery.Occur.SHOULD);
+        } else if (last != null) {
+            group.add(last, lastOccur);
+        }
+    }
+
+    /***
+     *  Within a run of AND clauses every clause is required, unless it is excluded
+     */
+    private static BooleanQuery.Occur required(BooleanQuery.Occur occur) {
+        return occur == BooleanQuery.Occur.MUST_NOT ? BooleanQuery.Occur.MUST_NOT : BooleanQuery.Occur.MUST;
+    }
+
+    /***
+     *  A word can be analyzed into more than one index (eg. first-strike), those are all required
+     */
+    private BooleanQuery analyzeWord(String word) {
+        ArrayList<String> terms = searchEngine.analyze(word);
+        if (terms.isEmpty()) return null;
+        if (terms.size() == 1) return BooleanQuery.leaf(terms.get(0));
+        BooleanQuery group = BooleanQuery.group();
+        for (String term : terms) {
+            group.add(BooleanQuery.leaf(term), BooleanQuery.Occur.MUST);
+        }
+        return group;
+    }
+
+    /***
+     *  A phrase is searched without any analysis, its words are only analyzed for the scoring
+     */
+    private BooleanQuery analyzePhrase(String token) {
+        int end = token.length() > 1 && token.charAt(token.length() - 1) == QUOTE ? token.length() - 1 : token.length();
+        String text = token.substring(1, end);
+        if (text.trim().isEmpty()) return null;
+        return BooleanQuery.phrase(text, searchEngine.analyze(text));
+    }
+
+    /***
+     *  Splits on whitespace and separates the parentheses from the words, a quoted phrase is one token with its
+     *  quotes (an unclosed one goes on to the end of the question). A + or - right before a "(" stays attached to
+     *  it as one token (+( or -().
+     */
+    private static ArrayList<String> split(String question) {
+        ArrayList<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < question.length(); i++) {
+            char c = question.charAt(i);
+            if (c == QUOTE) {
+                quoted = !quoted;
+                token.append(c);
+            } else if (quoted || (c != '(' && c != ')' && c > ' ')) {
+                token.append(c);
+            } else if (c == '(' && token.length() == 1 && (token.charAt(0) == '+' || token.charAt(0) == '-')) {
+                token.append(c);
+                addToken(tokens, token);
+            } else {
+                addToken(tokens, token);
+                if (c == '(' || c == ')') tokens.add(String.valueOf(c));
+            }
+        }
+        addToken(tokens, token);
+        return tokens;
+    }
+
+    private static void addToken(ArrayList<String> tokens, StringBuilder token) {
+        if (token.length() != 0) tokens.add(token.toString());
+        token.setLength(0);
+    }
+
+    private static boolean isPhrase(String token) {
+        return token.charAt(0) == QUOTE;
+    }
+
+    /***
+     *  +word, -word, +"phrase", +( and -( are operators, but +1/+1, -1 or a lone + or - are not
+     */
+    private static boolean isPrefixed(String token) {
+        if (token.length() < 2 || (token.charAt(0) != '+' && token.charAt(0) != '-')) return false;
+        return Character.isLetter(token.charAt(1)) || token.charAt(1) == QUOTE || token.charAt(1) == '(';
+    }
+}
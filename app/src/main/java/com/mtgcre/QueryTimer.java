@@ -0,0 +1,63 @@
+package com.mtgcre;
+
+/***
+ *  A QueryTimer object contains the measurements of a single query as:
+ *      nanos (time spent in each phase of the search, indexed by SearchMetrics.Phase)
+ *      candidates (number of documents which were scored)
+ *      postings (number of postings touched while collecting and scoring)
+ *  Phases are measured by calling start() and stop() around them, one phase at a time.
+ */
+public class QueryTimer {
+
+    private final long startedAt;
+    private final long[] nanos;
+    private long phaseStartedAt;
+    private int candidates;
+    private long postings;
+
+    public QueryTimer() {
+        this.startedAt = System.nanoTime();
+        this.nanos = new long[SearchMetrics.Phase.values().length];
+    }
+
+    /***
+     *  Starts measuring a phase
+     */
+    public void start() {
+        phaseStartedAt = System.nanoTime();
+    }
+
+    /***
+     *  Stops measuring a phase and adds the elapsed time to it
+     * @param phase the phase which was measured since the last start()
+     */
+    public void stop(SearchMetrics.Phase phase) {
+        nanos[phase.ordinal()] += System.nanoTime() - phaseStartedAt;
+    }
+
+    /***
+     *  Closes the measurement of the whole query
+     */
+    void finish() {
+        nanos[SearchMetrics.Phase.TOTAL.ordinal()] = System.nanoTime() - startedAt;
+    }
+
+    public void addPostings(long count) {
+        postings += count;
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public long getNanos(SearchMetrics.Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+    public int getCandidates() {
+        return candidates;
+    }
+    public void setCandidates(int candidates) {
+        this.candidates = candidates;
+    }
+    public long getPostings() {
+        return postings;
+    }
+}
@@ -1,6 +1,7 @@
 package com.mtgcre;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 
@@ -8,17 +9,40 @@ import java.util.HashMap;
  *  A QuestionData object contains data of the question as:
  *      post (pairs of index in the question and it's occurrence)
  *      w_i (pairs of i index and it's weight in the question)
+ *      termIds, weights (the same weights as w_i, ordered by the term ids of the indexes)
+ *      booleanQuery (the parsed query if the question used boolean operators, otherwise null)
+ *      sections ([from, to) doc id pairs the question is restricted to with in:, null for the whole rulebook)
  */
 public class QuestionData {
     private final HashMap<String, Integer> posts;
     private final HashMap<String, Double> w_i;
+    private int[] termIds;
+    private double[] weights;
+    private BooleanQuery booleanQuery;
+    private int[] sections;
 
 
-    public QuestionData(ArrayList<String> questionArrayList, SearchEngine searchEngine){
+    public QuestionData(ArrayList<String> questionArrayList, IndexSnapshot index){
         posts = new HashMap<>();
         w_i = new HashMap<>();
         this.createPosts(questionArrayList);
-        this.createWeights(searchEngine);
+        this.createWeights(index);
+        this.sortWeights(index);
+    }
+
+    /***
+     *  Creates the question from the forward index of a document, for "more like this" searches
+     * @param document a document of the engine
+     * @param index the index snapshot the search runs against
+     */
+    public QuestionData(Document document, IndexSnapshot index){
+        posts = new HashMap<>();
+        w_i = new HashMap<>();
+        for (int i = 0; i < document.getTermIds().length; i++) {
+            this.posts.put(index.getDictionary().term(document.getTermIds()[i]), document.getTermFrequencies()[i]);
+        }
+        this.createWeights(index);
+        this.sortWeights(index);
     }
 
     /***
@@ -37,11 +61,11 @@ public class QuestionData {
 
     /***
      *  Creates the weights map
-     * @param searchEngine is the main engine that controls the actual search
+     * @param index the index snapshot the search runs against
      */
-    private void createWeights(SearchEngine searchEngine) {
+    private void createWeights(IndexSnapshot index) {
         this.posts.forEach(
-                (key,value)-> weightCalculator(key, value, searchEngine)
+                (key,value)-> weightCalculator(key, value, index)
         );
     }
 
@@ -49,23 +73,61 @@ public class QuestionData {
      * Calculates a weight for an index with the TF-IDF formula
      * @param key index as a word
      * @param value index's occurrences in the question
-     * @param searchEngine is the main engine that controls the actual search
+     * @param index the index snapshot the search runs against
      */
-    private void weightCalculator(String key, Integer value, SearchEngine searchEngine){
-        if (searchEngine.getInverseIndexes().containsKey(key)){
+    private void weightCalculator(String key, Integer value, IndexSnapshot index){
+        if (index.getInverseIndexes().containsKey(key)){
             int f_ij = value;
-            Double m = (double) searchEngine.getDocuments().size() + 1;
+            Double m = (double) index.documentCount() + 1;
 
-            IndexData indexData = searchEngine.getInverseIndexes().get(key);
-            Double F_i = (double) indexData.getW_ij().size() + 1;
+            IndexData indexData = index.getInverseIndexes().get(key);
+            Double F_i = (double) indexData.getDocumentFrequency() + 1;
 
             double y = f_ij*Math.log10(m/F_i);
             w_i.put(key, y);
         }
     }
 
+    /***
+     *  Creates the term id ordered arrays of the weights, the engine adds up the indexes in this order
+     * @param index the index snapshot the search runs against
+     */
+    private void sortWeights(IndexSnapshot index) {
+        this.termIds = new int[w_i.size()];
+        int position = 0;
+        for (String key : w_i.keySet()) {
+            termIds[position++] = index.getDictionary().id(key);
+        }
+        Arrays.sort(termIds);
+        this.weights = new double[termIds.length];
+        for (int i = 0; i < termIds.length; i++) {
+            weights[i] = w_i.get(index.getDictionary().term(termIds[i]));
+        }
+    }
+
     /** GETTERS & SETTERS **/
+    public HashMap<String, Integer> getPosts() {
+        return posts;
+    }
     public HashMap<String, Double> getW_i() {
         return w_i;
     }
+    public int[] getTermIds() {
+        return termIds;
+    }
+    public double[] getWeights() {
+        return weights;
+    }
+    public BooleanQuery getBooleanQuery() {
+        return booleanQuery;
+    }
+    public void setBooleanQuery(BooleanQuery booleanQuery) {
+        this.booleanQuery = booleanQuery;
+    }
+    public int[] getSections() {
+        return sections;
+    }
+    public void setSections(int[] sections) {
+        this.sections = sections;
+    }
 }
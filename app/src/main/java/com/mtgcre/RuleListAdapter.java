@@ -0,0 +1,164 @@
+package com.mtgcre;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.widget.AppCompatTextView;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/***
+ *  Shows the rows of a rule list (see RuleRow) in a RecyclerView:
+ *      the rows have stable ids, and a new list is compared to the shown one on a background thread, so only the
+ *      changed rows are bound again
+ *      the styled text of a row is measured on a background thread too (PrecomputedTextCompat), the main thread
+ *      only lays out the measured text
+ *      the examples of a rule are collapsed, a click on their toggle opens or closes them
+ */
+public class RuleListAdapter extends ListAdapter<RuleRow, RuleListAdapter.RowHolder> {
+
+    /***
+     *  Receives the clicks on the rule rows (not on the headers or the glossary entries)
+     */
+    public interface OnRuleClickListener {
+        void onRuleClick(RuleRow row);
+    }
+
+    private static final DiffUtil.ItemCallback<RuleRow> DIFF = new DiffUtil.ItemCallback<RuleRow>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull RuleRow oldRow, @NonNull RuleRow newRow) {
+            return oldRow.getId() == newRow.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull RuleRow oldRow, @NonNull RuleRow newRow) {
+            return oldRow.hasSameContent(newRow);
+        }
+    };
+
+    private static final Executor LAYOUT_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "mtgcre-layout");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /** Payload of a row whose examples were opened or closed, only the examples are bound again */
+    private static final Object EXPANSION = new Object();
+
+    private final OnRuleClickListener listener;
+    private final Set<Long> expanded = new HashSet<>();
+
+    public RuleListAdapter(OnRuleClickListener listener) {
+        super(DIFF);
+        this.listener = listener;
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getId();
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return getItem(position).getType() == RuleRow.TYPE_HEADER ? RuleRow.TYPE_HEADER : RuleRow.TYPE_RULE;
+    }
+
+    @NonNull
+    @Override
+    public RowHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        int layout = viewType == RuleRow.TYPE_HEADER ? R.layout.item_rule_header : R.layout.item_rule;
+        return new RowHolder(LayoutInflater.from(parent.getContext()).inflate(layout, parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RowHolder holder, int position) {
+        RuleRow row = getItem(position);
+        setPrecomputedText(holder.text, row.getText());
+        if (holder.examples != null) {
+            holder.itemView.setOnClickListener(row.getType() == RuleRow.TYPE_RULE && listener != null
+                    ? view -> click(holder.getBindingAdapterPosition())
+                    : null);
+            holder.examplesToggle.setOnClickListener(view -> toggle(holder.getBindingAdapterPosition()));
+            bindExamples(holder, row);
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RowHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(EXPANSION) && holder.examples != null) {
+            bindExamples(holder, getItem(position));
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
+    private void bindExamples(RowHolder holder, RuleRow row) {
+        if (row.getExampleCount() == 0) {
+            holder.examplesToggle.setVisibility(View.GONE);
+            holder.examples.setVisibility(View.GONE);
+            return;
+        }
+        boolean open = expanded.contains(row.getId());
+        holder.examplesToggle.setVisibility(View.VISIBLE);
+        holder.examplesToggle.setText(open
+                ? holder.itemView.getContext().getString(R.string.examples_hide)
+                : holder.itemView.getResources().getQuantityString(R.plurals.examples_show, row.getExampleCount(), row.getExampleCount()));
+        if (open) {
+            setPrecomputedText(holder.examples, row.getExamples());
+            holder.examples.setVisibility(View.VISIBLE);
+        } else {
+            holder.examples.setVisibility(View.GONE);
+        }
+    }
+
+    private void click(int position) {
+        if (position != RecyclerView.NO_POSITION) listener.onRuleClick(getItem(position));
+    }
+
+    private void toggle(int position) {
+        if (position == RecyclerView.NO_POSITION) return;
+        long id = getItem(position).getId();
+        if (!expanded.remove(id)) expanded.add(id);
+        notifyItemChanged(position, EXPANSION);
+    }
+
+    /***
+     *  Measures the text on the layout thread, the view shows it once it is measured
+     */
+    private static void setPrecomputedText(AppCompatTextView view, CharSequence text) {
+        view.setTextFuture(PrecomputedTextCompat.getTextFuture(text, TextViewCompat.getTextMetricsParams(view), LAYOUT_EXECUTOR));
+    }
+
+    /***
+     *  Views of a row, the examples are null for a header
+     */
+    static class RowHolder extends RecyclerView.ViewHolder {
+        final AppCompatTextView text;
+        final TextView examplesToggle;
+        final AppCompatTextView examples;
+
+        RowHolder(View itemView) {
+            super(itemView);
+            this.text = itemView.findViewById(R.id.rule_text);
+            this.examplesToggle = itemView.findViewById(R.id.rule_examples_toggle);
+            this.examples = itemView.findViewById(R.id.rule_examples);
+        }
+    }
+}
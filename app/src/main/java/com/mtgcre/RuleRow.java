@@ -0,0 +1,63 @@
+package com.mtgcre;
+
+/***
+ *  A RuleRow object is one row of a rule list (ShowRules, ShowDeepRules), ready to be shown:
+ *      id (stable id of the row, the doc id of a rule in its group of the list, see RuleRowFormatter)
+ *      type (a rule, a glossary entry or a header of the list)
+ *      title (title of the rule or the glossary entry, the header's text for a header)
+ *      text (the styled text of the row)
+ *      examples (the styled examples of a rule, empty if it has none)
+ *      exampleCount (number of examples)
+ *  Rows are immutable, so a list can be compared to the previous one on any thread.
+ */
+public class RuleRow {
+
+    public static final int TYPE_RULE = 0;
+    public static final int TYPE_GLOSSARY = 1;
+    public static final int TYPE_HEADER = 2;
+
+    private final long id;
+    private final int type;
+    private final String title;
+    private final CharSequence text;
+    private final CharSequence examples;
+    private final int exampleCount;
+
+    public RuleRow(long id, int type, String title, CharSequence text, CharSequence examples, int exampleCount) {
+        this.id = id;
+        this.type = type;
+        this.title = title;
+        this.text = text;
+        this.examples = examples;
+        this.exampleCount = exampleCount;
+    }
+
+    /***
+     *  Whether the row shows the same thing as another one. The styled texts are compared by identity: an unchanged
+     *  row comes from the formatter's cache, so it is the same object.
+     */
+    public boolean hasSameContent(RuleRow other) {
+        return type == other.type && title.equals(other.title) && text == other.text && examples == other.examples;
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public long getId() {
+        return id;
+    }
+    public int getType() {
+        return type;
+    }
+    public String getTitle() {
+        return title;
+    }
+    public CharSequence getText() {
+        return text;
+    }
+    public CharSequence getExamples() {
+        return examples;
+    }
+    public int getExampleCount() {
+        return exampleCount;
+    }
+}
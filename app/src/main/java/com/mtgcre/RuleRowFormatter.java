@@ -0,0 +1,234 @@
+package com.mtgcre;
+
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.BackgroundColorSpan;
+import android.text.style.StyleSpan;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/***
+ *  Prepares the rows of the rule lists on a background thread and caches them, so binding a row on the main thread
+ *  only sets an already styled text. A row is styled as:
+ *      the rule number (or the glossary entry's title) in bold
+ *      the words of the text whose stem is one of the question's indexes highlighted
+ *      the examples in italic, in their own text (they are collapsed in the list)
+ *  The cache is shared by every list and keyed by the row's id and the highlighted indexes. The rows of the
+ *  rulebook browser are cached by chunk.
+ */
+public class RuleRowFormatter {
+
+    private static final int CACHE_SIZE = 256;
+    private static final int CHUNK_CACHE_SIZE = 8;
+    private static final int HIGHLIGHT_COLOR = 0x66FFC107;
+
+    /** Groups of a list, a rule may be in several of them (eg. its subsection and the related rules) */
+    public static final int GROUP_RESULTS = 0;
+    public static final int GROUP_RELATED = 1;
+    public static final int GROUP_RULEBOOK = 2;
+    private static final int GROUP_HEADERS = 0xFF;
+
+    private static final RuleRowFormatter SHARED = new RuleRowFormatter();
+
+    private final LruCache<String, RuleRow> rows = new LruCache<>(CACHE_SIZE);
+    private final LruCache<Integer, List<RuleRow>> chunks = new LruCache<>(CHUNK_CACHE_SIZE);
+
+    public static RuleRowFormatter shared() {
+        return SHARED;
+    }
+
+    /***
+     *  Creates the rows of a list of documents, reusing the cached ones
+     * @param searchEngine engine the documents come from
+     * @param documents rules and glossary entries (a document which is not in the engine's rules is a glossary entry)
+     * @param group group of the rows in their list (GROUP_RESULTS, GROUP_RELATED)
+     * @param terms stemmed indexes to highlight, see SearchEngine.analyze(), empty for none
+     * @return the rows in the order of the documents
+     */
+    public List<RuleRow> format(SearchEngine searchEngine, List<Document> documents, int group, Collection<String> terms) {
+        Set<String> highlighted = new HashSet<>(terms);
+        String highlight = new TreeSet<>(terms).toString();
+        Map<String, Document> rules = searchEngine.getDocuments();
+        ArrayList<RuleRow> formatted = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            boolean rule = rules.get(document.getTitle()) == document;
+            long id = ((long) group << 40) | (rule ? document.getId() : (1L << 32) | (document.getTitle().hashCode() & 0xFFFFFFFFL));
+            String key = id + highlight;
+            RuleRow row = rows.get(key);
+            if (row == null) {
+                row = rule ? rule(searchEngine, document, id, highlighted) : glossary(searchEngine, document, id, highlighted);
+                rows.put(key, row);
+            }
+            formatted.add(row);
+        }
+        return formatted;
+    }
+
+    /***
+     *  Drops every cached row, to give back memory when the system runs low on it. The rows are styled again the
+     *  next time a list shows them.
+     * @return the number of dropped rows and chunks
+     */
+    public int trimMemory() {
+        int dropped = rows.size() + chunks.size();
+        rows.evictAll();
+        chunks.evictAll();
+        return dropped;
+    }
+
+    /***
+     *  Creates the row of a header of a list
+     * @param position position of the header among the headers of the list
+     * @param text text of the header
+     */
+    public RuleRow header(int position, String text) {
+        SpannableStringBuilder styled = new SpannableStringBuilder(text);
+        styled.setSpan(new StyleSpan(Typeface.BOLD), 0, text.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        return new RuleRow(((long) GROUP_HEADERS << 40) | position, RuleRow.TYPE_HEADER, text, styled, "", 0);
+    }
+
+    /***
+     *  Creates the rows of the entries right below an entry of the rulebook, one row per entry with its line
+     * @param rulebook the table of contents
+     * @param parent position of the entry, -1 for the sections
+     */
+    public List<RuleRow> outline(RulebookIndex rulebook, int parent) {
+        int[] children = rulebook.children(parent);
+        ArrayList<RuleRow> outline = new ArrayList<>(children.length);
+        for (int entry : children) {
+            outline.add(new RuleRow(rulebookId(entry), RuleRow.TYPE_RULE, rulebook.number(entry),
+                    numbered(rulebook.line(entry)), "", 0));
+        }
+        return outline;
+    }
+
+    /***
+     *  Creates the rows of the chunk of an entry of the rulebook, only that part of the rules file is decoded.
+     *  The section and chapter lines are headers, every rule and subrule is a row with its examples, and the
+     *  unnumbered lines are added to the text of the row above them.
+     * @param rulebook the table of contents
+     * @param entry position of the entry
+     */
+    public List<RuleRow> chunk(final RulebookIndex rulebook, int entry) {
+        List<RuleRow> cached = chunks.get(entry);
+        if (cached != null) return cached;
+
+        final ArrayList<RuleRow> chunk = new ArrayList<>();
+        final int[] current = {-1};
+        final SpannableStringBuilder[] text = new SpannableStringBuilder[1];
+        final SpannableStringBuilder examples = new SpannableStringBuilder();
+        final int[] exampleCount = new int[1];
+        rulebook.readChunk(entry, new RulebookIndex.ChunkHandler() {
+            @Override
+            public void line(int kind, int lineEntry, String line) {
+                if (kind == RulebookIndex.LINE_ENTRY) {
+                    addChunkRow(rulebook, chunk, current[0], text[0], examples, exampleCount[0]);
+                    current[0] = lineEntry;
+                    text[0] = numbered(line);
+                    examples.clear();
+                    exampleCount[0] = 0;
+                } else if (kind == RulebookIndex.LINE_EXAMPLE) {
+                    if (examples.length() > 0) examples.append("\n\n");
+                    examples.append(line);
+                    exampleCount[0]++;
+                } else {
+                    text[0].append('\n').append(line.trim());
+                }
+            }
+        });
+        addChunkRow(rulebook, chunk, current[0], text[0], examples, exampleCount[0]);
+        chunks.put(entry, chunk);
+        return chunk;
+    }
+
+    private static void addChunkRow(RulebookIndex rulebook, List<RuleRow> chunk, int entry, SpannableStringBuilder text,
+                                    SpannableStringBuilder examples, int exampleCount) {
+        if (entry < 0) return;
+        if (rulebook.getLevel(entry) <= RulebookIndex.CHAPTER) {
+            chunk.add(new RuleRow(rulebookId(entry), RuleRow.TYPE_HEADER, rulebook.number(entry), text, "", 0));
+            return;
+        }
+        SpannableStringBuilder styledExamples = new SpannableStringBuilder(examples);
+        if (styledExamples.length() > 0) {
+            styledExamples.setSpan(new StyleSpan(Typeface.ITALIC), 0, styledExamples.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+        chunk.add(new RuleRow(rulebookId(entry), RuleRow.TYPE_RULE, rulebook.number(entry), text, styledExamples, exampleCount));
+    }
+
+    private static long rulebookId(int entry) {
+        return ((long) GROUP_RULEBOOK << 40) | entry;
+    }
+
+    /***
+     * @return position of the rulebook entry of a row made by outline() or chunk()
+     */
+    public static int rulebookEntry(RuleRow row) {
+        return (int) (row.getId() & 0xFFFFFFFFL);
+    }
+
+    /***
+     *  A line with its leading number in bold
+     */
+    private static SpannableStringBuilder numbered(String line) {
+        SpannableStringBuilder styled = new SpannableStringBuilder(line);
+        int number = 0;
+        while (number < line.length() && !Character.isWhitespace(line.charAt(number))) number++;
+        if (number > 0) styled.setSpan(new StyleSpan(Typeface.BOLD), 0, number, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        return styled;
+    }
+
+    private RuleRow rule(SearchEngine searchEngine, Document document, long id, Set<String> terms) {
+        SpannableStringBuilder styled = numbered(document.getText());
+        highlight(searchEngine, styled, 0, terms);
+
+        SpannableStringBuilder examples = new SpannableStringBuilder();
+        for (String example : document.getExamples()) {
+            if (examples.length() > 0) examples.append("\n\n");
+            examples.append(example);
+        }
+        if (examples.length() > 0) {
+            examples.setSpan(new StyleSpan(Typeface.ITALIC), 0, examples.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            highlight(searchEngine, examples, 0, terms);
+        }
+        return new RuleRow(id, RuleRow.TYPE_RULE, document.getTitle(), styled, examples, document.getExampleCount());
+    }
+
+    private RuleRow glossary(SearchEngine searchEngine, Document document, long id, Set<String> terms) {
+        String title = document.getTitle();
+        SpannableStringBuilder styled = new SpannableStringBuilder(title).append('\n').append(document.getText().trim());
+        styled.setSpan(new StyleSpan(Typeface.BOLD), 0, title.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        highlight(searchEngine, styled, title.length(), terms);
+        return new RuleRow(id, RuleRow.TYPE_GLOSSARY, title, styled, "", 0);
+    }
+
+    /***
+     *  Highlights the words whose stem is one of the terms. The words are split and stemmed the same way as the
+     *  engine splits the rules (runs of letters and digits, see SearchEngine.analyzeRule()).
+     */
+    private static void highlight(SearchEngine searchEngine, SpannableStringBuilder styled, int from, Set<String> terms) {
+        if (terms.isEmpty()) return;
+        int start = -1;
+        for (int i = from; i <= styled.length(); i++) {
+            char c = i < styled.length() ? styled.charAt(i) : ' ';
+            boolean letter = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                String word = styled.subSequence(start, i).toString().toLowerCase(Locale.ROOT);
+                if (terms.contains(searchEngine.getStemCache().stem(word))) {
+                    styled.setSpan(new BackgroundColorSpan(HIGHLIGHT_COLOR), start, i, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                }
+                start = -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.mtgcre;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Observer;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.RecyclerView;
+
+import android.content.Intent;
+import android.os.Bundle;
+
+import java.util.List;
+
+/***
+ *  An activity that browses the whole rulebook through its table of contents (see RulebookIndex):
+ *      the top lists the sections, a section lists its chapters
+ *      a chapter shows all of its rules and subrules, read from the rules file only when it is opened
+ *  Clicking a rule of a chapter opens it in the ShowDeepRules activity, if the engine has it as a document.
+ */
+public class RulebookActivity extends AppCompatActivity {
+    public static final String EXTRA_ENTRY = "EXTRA_ENTRY";
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_rulebook);
+
+        final SearchEngine searchEngine = InitActivity.getSearchEngine();
+        final RulebookIndex rulebook = searchEngine.getRulebook();
+        int entry = getIntent().getIntExtra(EXTRA_ENTRY, -1);
+        getSupportActionBar().setTitle(entry < 0 ? getString(R.string.rulebook_title) : rulebook.line(entry));
+        getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+
+        RecyclerView rulebookList = findViewById(R.id.rulebook_list);
+        final RuleListAdapter adapter = new RuleListAdapter(new RuleListAdapter.OnRuleClickListener() {
+            /***
+             *  Opens the clicked section or chapter in a new RulebookActivity, or the clicked rule in ShowDeepRules
+             */
+            @Override
+            public void onRuleClick(RuleRow row) {
+                int clicked = RuleRowFormatter.rulebookEntry(row);
+                if (rulebook.getLevel(clicked) <= RulebookIndex.CHAPTER) {
+                    Intent entryIntent = new Intent(RulebookActivity.this, RulebookActivity.class);
+                    entryIntent.putExtra(EXTRA_ENTRY, clicked);
+                    startActivity(entryIntent);
+                } else if (searchEngine.getDocuments().get(row.getTitle()) != null) {
+                    Intent itemIntent = new Intent(RulebookActivity.this, ShowDeepRules.class);
+                    itemIntent.putExtra(ShowRules.EXTRA_CLICKEDITEM, row.getTitle());
+                    startActivity(itemIntent);
+                }
+            }
+        });
+        rulebookList.setAdapter(adapter);
+
+        RulebookViewModel rulebookViewModel = new ViewModelProvider(this).get(RulebookViewModel.class);
+        rulebookViewModel.getRows().observe(this, new Observer<List<RuleRow>>() {
+            @Override
+            public void onChanged(List<RuleRow> rows) {
+                adapter.submitList(rows);
+            }
+        });
+        rulebookViewModel.load(entry);
+    }
+}
@@ -0,0 +1,255 @@
+package com.mtgcre;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+/***
+ *  A RulebookIndex object is the table of contents of the whole rules file, every numbered line of it as an entry:
+ *      levels (SECTION "1. Game Concepts", CHAPTER "100. General", RULE "100.1.", SUBRULE "100.1a")
+ *      lineStarts, lineEnds (byte offsets of the entry's own line in the rules file)
+ *      chunkEnds (end of the entry's chunk: its line, its examples and the entries below it, up to the next entry
+ *      of the same or a higher level)
+ *      parents (position of the entry this one is below, -1 for the sections)
+ *  It is built with one pass over the lines and holds no text, an entry's text is decoded when its chunk is read
+ *  (see readChunk()). Unlike the documents of the engine, every line of the file is kept, headers and short rules
+ *  included.
+ */
+public class RulebookIndex {
+
+    public static final int SECTION = 0;
+    public static final int CHAPTER = 1;
+    public static final int RULE = 2;
+    public static final int SUBRULE = 3;
+
+    /** Kinds of the lines of a chunk */
+    public static final int LINE_ENTRY = 0;
+    public static final int LINE_EXAMPLE = 1;
+    public static final int LINE_TEXT = 2;
+
+    /***
+     *  Receives the lines of a chunk
+     */
+    public interface ChunkHandler {
+        /***
+         * @param kind LINE_ENTRY, LINE_EXAMPLE or LINE_TEXT (an unnumbered line continuing the entry)
+         * @param entry the entry of the line, or the entry the example or text line belongs to
+         * @param text the decoded line
+         */
+        void line(int kind, int entry, String text);
+    }
+
+    private final CorpusParser rules;
+    private final int count;
+    private final byte[] levels;
+    private final int[] lineStarts;
+    private final int[] lineEnds;
+    private final int[] chunkEnds;
+    private final int[] parents;
+
+    private RulebookIndex(CorpusParser rules, int count, byte[] levels, int[] lineStarts, int[] lineEnds,
+                          int[] chunkEnds, int[] parents) {
+        this.rules = rules;
+        this.count = count;
+        this.levels = levels;
+        this.lineStarts = lineStarts;
+        this.lineEnds = lineEnds;
+        this.chunkEnds = chunkEnds;
+        this.parents = parents;
+    }
+
+    /***
+     *  Builds the index from the lines of the rules file. A line is an entry if it starts with a number:
+     *      one part: a section if it has one digit ("1."), a chapter otherwise ("100.")
+     *      two parts: a rule if the second one is only digits ("100.1."), a subrule if it ends with letters ("100.1a")
+     *  The trailing dot is optional, as the file has both "119.1d." and "606.5".
+     * @param rules parser of the rules file
+     * @return RulebookIndex object
+     */
+    public static RulebookIndex build(CorpusParser rules) {
+        Builder builder = new Builder(rules.getBuffer());
+        rules.parseLines(builder);
+        return builder.finish(rules);
+    }
+
+    /***
+     *  Collects the entries while the lines are walked. The entries still open at each level are kept, a new entry
+     *  closes the open ones of its level and below (their chunk ends where it starts) and is below the closest
+     *  open one above it.
+     */
+    private static final class Builder implements CorpusParser.LineHandler {
+        private final ByteBuffer text;
+        private final int[] open = {-1, -1, -1, -1};
+        private int count;
+        private byte[] levels = new byte[1024];
+        private int[] lineStarts = new int[1024];
+        private int[] lineEnds = new int[1024];
+        private int[] chunkEnds = new int[1024];
+        private int[] parents = new int[1024];
+
+        Builder(ByteBuffer text) {
+            this.text = text;
+        }
+
+        @Override
+        public void line(int start, int end) {
+            int level = level(text, start, end);
+            if (level < 0) return;
+            if (count == levels.length) {
+                levels = Arrays.copyOf(levels, 2 * count);
+                lineStarts = Arrays.copyOf(lineStarts, 2 * count);
+                lineEnds = Arrays.copyOf(lineEnds, 2 * count);
+                chunkEnds = Arrays.copyOf(chunkEnds, 2 * count);
+                parents = Arrays.copyOf(parents, 2 * count);
+            }
+            for (int closed = level; closed < open.length; closed++) {
+                if (open[closed] >= 0) chunkEnds[open[closed]] = start;
+                open[closed] = -1;
+            }
+            int parent = -1;
+            for (int above = level - 1; above >= 0 && parent < 0; above--) parent = open[above];
+
+            levels[count] = (byte) level;
+            lineStarts[count] = start;
+            lineEnds[count] = end;
+            parents[count] = parent;
+            open[level] = count++;
+        }
+
+        RulebookIndex finish(CorpusParser rules) {
+            for (int entry : open) {
+                if (entry >= 0) chunkEnds[entry] = text.limit();
+            }
+            return new RulebookIndex(rules, count, Arrays.copyOf(levels, count), Arrays.copyOf(lineStarts, count),
+                    Arrays.copyOf(lineEnds, count), Arrays.copyOf(chunkEnds, count), Arrays.copyOf(parents, count));
+        }
+    }
+
+    /***
+     *  The level of a line from its leading number, -1 if it is not numbered
+     */
+    private static int level(ByteBuffer text, int start, int end) {
+        int tokenEnd = start;
+        while (tokenEnd < end && text.get(tokenEnd) != ' ' && text.get(tokenEnd) != '\t') tokenEnd++;
+        if (tokenEnd > start && text.get(tokenEnd - 1) == '.') tokenEnd--;
+
+        int position = start;
+        while (position < tokenEnd && isDigit(text.get(position))) position++;
+        int sectionDigits = position - start;
+        if (sectionDigits == 0) return -1;
+        if (position == tokenEnd) return sectionDigits == 1 ? SECTION : CHAPTER;
+        if (text.get(position++) != '.') return -1;
+
+        int ruleStart = position;
+        while (position < tokenEnd && isDigit(text.get(position))) position++;
+        if (position == ruleStart) return -1;
+        if (position == tokenEnd) return RULE;
+        while (position < tokenEnd && text.get(position) >= 'a' && text.get(position) <= 'z') position++;
+        return position == tokenEnd ? SUBRULE : -1;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /***
+     *  Walks the lines of an entry's chunk, decoding only them
+     * @param entry position of the entry
+     * @param handler receives the lines
+     */
+    public void readChunk(final int entry, final ChunkHandler handler) {
+        final int[] current = {entry};
+        rules.parseLines(lineStarts[entry], chunkEnds[entry], new CorpusParser.LineHandler() {
+            @Override
+            public void line(int start, int end) {
+                int next = current[0] + 1;
+                if (next < count && lineStarts[next] == start) {
+                    current[0] = next;
+                    handler.line(LINE_ENTRY, next, rules.decode(start, end));
+                } else if (start == lineStarts[entry]) {
+                    handler.line(LINE_ENTRY, entry, rules.decode(start, end));
+                } else {
+                    handler.line(rules.isExample(start, end) ? LINE_EXAMPLE : LINE_TEXT, current[0], rules.decode(start, end));
+                }
+            }
+        });
+    }
+
+    /***
+     * @param parent position of an entry, -1 for the top of the rulebook
+     * @return positions of the entries right below it (the sections for -1)
+     */
+    public int[] children(int parent) {
+        int from = parent + 1;
+        int to = parent < 0 ? count : Math.min(count, Math.max(from, entryAt(chunkEnds[parent])));
+        ArrayList<Integer> children = new ArrayList<>();
+        for (int entry = from; entry < to; entry++) {
+            if (parents[entry] == parent) children.add(entry);
+        }
+        int[] positions = new int[children.size()];
+        for (int i = 0; i < positions.length; i++) positions[i] = children.get(i);
+        return positions;
+    }
+
+    /***
+     *  Position of the first entry starting at or after a byte offset
+     */
+    private int entryAt(int offset) {
+        int position = Arrays.binarySearch(lineStarts, 0, count, offset);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    /***
+     * @param title number of an entry, as the title of a Document (eg. 702.19b)
+     * @return position of the entry, -1 if there is none
+     */
+    public int find(String title) {
+        for (int entry = 0; entry < count; entry++) {
+            if (number(entry).equals(title)) return entry;
+        }
+        return -1;
+    }
+
+    /***
+     * @return the number of an entry lowercased, the same as the title of its Document (eg. 100.1. or 702.19b)
+     */
+    public String number(int entry) {
+        int end = lineStarts[entry];
+        ByteBuffer text = rules.getBuffer();
+        while (end < lineEnds[entry] && text.get(end) != ' ' && text.get(end) != '\t') end++;
+        return rules.decode(lineStarts[entry], end).toLowerCase(Locale.ROOT);
+    }
+
+    /***
+     * @return the line of an entry (eg. "100. General")
+     */
+    public String line(int entry) {
+        return rules.decode(lineStarts[entry], lineEnds[entry]);
+    }
+
+    /***
+     *  Estimated retained bytes of the index, see FootprintReport (the rules file is counted by the engine)
+     */
+    public long footprint() {
+        return FootprintReport.object(7) + FootprintReport.array(count, 1) + 4 * FootprintReport.array(count, 4);
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public int getCount() {
+        return count;
+    }
+    public int getLevel(int entry) {
+        return levels[entry];
+    }
+    public int getParent(int entry) {
+        return parents[entry];
+    }
+    public int getChunkStart(int entry) {
+        return lineStarts[entry];
+    }
+    public int getChunkEnd(int entry) {
+        return chunkEnds[entry];
+    }
+}
@@ -0,0 +1,51 @@
+package com.mtgcre;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.ViewModel;
+
+import java.util.List;
+
+/***
+ *  Reads the rows of one page of the RulebookActivity on a background thread, and keeps them while the activity is
+ *  recreated. It contains:
+ *      rows (the entries below a section, or the chunk of a chapter)
+ *      entry (position of the rulebook entry the rows belong to, -1 for the list of the sections)
+ */
+public class RulebookViewModel extends ViewModel {
+
+    private final MutableLiveData<List<RuleRow>> rows = new MutableLiveData<>();
+    private Integer entry;
+
+    /***
+     *  Starts reading the rows of an entry, unless they are already read:
+     *      the top of the rulebook and the sections list the entries below them
+     *      a chapter (or anything below it) shows its chunk of the rules file
+     * @param newEntry position of the entry, -1 for the top of the rulebook
+     */
+    public void load(final int newEntry) {
+        if (entry != null && entry == newEntry) {
+            return;
+        }
+        this.entry = newEntry;
+
+        final RulebookIndex rulebook = InitActivity.getSearchEngine().getRulebook();
+        SearchViewModel.SEARCH_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                RuleRowFormatter formatter = RuleRowFormatter.shared();
+                if (newEntry < 0 || rulebook.getLevel(newEntry) == RulebookIndex.SECTION) {
+                    rows.postValue(formatter.outline(rulebook, newEntry));
+                } else {
+                    rows.postValue(formatter.chunk(rulebook, newEntry));
+                }
+            }
+        });
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public LiveData<List<RuleRow>> getRows() {
+        return rows;
+    }
+}
@@ -23,6 +23,7 @@ public class Search extends AppCompatActivity {
         getSupportActionBar().setTitle("MTG Comprehensive Rules Engine");
 
         createButtonSearch();
+        createButtonBrowse();
         try{
             /* If there are no answers for the question, a message pops */
             Intent intent = getIntent();
@@ -49,6 +50,19 @@ public class Search extends AppCompatActivity {
         });
     }
 
+    /***
+     *  Creates a button which opens the table of contents of the rulebook in the RulebookActivity
+     */
+    private void createButtonBrowse() {
+        Button browseRules = findViewById(R.id.browse_rules);
+        browseRules.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                startActivity(new Intent(Search.this, RulebookActivity.class));
+            }
+        });
+    }
+
     /***
      *  Opens the ShowRules activity to show the answers for the question
      */
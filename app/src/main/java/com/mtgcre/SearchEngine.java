@@ -1,106 +1,880 @@
 package com.mtgcre;
 
-import java.io.BufferedReader;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /***
  *  An object of a SearchEngine is the main element of a search. It contains all the needed data as:
- *      documents (map of distinct text objects those can be returned individually as a result for a search <title of document, document>)
  *      stoplist (a list of words which will be removed from the documents, as it wouldn't help narrow down the search)
- *      inverseIndexes (a structure which stores the term-document matrix in a space efficient way)
- *      glossaries (list off glossary entries from the rulebook)
- *      specificRulings (if an exact rule number is entered in a search, it's matching rule will be stored here)
- *      specificGlossaries (if an exact glossary word is entered in a search, it's matching glossary entry will be stored here)
+ *      compRules (the rules file, the documents keep their text as spans of it until it is shown)
+ *      documentStore (where the shown text of the rules and the glossary entries is fetched and kept decoded for
+ *      the last few pages, see DocumentStore)
+ *      rulebook (table of contents of the whole rules file, for browsing it, see RulebookIndex)
+ *      index (the documents, the dictionary, the inverse indexes and the glossaries, see IndexSnapshot)
+ *      metrics (per query phase timings and counters, only collected while they are enabled)
+ *      stemCache (memo table of already stemmed words, shared by the index build and every search)
+ *      latentIndex (the latent semantic index blended into the scores, null while the LSI mode is off)
+ *      buildReport (timings, allocations and counts of the index build, see BuildReport)
+ *  The index is built in the constructor and never changes after, everything that belongs to a single search is kept
+ *  in a QueryContext. So the engine can be searched from any number of threads at once, without locking.
  */
 public class SearchEngine {
 
-    private final HashMap<String, Document> documents;
-    private final ArrayList<String> stoplist;
-    private final HashMap<String, IndexData> inverseIndexes; /** Name of index, data of it */
-    private final ArrayList<GloassaryData> glossaries;
-    private final ArrayList<Document> specificRulings;
-    private final ArrayList<Document> specificGlossaries;
+    /** The collecting and scoring loops check the cancellation token after this many documents */
+    private static final int CANCELLATION_CHECK_INTERVAL = 256;
 
+    /** Number of ranked documents in the answers of a search */
+    private static final int RESULT_LIMIT = 20;
 
-    public SearchEngine(BufferedReader compRules, BufferedReader compRulesGlossary, BufferedReader stopList){
-        this.documents = new HashMap<>();
-        this.inverseIndexes = new HashMap<>();
-        this.stoplist = loadStoplist(stopList);
-        this.glossaries = new ArrayList<>();
-        this.specificRulings = new ArrayList<>();
-        this.specificGlossaries = new ArrayList<>();
+    /** Number of questions whose posts are walked together in retrieveAll() */
+    private static final int BATCH_CHUNK = 32;
 
-        this.buildDocuments(compRules);
-        this.buildInverseIndexes();
-        this.loadGlossary(compRulesGlossary);
+    /** A restriction of a question to parts of the rulebook (in:702 trample, in:9 commander) */
+    private static final Pattern SECTION_RESTRICTION = Pattern.compile("(?<![^\\s(])in:([0-9][0-9a-z.]*)", Pattern.CASE_INSENSITIVE);
+
+    /** Share of the latent semantic measure in the blended score of the LSI mode, the rest is the cosine measure */
+    private static final double LATENT_WEIGHT = 0.5;
+
+    /** A plain question walking at least this many posts is scored in parallel, split by doc id ranges */
+    public static final int PARALLEL_POSTINGS = 8192;
+
+    /** Posts walked by one range of a parallel search at least, so a range is worth handing to a worker */
+    private static final int PARALLEL_GRAIN = 2048;
+
+    /** Workers of the parallel searches, shared by every engine */
+    private static final ForkJoinPool SCORING_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /** Levels of trimMemory(): the caches only, or everything that can be rebuilt */
+    public static final int TRIM_CACHES = 1;
+    public static final int TRIM_REBUILDABLE = 2;
+
+    private final Set<String> stoplist;
+    private final CorpusParser compRules;
+    private final TextArena ruleTexts;
+    private final TextArena glossaryTexts;
+    private final DocumentStore documentStore;
+    private final RulebookIndex rulebook;
+    private final IndexSnapshot index;
+    private final SearchMetrics metrics;
+    private final StemCache stemCache;
+    private volatile LatentIndex latentIndex;
+    private LatentIndex builtLatentIndex;
+    private final BuildReport buildReport;
+    private volatile QueryLog queryLog;
+    private final Object forwardIndexLock = new Object();
+    private boolean forwardIndexesReleased;
+    private volatile int parallelPostings = PARALLEL_POSTINGS;
+    private volatile int parallelParts = SCORING_POOL.getParallelism();
+    private final ConcurrentLinkedQueue<QueryContext[]> batchSlots = new ConcurrentLinkedQueue<>();
+
+
+    /***
+     * @param compRules the rules file as UTF-8 bytes, it is kept (a memory mapped buffer is best, see CorpusParser)
+     * @param compRulesGlossary the glossary file as UTF-8 bytes
+     * @param stopList the stoplist file as UTF-8 bytes
+     */
+    public SearchEngine(ByteBuffer compRules, ByteBuffer compRulesGlossary, ByteBuffer stopList){
+        this(compRules, compRulesGlossary, stopList, null);
+    }
+
+    /***
+     * @param compRules the rules file as UTF-8 bytes, it is kept (a memory mapped buffer is best, see CorpusParser)
+     * @param compRulesGlossary the glossary file as UTF-8 bytes
+     * @param stopList the stoplist file as UTF-8 bytes
+     * @param allocationCounter measures the allocations of the build for its report, null if they are not measured
+     */
+    public SearchEngine(ByteBuffer compRules, ByteBuffer compRulesGlossary, ByteBuffer stopList,
+                        BuildReport.AllocationCounter allocationCounter){
+        this.buildReport = new BuildReport(allocationCounter);
+        this.metrics = new SearchMetrics();
+        this.stemCache = new StemCache();
+        this.stoplist = loadStoplist(new CorpusParser(stopList));
+        this.buildReport.setCount(BuildReport.STOPLIST_WORDS, this.stoplist.size());
+        this.buildReport.lap("stoplist");
+        this.compRules = new CorpusParser(compRules);
+        this.ruleTexts = new TextArena(compRules);
+        this.glossaryTexts = new TextArena(compRulesGlossary);
+        this.documentStore = new DocumentStore(this.ruleTexts, this.glossaryTexts);
+
+        HashMap<String, Document> documents = new HashMap<>();
+        ArrayList<Document> documentsById = new ArrayList<>();
+        TermDictionary dictionary = new TermDictionary();
+        HashMap<String, IndexData> inverseIndexes = new HashMap<>(); /** Name of index, data of it */
+
+        this.buildDocuments(this.compRules, documents, documentsById);
+        this.rulebook = RulebookIndex.build(this.compRules);
+        this.buildReport.setCount(BuildReport.RULEBOOK_ENTRIES, this.rulebook.getCount());
+        this.buildReport.lap("rulebook");
+        this.buildForwardIndexes(documentsById, dictionary);
+        this.buildReport.lap("rules.analysis");
+        IndexData[] inverseIndexesById = this.buildInverseIndexes(documentsById, dictionary, inverseIndexes);
+        ArrayList<GloassaryData> glossaries = this.loadGlossary(new CorpusParser(compRulesGlossary));
+        this.buildReport.setCount(BuildReport.GLOSSARY_ENTRIES, glossaries.size());
+        this.buildReport.lap("glossary");
+        SectionShards shards = SectionShards.build(documentsById, inverseIndexesById);
+        this.buildReport.lap("shards");
+        NeighbourTable neighbours = NeighbourTable.build(documentsById, inverseIndexesById, NeighbourTable.DEFAULT_NEIGHBOURS);
+        this.buildReport.lap("neighbours");
+        TrigramIndex trigrams = TrigramIndex.build(this.documentStore);
+        this.buildReport.setCount(BuildReport.TRIGRAM_POSTS, trigrams.getPostCount());
+        this.buildReport.lap("trigrams");
+        DenseColumns denseColumns = DenseColumns.build(inverseIndexesById, documentsById.size());
+        this.buildReport.setCount(BuildReport.DENSE_COLUMNS, denseColumns.getColumnCount());
+        this.buildReport.lap("dense");
+
+        this.index = new IndexSnapshot(documents, documentsById, dictionary, inverseIndexes, inverseIndexesById, glossaries,
+                neighbours, shards, trigrams, denseColumns);
     }
 
     /**
      * Processes a search as:
-     *      Clears specificRulings and specificGlossaries to be loaded again if needed
+     *      Creates a new QueryContext for the search's own state (specific rulings and glossaries, accumulators)
+     *      If the question uses boolean operators (see QueryParser), only the matching documents are kept
+     *      If the question is restricted to parts of the rulebook (in:702 trample, in:9 commander), only the posts of
+     *      those parts are walked (see SectionShards)
      *      Collects all the documents which has a chance to appear in the answers
      *      For each of these documents it calculates a value with COSINE MEASURE, which shows how good of an answer is it to the question
      *      Keeps only the top X most relevant documents
      *      Orders them in reverse order
+     *      Records the time of each phase into the metrics, if they are enabled
+     *      Records the search into the query log, if there is one (see QueryLog)
      * @param question string
      * @return getFinalResults() with the final answers list
      */
     public ArrayList<Document> retrieval(String question){
-        this.specificRulings.clear();
-        this.specificGlossaries.clear();
+        return retrieval(question, CancellationToken.NONE);
+    }
+
+    /***
+     *  Processes a search the same way as retrieval(String), but gives it up as soon as the token is cancelled
+     * @param question string
+     * @param cancellation token checked between the phases and inside the collecting and scoring loops
+     * @return getFinalResults() with the final answers list
+     * @throws java.util.concurrent.CancellationException if the token was cancelled before the search finished
+     */
+    public ArrayList<Document> retrieval(String question, CancellationToken cancellation){
+        return retrieval(question, cancellation, null);
+    }
+
+    /***
+     *  Processes a search the same way as retrieval(String, CancellationToken), and counts its matching documents by
+     *  the chapters and sections of the rulebook while they are collected (see FacetCounts)
+     * @param question string
+     * @param cancellation token checked between the phases and inside the collecting and scoring loops
+     * @param facets receives the counts, null if they are not needed
+     * @return getFinalResults() with the final answers list
+     */
+    public ArrayList<Document> retrieval(String question, CancellationToken cancellation, FacetCounts facets){
+        QueryLog queryLog = this.queryLog;
+        long started = queryLog != null ? System.nanoTime() : 0;
+        QueryTimer timer = this.metrics.startQuery();
+        QueryContext context = new QueryContext(this.index, timer, cancellation);
+        context.setFacets(facets);
 
         /* PROCESS QUESTION */
-        QuestionData questionData = this.processQuestion(question);
-        ArrayList<String> possibleDocuments = new ArrayList<>();
+        QuestionData questionData = this.processQuestion(question, context);
+        LinkedHashMap<String, Double> reverseSortedResults = this.rank(context, questionData, RESULT_LIMIT);
 
-        /* DOCUMENT COLLECTING */
-        for (String questionIndex : questionData.getW_i().keySet()) {
-            possibleDocuments.addAll(Objects.requireNonNull(this.inverseIndexes.get(questionIndex)).getW_ij().keySet());
+        if (timer != null) timer.start();
+        ArrayList<Document> finalResults = getFinalResults(context, reverseSortedResults);
+        if (timer != null) {
+            timer.stop(SearchMetrics.Phase.SORTING);
+            this.metrics.record(timer);
+        }
+        if (queryLog != null) {
+            queryLog.record(question, questionData.getPosts().keySet(), finalResults == null ? 0 : finalResults.size(),
+                    finalResults == null ? null : finalResults.get(0).getTitle(), System.nanoTime() - started);
         }
+        return finalResults;
+    }
 
+    /***
+     *  Processes many searches at once, with the same answers as calling retrieval() for each of them:
+     *      Analyzes all the questions first, each with its own QueryContext as in retrieval()
+     *      Orders the questions without boolean operators by their index with the most posts, so the questions
+     *      sharing the expensive indexes get into the same chunk of BATCH_CHUNK questions
+     *      Each chunk walks the posts of every index of its questions only once, in ascending term id order, and adds
+     *      them to the accumulators of all the chunk's questions which have that index. A chunk borrows a set of
+     *      accumulators kept by the engine (see borrowSlots()) and only clears them where a question touched them,
+     *      instead of allocating them for every question
+     *      The questions with boolean operators or an in: restriction are ranked one by one, as in retrieval()
+     *  Both the analysis and the chunks are spread over the workers of SCORING_POOL. Every question still adds up its
+     *  indexes in ascending term id order, so its measures are exactly the ones retrieval() calculates.
+     *  No metrics are recorded for the searches of a batch.
+     * @param questions list of questions
+     * @return getFinalResults() of each question, in the order of the questions
+     */
+    public List<ArrayList<Document>> retrieveAll(List<String> questions){
+        IndexSnapshot index = this.index;
+        int count = questions.size();
+        QueryContext[] contexts = new QueryContext[count];
+        QuestionData[] questionData = new QuestionData[count];
+        ArrayList<ArrayList<Document>> finalResults = new ArrayList<>(Collections.nCopies(count, (ArrayList<Document>) null));
 
-        LinkedHashMap<String, Double> unSortedResults = new LinkedHashMap<>();
-        LinkedHashMap<String, Double> reverseSortedResults = new LinkedHashMap<>();
+        /* PROCESS QUESTIONS */
+        runParallel(count, q -> {
+            contexts[q] = new QueryContext(index, null, CancellationToken.NONE);
+            questionData[q] = this.processQuestion(questions.get(q), contexts[q]);
+        });
+
+        /* GROUP BY SHARED INDEXES */
+        ArrayList<Integer> plain = new ArrayList<>();
+        ArrayList<Integer> oneByOne = new ArrayList<>();
+        long[] hottest = new long[count];
+        for (int q = 0; q < count; q++) {
+            if (questionData[q].getBooleanQuery() != null || questionData[q].getSections() != null) {
+                oneByOne.add(q);
+                continue;
+            }
+            plain.add(q);
+            int bestTerm = -1, bestPosts = -1;
+            for (int termId : questionData[q].getTermIds()) {
+                int posts = index.postings(termId).getDocumentFrequency();
+                if (posts > bestPosts) {
+                    bestPosts = posts;
+                    bestTerm = termId;
+                }
+            }
+            hottest[q] = ((long) bestPosts << 32) | (bestTerm & 0xFFFFFFFFL);
+        }
+        Collections.sort(plain, (a, b) -> hottest[a] != hottest[b] ? Long.compare(hottest[b], hottest[a]) : Integer.compare(a, b));
+        ArrayList<int[]> chunks = new ArrayList<>();
+        for (int start = 0; start < plain.size(); start += BATCH_CHUNK) {
+            int[] members = new int[Math.min(BATCH_CHUNK, plain.size() - start)];
+            for (int m = 0; m < members.length; m++) members[m] = plain.get(start + m);
+            chunks.add(members);
+        }
+
+        /* RANK */
+        runParallel(chunks.size() + oneByOne.size(), task -> {
+            if (task < chunks.size()) {
+                int[] members = chunks.get(task);
+                QueryContext[] slots = this.borrowSlots(index);
+                ArrayList<LinkedHashMap<String, Double>> results;
+                try {
+                    results = this.rankChunk(index, contexts, questionData, members, slots);
+                } finally {
+                    this.batchSlots.offer(slots);
+                }
+                for (int m = 0; m < members.length; m++) {
+                    finalResults.set(members[m], getFinalResults(contexts[members[m]], results.get(m)));
+                    contexts[members[m]] = null;
+                }
+            } else {
+                int q = oneByOne.get(task - chunks.size());
+                finalResults.set(q, getFinalResults(contexts[q], this.rank(contexts[q], questionData[q], RESULT_LIMIT)));
+                contexts[q] = null;
+            }
+        });
+        return finalResults;
+    }
+
+    /***
+     *  Ranks a chunk of questions without boolean operators, walking the posts of each of their indexes once
+     * @param index the snapshot the questions run against
+     * @param contexts contexts of all the questions of the batch
+     * @param questionData weights of all the questions of the batch
+     * @param members positions of the chunk's questions in the batch
+     * @param slots contexts with all zero accumulators, one for every member; they are lent to the members and left
+     *              all zeros again
+     * @return pairs of <title of document, cosine measure> in reverse order for each member
+     */
+    private ArrayList<LinkedHashMap<String, Double>> rankChunk(IndexSnapshot index, QueryContext[] contexts,
+                                                               QuestionData[] questionData, int[] members, QueryContext[] slots){
+        int size = members.length;
+        double[][] sum_W_ij_W_ik = new double[size][];
+        double[][] sum_W_ij = new double[size][];
+        int[][] matched = new int[size][];
+        int[][] possibleDocuments = new int[size][];
+        int[] candidates = new int[size];
+
+        /* (term id, slot of the question, position of the index in the question) sorted by term id */
+        int entries = 0;
+        for (int member : members) entries += questionData[member].getTermIds().length;
+        long[] keys = new long[entries];
+        int entry = 0;
+        for (int slot = 0; slot < size; slot++) {
+            QueryContext context = contexts[members[slot]];
+            context.useAccumulators(slots[slot]);
+            sum_W_ij_W_ik[slot] = context.getSum_W_ij_W_ik();
+            sum_W_ij[slot] = context.getSum_W_ij();
+            matched[slot] = context.getMatched();
+            possibleDocuments[slot] = context.getPossibleDocuments();
+            int[] termIds = questionData[members[slot]].getTermIds();
+            for (int i = 0; i < termIds.length; i++) {
+                keys[entry++] = ((long) termIds[i] << 32) | ((long) slot << 20) | i;
+            }
+        }
+        Arrays.sort(keys);
+
+        /* DOCUMENT COLLECTING */
+        int[] groupSlots = new int[size];
+        double[] groupW_i = new double[size];
+        double[] groupW_i2 = new double[size];
+        for (int start = 0; start < entries; ) {
+            int termId = (int) (keys[start] >>> 32);
+            int group = 0;
+            for (; start < entries && (int) (keys[start] >>> 32) == termId; start++) {
+                int slot = (int) (keys[start] >>> 20) & 0xFFF;
+                int position = (int) keys[start] & 0xFFFFF;
+                groupSlots[group] = slot;
+                groupW_i[group] = questionData[members[slot]].getWeights()[position];
+                groupW_i2[group] = Math.pow(groupW_i[group],2);
+                group++;
+            }
+            IndexData indexData = index.postings(termId);
+            int[] docIds = indexData.getDocIds();
+            float[] w_ij = indexData.getW_ij();
+            for (int post = 0; post < indexData.getDocumentFrequency(); post++) {
+                int doc = docIds[post];
+                for (int g = 0; g < group; g++) {
+                    int slot = groupSlots[g];
+                    if (matched[slot][doc]++ == 0) possibleDocuments[slot][candidates[slot]++] = doc;
+                    sum_W_ij_W_ik[slot][doc] += groupW_i[g] * w_ij[post];
+                    sum_W_ij[slot][doc] += groupW_i2[g];
+                }
+            }
+        }
 
         /* CALCULATING COSINE MEASURE */
-        for (String doc : possibleDocuments) {
-            double sum_W_ij_W_ik = 0.0;
-            double sum_W_ij = 0.0;
-            double sum_W_ik = 0.0;
-
-            for (String questionIndex : questionData.getW_i().keySet()) {
-                if (inverseIndexes.get(questionIndex).getW_ij().containsKey(doc)) {
-                    sum_W_ij_W_ik += questionData.getW_i().get(questionIndex) * inverseIndexes.get(questionIndex).getW_ij().get(doc);
-                    sum_W_ij += Math.pow(questionData.getW_i().get(questionIndex),2);
-                    for (String docIndex : documents.get(doc).getIndexes()){
-                        sum_W_ik += Math.pow(inverseIndexes.get(docIndex).getW_ij().get(doc),2);
+        ArrayList<LinkedHashMap<String, Double>> results = new ArrayList<>(size);
+        for (int slot = 0; slot < size; slot++) {
+            QueryContext context = contexts[members[slot]];
+            TopK topK = new TopK(RESULT_LIMIT);
+            this.scoreCandidates(context, questionData[members[slot]], candidates[slot], topK);
+            results.add(sortedResults(index, topK));
+            context.clearAccumulators(candidates[slot]);
+        }
+        return results;
+    }
+
+    /***
+     *  Takes a set of accumulators for a chunk of retrieveAll(), one of the sets given back by the previous chunks
+     *  or a new one. There are never more sets than chunks ranked at the same time, and trimMemory() drops them.
+     * @param index the snapshot the accumulators are sized for
+     * @return BATCH_CHUNK contexts with all zero accumulators, to be given back to batchSlots all zeros again
+     */
+    private QueryContext[] borrowSlots(IndexSnapshot index){
+        QueryContext[] slots = this.batchSlots.poll();
+        if (slots != null) return slots;
+        slots = new QueryContext[BATCH_CHUNK];
+        for (int slot = 0; slot < slots.length; slot++) {
+            slots[slot] = new QueryContext(index, null, CancellationToken.NONE);
+            slots[slot].createAccumulators();
+        }
+        return slots;
+    }
+
+    /***
+     *  Runs tasks 0..taskCount-1 on the workers of SCORING_POOL (at most one per task) and waits for all of them
+     * @param taskCount number of tasks
+     * @param task the work of one task, gets its number
+     */
+    private static void runParallel(int taskCount, IntConsumer task){
+        int workers = Math.max(1, Math.min(SCORING_POOL.getParallelism(), taskCount));
+        AtomicInteger next = new AtomicInteger();
+        Runnable worker = () -> {
+            for (int t = next.getAndIncrement(); t < taskCount; t = next.getAndIncrement()) {
+                task.accept(t);
+            }
+        };
+        if (workers == 1) {
+            worker.run();
+            return;
+        }
+        try {
+            ArrayList<ForkJoinTask<?>> futures = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                futures.add(SCORING_POOL.submit(worker));
+            }
+            for (ForkJoinTask<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The batch was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("A search of the batch failed", e.getCause());
+        }
+    }
+
+    /***
+     *  Finds the documents most similar to a given document, using its forward index as the question.
+     *  The document itself is left out of the results and no text analysis is done.
+     * @param title title of the document (eg. 702.4g)
+     * @return the most similar documents, null if there is no such document or nothing is similar to it
+     */
+    public ArrayList<Document> moreLikeThis(String title){
+        QueryContext context = new QueryContext(this.index, null, CancellationToken.NONE);
+        Document document = context.getIndex().getDocuments().get(title);
+        if (document == null) {
+            return null;
+        }
+        QuestionData questionData;
+        synchronized (forwardIndexLock) {
+            loadForwardIndexes();
+            questionData = new QuestionData(document, context.getIndex());
+        }
+        LinkedHashMap<String, Double> results = new LinkedHashMap<>();
+        for (Map.Entry<String, Double> result : this.rank(context, questionData, RESULT_LIMIT + 1).entrySet()) {
+            if (!result.getKey().equals(title) && results.size() < RESULT_LIMIT) {
+                results.put(result.getKey(), result.getValue());
+            }
+        }
+        return getFinalResults(context, results);
+    }
+
+    /***
+     *  Gives back the rules most similar to a rule, from the neighbour table computed when the index was built
+     * @param title title of the document
+     * @return list of the related documents, most similar first, null if there is no document with that title
+     */
+    public ArrayList<Document> relatedRules(String title){
+        IndexSnapshot index = this.index;
+        Document document = index.getDocuments().get(title);
+        if (document == null) {
+            return null;
+        }
+        NeighbourTable neighbours = index.getNeighbours();
+        int count = neighbours.count(document.getId());
+        ArrayList<Document> related = new ArrayList<>(count);
+        for (int rank = 0; rank < count; rank++) {
+            related.add(index.document(neighbours.neighbour(document.getId(), rank)));
+        }
+        return related;
+    }
+
+    /***
+     *  Ranks the documents against the weights of a question:
+     *      Collects all the documents which has a chance to appear in the answers
+     *      For each of these documents it calculates a value with COSINE MEASURE, which shows how good of an answer is it to the question
+     *      Keeps only the top X most relevant documents, ordered in reverse order
+     *  Without a boolean query, the posts of the question's indexes are walked one index at a time and the sums of
+     *  the cosine measure are accumulated per document. With one, only the matching documents are scored, looking
+     *  up their weights by advancing a cursor on each index's posts.
+     *  The most frequent indexes are also stored as dense columns (see DenseColumns), a boolean query reads their
+     *  weights by doc id instead of advancing a cursor.
+     *  Both ways add the indexes in ascending term id order, so they give the same measure for a document.
+     *  A question restricted to some sections only walks the posts of their shards (see SectionShards), and only
+     *  its matching documents in them are scored.
+     *  A question without a boolean query which walks at least parallelPostings posts (a pasted judge scenario with
+     *  dozens of indexes) is split by doc id ranges over the workers of SCORING_POOL, see RangeScorer. A document
+     *  is only in one range, so it gets the same sums in the same order and the same measure as on one thread. Not
+     *  in the LSI mode, which needs the best cosine measure of all the candidates before scoring any of them.
+     * @param context state of the search, its timer measures the collecting and the scoring (both are in the
+     *                collecting phase of a parallel search)
+     * @param questionData weights of the question
+     * @param limit X, the number of documents to keep
+     * @return pairs of <title of document, cosine measure> in reverse order
+     */
+    private LinkedHashMap<String, Double> rank(QueryContext context, QuestionData questionData, int limit){
+        IndexSnapshot index = context.getIndex();
+        QueryTimer timer = context.getTimer();
+        CancellationToken cancellation = context.getCancellation();
+        cancellation.throwIfCancelled();
+        int[] questionIndexes = questionData.getTermIds();
+        double[] w_i = questionData.getWeights();
+        DenseColumns denseColumns = index.getDenseColumns();
+        TopK topK = new TopK(limit);
+        long touched = 0;
+        /* the facets are counted by the chapter of each collected document */
+        FacetCounts facets = context.getFacets();
+        int[] chapterCounts = null;
+        short[] chapterSlots = index.getShards().getChapterSlots();
+        if (facets != null) {
+            facets.start(index.getShards());
+            chapterCounts = facets.getChapterCounts();
+        }
+
+        if (questionData.getBooleanQuery() != null) {
+            /* DOCUMENT COLLECTING */
+            if (timer != null) timer.start();
+            int[] possibleDocuments = questionData.getBooleanQuery().matches(index);
+            if (questionData.getSections() != null) possibleDocuments = inSections(possibleDocuments, questionData.getSections());
+            if (timer != null) {
+                timer.stop(SearchMetrics.Phase.COLLECTING);
+                timer.start();
+            }
+
+            /* CALCULATING COSINE MEASURE */
+            /* the weights of a dense index are read from its column, the others by advancing a cursor on the posts */
+            PostingsCursor[] cursors = new PostingsCursor[questionIndexes.length];
+            int[] columnOffsets = new int[questionIndexes.length];
+            for (int i = 0; i < cursors.length; i++) {
+                int column = denseColumns.column(questionIndexes[i]);
+                columnOffsets[i] = column < 0 ? -1 : denseColumns.offset(column);
+                if (column < 0) cursors[i] = index.postings(questionIndexes[i]).cursor();
+            }
+            float[] columnWeights = denseColumns.getWeights();
+            byte[] columnPresence = denseColumns.getPresence();
+            for (int c = 0; c < possibleDocuments.length; c++) {
+                if (c % CANCELLATION_CHECK_INTERVAL == 0) cancellation.throwIfCancelled();
+                int doc = possibleDocuments[c];
+                if (chapterCounts != null) chapterCounts[chapterSlots[doc]]++;
+                double sum_W_ij_W_ik = 0.0;
+                double sum_W_ij = 0.0;
+                int matched = 0;
+                for (int i = 0; i < cursors.length; i++) {
+                    if (cursors[i] == null) {
+                        if (columnPresence[columnOffsets[i] + doc] != 0) {
+                            sum_W_ij_W_ik += w_i[i] * columnWeights[columnOffsets[i] + doc];
+                            sum_W_ij += Math.pow(w_i[i],2);
+                            matched++;
+                        }
+                    } else if (cursors[i].advance(doc) == doc) {
+                        sum_W_ij_W_ik += w_i[i] * index.postings(questionIndexes[i]).getW_ij()[cursors[i].position()];
+                        sum_W_ij += Math.pow(w_i[i],2);
+                        matched++;
                     }
                 }
+                touched += matched;
+                /* a document matched only by phrases without any index (eg. "{T}") keeps its rulebook order */
+                topK.offer(doc, matched == 0 ? 0.0 : cosine(sum_W_ij_W_ik, sum_W_ij, matched, index.document(doc)));
+            }
+            if (facets != null) facets.setTotal(possibleDocuments.length);
+            if (timer != null) {
+                timer.addPostings(touched);
+                timer.setCandidates(possibleDocuments.length);
+                timer.stop(SearchMetrics.Phase.SCORING);
             }
+        } else {
+            /* DOCUMENT COLLECTING */
+            if (timer != null) timer.start();
+            int[][] postRanges = new int[questionIndexes.length][];
+            long postings = 0;
+            for (int i = 0; i < questionIndexes.length; i++) {
+                postRanges[i] = postRanges(index, questionIndexes[i], index.postings(questionIndexes[i]), questionData.getSections());
+                for (int r = 0; r < postRanges[i].length; r += 2) postings += postRanges[i][r + 1] - postRanges[i][r];
+            }
+            int parts = (int) Math.min(this.parallelParts, postings / PARALLEL_GRAIN);
+            if (postings >= this.parallelPostings && parts > 1 && this.latentIndex == null) {
+                RangeScorer scorer = new RangeScorer(index, questionData, postRanges, cancellation, limit,
+                        chapterCounts != null, 0, parts, parts);
+                topK.merge(SCORING_POOL.invoke(scorer));
+                if (chapterCounts != null) {
+                    for (int chapter = 0; chapter < chapterCounts.length; chapter++) chapterCounts[chapter] += scorer.chapterCounts[chapter];
+                }
+                if (facets != null) facets.setTotal(scorer.candidates);
+                if (timer != null) {
+                    timer.addPostings(postings);
+                    timer.stop(SearchMetrics.Phase.COLLECTING);
+                    timer.start();
+                    timer.setCandidates(scorer.candidates);
+                    timer.stop(SearchMetrics.Phase.SCORING);
+                }
+            } else {
+                context.createAccumulators();
+                double[] sum_W_ij_W_ik = context.getSum_W_ij_W_ik();
+                double[] sum_W_ij = context.getSum_W_ij();
+                int[] matched = context.getMatched();
+                int[] possibleDocuments = context.getPossibleDocuments();
+                int candidates = 0;
+                for (int i = 0; i < questionIndexes.length; i++) {
+                    cancellation.throwIfCancelled();
+                    IndexData indexData = index.postings(questionIndexes[i]);
+                    int[] docIds = indexData.getDocIds();
+                    float[] w_ij = indexData.getW_ij();
+                    double w_i2 = Math.pow(w_i[i],2);
+                    for (int r = 0; r < postRanges[i].length; r += 2) {
+                        for (int post = postRanges[i][r]; post < postRanges[i][r + 1]; post++) {
+                            int doc = docIds[post];
+                            if (matched[doc]++ == 0) {
+                                possibleDocuments[candidates++] = doc;
+                                if (chapterCounts != null) chapterCounts[chapterSlots[doc]]++;
+                            }
+                            sum_W_ij_W_ik[doc] += w_i[i] * w_ij[post];
+                            sum_W_ij[doc] += w_i2;
+                        }
+                    }
+                }
+                if (facets != null) facets.setTotal(candidates);
+                if (timer != null) {
+                    timer.addPostings(postings);
+                    timer.stop(SearchMetrics.Phase.COLLECTING);
+                    timer.start();
+                }
 
-            double weight = sum_W_ij_W_ik / (Math.sqrt(sum_W_ij * sum_W_ik));
-            unSortedResults.put(doc, weight);
+                /* CALCULATING COSINE MEASURE */
+                this.scoreCandidates(context, questionData, candidates, topK);
+                if (timer != null) {
+                    timer.setCandidates(candidates);
+                    timer.stop(SearchMetrics.Phase.SCORING);
+                }
+            }
         }
 
         /* SORT */
-        unSortedResults
-                .entrySet()
-                .stream()
-                .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
-                .limit(20)
-                .forEachOrdered(x -> reverseSortedResults.put(x.getKey(), x.getValue()));
+        if (timer != null) timer.start();
+        LinkedHashMap<String, Double> reverseSortedResults = sortedResults(index, topK);
+        if (timer != null) timer.stop(SearchMetrics.Phase.SORTING);
+
+        return reverseSortedResults;
+    }
+
+    /***
+     *  The posts of an index within the sections of a question
+     * @param sections [from, to) doc id pairs, null for the whole rulebook
+     * @return [from, to) pairs of positions in the index's posts
+     */
+    private static int[] postRanges(IndexSnapshot index, int termId, IndexData indexData, int[] sections){
+        if (sections == null) return new int[]{0, indexData.getDocumentFrequency()};
+        int[] postRanges = new int[sections.length];
+        for (int r = 0; r < sections.length; r++) {
+            postRanges[r] = index.getShards().firstPost(termId, indexData, sections[r]);
+        }
+        return postRanges;
+    }
+
+    /***
+     *  Collects and scores the candidates of a question without a boolean query in a range of doc ids, as
+     *  rank() does on one thread. The ranges are the parts of [0, documentCount) between firstPart and lastPart:
+     *  a task of several parts forks one half and computes the other itself, a task of one part walks the posts of
+     *  every index of the question within its range, with accumulators of the range's size. The TopK of the halves
+     *  are merged, ties are ordered by doc id, so the result doesn't depend on which range finished first.
+     *      candidates (number of collected documents of the task's ranges)
+     *      chapterCounts (the collected documents of the task's ranges by chapter, null if they are not counted)
+     */
+    private static final class RangeScorer extends RecursiveTask<TopK> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final IndexSnapshot index;
+        private final QuestionData questionData;
+        private final int[][] postRanges;
+        private final CancellationToken cancellation;
+        private final int limit;
+        private final boolean countChapters;
+        private final int firstPart;
+        private final int lastPart;
+        private final int parts;
+        private int candidates;
+        private int[] chapterCounts;
+
+        RangeScorer(IndexSnapshot index, QuestionData questionData, int[][] postRanges, CancellationToken cancellation,
+                    int limit, boolean countChapters, int firstPart, int lastPart, int parts) {
+            this.index = index;
+            this.questionData = questionData;
+            this.postRanges = postRanges;
+            this.cancellation = cancellation;
+            this.limit = limit;
+            this.countChapters = countChapters;
+            this.firstPart = firstPart;
+            this.lastPart = lastPart;
+            this.parts = parts;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (lastPart - firstPart > 1) {
+                int middle = (firstPart + lastPart) >>> 1;
+                RangeScorer first = new RangeScorer(index, questionData, postRanges, cancellation, limit, countChapters, firstPart, middle, parts);
+                RangeScorer second = new RangeScorer(index, questionData, postRanges, cancellation, limit, countChapters, middle, lastPart, parts);
+                first.fork();
+                TopK topK = second.compute();
+                topK.merge(first.join());
+                candidates = first.candidates + second.candidates;
+                if (countChapters) {
+                    chapterCounts = first.chapterCounts;
+                    for (int chapter = 0; chapter < chapterCounts.length; chapter++) chapterCounts[chapter] += second.chapterCounts[chapter];
+                }
+                return topK;
+            }
+
+            int from = (int) ((long) index.documentCount() * firstPart / parts);
+            int to = (int) ((long) index.documentCount() * lastPart / parts);
+            int[] questionIndexes = questionData.getTermIds();
+            double[] w_i = questionData.getWeights();
+            short[] chapterSlots = index.getShards().getChapterSlots();
+            if (countChapters) chapterCounts = new int[index.getShards().getChapterCount()];
+            /* the accumulators of the range, doc is at doc - from */
+            double[] sum_W_ij_W_ik = new double[to - from];
+            double[] sum_W_ij = new double[to - from];
+            int[] matched = new int[to - from];
+            int[] possibleDocuments = new int[to - from];
+
+            /* DOCUMENT COLLECTING */
+            for (int i = 0; i < questionIndexes.length; i++) {
+                cancellation.throwIfCancelled();
+                IndexData indexData = index.postings(questionIndexes[i]);
+                int[] docIds = indexData.getDocIds();
+                float[] w_ij = indexData.getW_ij();
+                double w_i2 = Math.pow(w_i[i],2);
+                for (int r = 0; r < postRanges[i].length; r += 2) {
+                    int post = firstPost(docIds, postRanges[i][r], postRanges[i][r + 1], from);
+                    for (; post < postRanges[i][r + 1] && docIds[post] < to; post++) {
+                        int doc = docIds[post];
+                        if (matched[doc - from]++ == 0) {
+                            possibleDocuments[candidates++] = doc;
+                            if (countChapters) chapterCounts[chapterSlots[doc]]++;
+                        }
+                        sum_W_ij_W_ik[doc - from] += w_i[i] * w_ij[post];
+                        sum_W_ij[doc - from] += w_i2;
+                    }
+                }
+            }
+
+            /* CALCULATING COSINE MEASURE */
+            TopK topK = new TopK(limit);
+            for (int c = 0; c < candidates; c++) {
+                if (c % CANCELLATION_CHECK_INTERVAL == 0) cancellation.throwIfCancelled();
+                int doc = possibleDocuments[c];
+                topK.offer(doc, cosine(sum_W_ij_W_ik[doc - from], sum_W_ij[doc - from], matched[doc - from], index.document(doc)));
+            }
+            return topK;
+        }
+
+        /***
+         * @return the first position between start and end whose doc id is at least doc, end if there is none
+         */
+        private static int firstPost(int[] docIds, int start, int end, int doc) {
+            while (start < end) {
+                int middle = (start + end) >>> 1;
+                if (docIds[middle] < doc) {
+                    start = middle + 1;
+                } else {
+                    end = middle;
+                }
+            }
+            return start;
+        }
+    }
 
-        return getFinalResults(reverseSortedResults);
+    /***
+     *  Keeps the documents within the sections of a question
+     * @param docs ascending doc ids
+     * @param sections [from, to) doc id pairs
+     * @return the kept doc ids, still ascending
+     */
+    private static int[] inSections(int[] docs, int[] sections){
+        int size = 0;
+        int r = 0;
+        for (int doc : docs) {
+            while (r < sections.length && sections[r + 1] <= doc) r += 2;
+            if (r == sections.length) break;
+            if (doc >= sections[r]) docs[size++] = doc;
+        }
+        return Arrays.copyOf(docs, size);
+    }
+
+    /***
+     *  Calculates the cosine measure (blended with the latent measure in the LSI mode) of the candidates collected
+     *  into the accumulators of a context and offers them to the TopK
+     * @param context state of the search with the filled accumulators
+     * @param questionData weights of the question
+     * @param candidates number of documents in the possibleDocuments accumulator
+     * @param topK receives the scores
+     */
+    private void scoreCandidates(QueryContext context, QuestionData questionData, int candidates, TopK topK){
+        IndexSnapshot index = context.getIndex();
+        CancellationToken cancellation = context.getCancellation();
+        double[] sum_W_ij_W_ik = context.getSum_W_ij_W_ik();
+        double[] sum_W_ij = context.getSum_W_ij();
+        int[] matched = context.getMatched();
+        int[] possibleDocuments = context.getPossibleDocuments();
+
+        LatentIndex latentIndex = this.latentIndex;
+        float[] question = latentIndex == null ? null : latentIndex.project(questionData.getTermIds(), questionData.getWeights());
+        if (question == null) {
+            for (int c = 0; c < candidates; c++) {
+                if (c % CANCELLATION_CHECK_INTERVAL == 0) cancellation.throwIfCancelled();
+                int doc = possibleDocuments[c];
+                topK.offer(doc, cosine(sum_W_ij_W_ik[doc], sum_W_ij[doc], matched[doc], index.document(doc)));
+            }
+        } else {
+            blendLatent(context, latentIndex, question, candidates, questionData.getSections(), topK);
+        }
+    }
+
+    /***
+     * @return pairs of <title of document, score> of the TopK in reverse order
+     */
+    private static LinkedHashMap<String, Double> sortedResults(IndexSnapshot index, TopK topK){
+        LinkedHashMap<String, Double> reverseSortedResults = new LinkedHashMap<>();
+        for (int rank = 0; rank < topK.size(); rank++) {
+            reverseSortedResults.put(index.document(topK.getDocId(rank)).getTitle(), topK.getScore(rank));
+        }
+        return reverseSortedResults;
+    }
+
+    /***
+     *  Scores the documents in the LSI mode. The cosine measures of the candidates are scaled by the best one, so
+     *  they are between 0 and 1 like the latent measures, then every document gets
+     *      (1 - LATENT_WEIGHT) * cosine / best cosine + LATENT_WEIGHT * latent measure
+     *  Documents without any index of the question can get in through the latent measure alone.
+     *  The sums of a candidate aren't needed once its cosine measure is calculated, so the measure is stored in
+     *  place of them.
+     * @param context state of the search with the filled accumulators
+     * @param latentIndex the latent semantic index
+     * @param question the question projected into the latent space
+     * @param candidates number of documents in the possibleDocuments accumulator
+     * @param sections [from, to) doc id pairs the question is restricted to, null for the whole rulebook
+     * @param topK receives the blended scores
+     */
+    private static void blendLatent(QueryContext context, LatentIndex latentIndex, float[] question, int candidates,
+                                    int[] sections, TopK topK){
+        IndexSnapshot index = context.getIndex();
+        CancellationToken cancellation = context.getCancellation();
+        double[] cosines = context.getSum_W_ij_W_ik();
+        double[] sum_W_ij = context.getSum_W_ij();
+        int[] matched = context.getMatched();
+        int[] possibleDocuments = context.getPossibleDocuments();
+
+        double best = 0.0;
+        for (int c = 0; c < candidates; c++) {
+            if (c % CANCELLATION_CHECK_INTERVAL == 0) cancellation.throwIfCancelled();
+            int doc = possibleDocuments[c];
+            double cosine = cosine(cosines[doc], sum_W_ij[doc], matched[doc], index.document(doc));
+            cosines[doc] = Double.isNaN(cosine) ? 0.0 : cosine;
+            best = Math.max(best, cosines[doc]);
+        }
+
+        cancellation.throwIfCancelled();
+        float[] latent = new float[index.documentCount()];
+        latentIndex.score(question, latent);
+        if (sections == null) sections = new int[]{0, latent.length};
+        for (int r = 0; r < sections.length; r += 2) {
+            for (int doc = sections[r]; doc < sections[r + 1]; doc++) {
+                double score = LATENT_WEIGHT * Math.max(0f, latent[doc]);
+                if (matched[doc] > 0 && best > 0.0) score += (1 - LATENT_WEIGHT) * cosines[doc] / best;
+                if (score > 0.0) topK.offer(doc, score);
+            }
+        }
+    }
+
+    /***
+     *  Cosine measure of a document. The document side is the sum of the squared weights of all the document's
+     *  indexes (precomputed from the forward index), counted once for every matching index of the question.
+     * @param sum_W_ij_W_ik sum of the products of the question's and the document's weights
+     * @param sum_W_ij sum of the squared weights of the question's matching indexes
+     * @param matched number of the question's indexes which are in the document
+     * @param document the document
+     * @return cosine measure
+     */
+    private static double cosine(double sum_W_ij_W_ik, double sum_W_ij, int matched, Document document){
+        double sum_W_ik = matched * document.getNorm();
+        return sum_W_ij_W_ik / (Math.sqrt(sum_W_ij * sum_W_ik));
     }
 
     /***
      *  Creates the final array of result as it contains:
      *      any number specific rulin match + the most relevant search answers + any number of glossary match
+     * @param context state of the search with the exact rule and glossary matches
      * @param results search results
      * @return arraylist of all the results
      */
-    private ArrayList<Document> getFinalResults(LinkedHashMap<String, Double> results) {
+    private ArrayList<Document> getFinalResults(QueryContext context, LinkedHashMap<String, Double> results) {
+        ArrayList<Document> specificRulings = context.getSpecificRulings();
+        ArrayList<Document> specificGlossaries = context.getSpecificGlossaries();
         ArrayList<Document> finalResults = new ArrayList<>();
         if (specificRulings.size() == 0 && results.size() == 0 && specificGlossaries.size() == 0){
             return null;
@@ -110,7 +884,7 @@ public class SearchEngine {
             finalResults.addAll(specificRulings);
         }
         for (String result : results.keySet()){
-            Document document = this.documents.get(result);
+            Document document = context.getIndex().getDocuments().get(result);
             finalResults.add(document);
         }
         if (specificGlossaries.size() > 0){
@@ -122,28 +896,77 @@ public class SearchEngine {
     /***
      *  Creates a QuestionData object with all the needed data of from the question
      * @param question string which was entered
+     * @param context state of the search, its timer measures the analysis and the specific lookups
      * @return QuestionData object
      */
-    private QuestionData processQuestion(String question){
+    private QuestionData processQuestion(String question, QueryContext context){
+        QueryTimer timer = context.getTimer();
+        if (timer != null) timer.start();
+        ArrayList<String> sections = new ArrayList<>();
+        Matcher restriction = SECTION_RESTRICTION.matcher(question);
+        while (restriction.find()) sections.add(restriction.group(1));
+        if (!sections.isEmpty()) question = restriction.replaceAll(" ");
+        BooleanQuery booleanQuery = null;
+        if (QueryParser.hasOperators(question)) {
+            booleanQuery = QueryParser.parse(question, this);
+            /* the excluded words and the operators are not looked up as rule numbers or glossary entries */
+            question = QueryParser.lookupText(question);
+        }
         ArrayList<String> temp = this.tokenizeDocument(question);
+        if (timer != null) {
+            timer.stop(SearchMetrics.Phase.ANALYSIS);
+            timer.start();
+        }
 
-        this.checkForSpecificRuling(temp);
-        this.checkForSpecificGlossaryEntry(temp);
+        this.checkForSpecificRuling(temp, context);
+        this.checkForSpecificGlossaryEntry(temp, context);
+        context.getCancellation().throwIfCancelled();
+        if (timer != null) {
+            timer.stop(SearchMetrics.Phase.SPECIFIC_LOOKUP);
+            timer.start();
+        }
+        if (booleanQuery != null) {
+            temp = new ArrayList<>();
+            booleanQuery.collectPositiveTerms(temp);
+        } else {
+            temp = this.removeSpecialCharacters(temp);
+            temp = this.tokenizeDocument(temp);
+            temp = this.removeStopWords(temp);
+            temp = this.stemIndexes(temp);
+        }
+
+        /** build weights ***/
+        QuestionData questionData = new QuestionData(temp, context.getIndex());
+        questionData.setBooleanQuery(booleanQuery);
+        if (!sections.isEmpty()) {
+            questionData.setSections(context.getIndex().getShards().restrict(context.getIndex().getDocumentsById(), sections));
+        }
+        if (timer != null) timer.stop(SearchMetrics.Phase.ANALYSIS);
+        return questionData;
+    }
+
+    /***
+     *  Analyzes a text the same way as the documents' text: tokenizes, removes special characters, tokenizes again,
+     *  removes the stoplist words and stems.
+     * @param text string to be analyzed
+     * @return list of stemmed indexes
+     */
+    public ArrayList<String> analyze(String text){
+        ArrayList<String> temp = this.tokenizeDocument(text);
         temp = this.removeSpecialCharacters(temp);
         temp = this.tokenizeDocument(temp);
         temp = this.removeStopWords(temp);
-        temp = this.stemIndexes(temp);
-
-        /** build weights ***/
-        return new QuestionData(temp, this);
+        return this.stemIndexes(temp);
     }
 
     /***
      *  Checks if an Array of Strings contains any entry which is an exact rule title (eg. 702.4g)
      *  If any found, it is added to the specificRulings list
      *  @param temp list to be checked
+     *  @param context state of the search
      */
-    private void checkForSpecificRuling(ArrayList<String> temp) {
+    private void checkForSpecificRuling(ArrayList<String> temp, QueryContext context) {
+        Map<String, Document> documents = context.getIndex().getDocuments();
         String titleHolder;
         for (String token : temp){
             if (token.trim().length() > 2){
@@ -156,7 +979,7 @@ public class SearchEngine {
                     }
 
                     if (documents.containsKey(titleHolder)){
-                        this.specificRulings.add(documents.get(titleHolder));
+                        context.getSpecificRulings().add(documents.get(titleHolder));
                     }
                 }
             }
@@ -167,88 +990,209 @@ public class SearchEngine {
      *  Checks if an Array of Strings contains any entry which is the glossaries of te rules book
      *  If any found, it is added to the specificGlossaries list
      *  @param temp list to be checked
+     *  @param context state of the search
      */
-    private void checkForSpecificGlossaryEntry(ArrayList<String> temp){
-        for (GloassaryData gloassaryData : glossaries) {
+    private void checkForSpecificGlossaryEntry(ArrayList<String> temp, QueryContext context){
+        for (GloassaryData gloassaryData : context.getIndex().getGlossaries()) {
             if (temp.containsAll(gloassaryData.getTitleTokens())){
                 Document document = new Document(gloassaryData.getText());
                 document.setTitle(gloassaryData.getTitle());
-                specificGlossaries.add(document);
+                context.getSpecificGlossaries().add(document);
             }
         }
     }
 
     /***
-     *  Builds the documents from the read in BufferedReader (rule book file):
-     *      Eliminates rows from the file if it will not be a document
-     *      Sets title for the document based on the text
-     *      Creates indexes:
+     *  Builds the documents from the rules file, which CorpusParser walks as bytes:
+     *      Only the rule lines become documents (see CorpusParser.parseRules())
+     *      Sets title for the document, its first token
+     *      Creates indexes straight from the bytes of the line (see analyzeRule()):
      *          Tokenizes
      *          Removes special characters
-     *          Tokenizes (it is necessary because from the previous step, new tokens could have been created in a single token)
      *          Removes stoplist words
      *          Stems
      *      Adds examples
-     * @param compRules
+     *  The text and the examples are not decoded, they are added to the arena of the rules file (see TextArena).
+     *  The whole walk is one lap of the build report, the time of the stoplist and the stemming is summed over the
+     *  rules and moved to rules.analysis afterwards (their allocations stay in rules.parse).
+     * @param compRules parser of the rules file
+     * @param documents map of the documents by title, to be filled
+     * @param documentsById list of the documents in doc id order, to be filled
      */
-    private void buildDocuments(BufferedReader compRules){
-        try {
-            String line = compRules.readLine();
-            boolean add;
-            while (line != null) {
-                if (line.trim().length()>4){
-                    if (!Character.isDigit(line.charAt(4))) {
-                        line = compRules.readLine();
-                        continue;
-                    }
-                }
+    private void buildDocuments(CorpusParser compRules, HashMap<String, Document> documents, ArrayList<Document> documentsById){
+        final int[] counts = new int[3]; /* rules, dropped rules, examples */
+        final long[] analysisNanos = new long[1];
+        compRules.parseRules(new CorpusParser.RuleHandler() {
+            private Document document;
 
-                if (line.trim().length() != 0){
-                    add = true;
-                    Document new_doc = new Document(line);
-                    new_doc.setIndexes(tokenizeDocument(new_doc.getText()));
-                    new_doc.setTitle(new_doc.getIndexes().remove(0));
-                    new_doc.setIndexes(removeSpecialCharacters(new_doc.getIndexes()));
-                    new_doc.setIndexes(tokenizeDocument(new_doc.getIndexes()));
-                    if (new_doc.getIndexes().size() < 5) add = false;
-                    //if (new_doc.indexes.size() == 5) System.out.println(new_doc.indexes);
-                    new_doc.setIndexes(removeStopWords(new_doc.getIndexes()));
-                    new_doc.setIndexes(stemIndexes(new_doc.getIndexes()));
-                    line = compRules.readLine();
-                    if (line != null && line.trim().length()>6){
-                        while (line.startsWith("Example")){
-                            new_doc.getExamples().add(line);
-                            line = compRules.readLine();
-                            if (line.length() == 0) break;
-                        }
-                    }
-                    if (add) this.documents.put(new_doc.getTitle(),new_doc);
+            @Override
+            public void rule(int start, int end) {
+                counts[0]++;
+                document = analyzeRule(compRules.getBuffer(), start, end, analysisNanos);
+                if (document != null) {
+                    document.setId(documentsById.size());
+                    documentsById.add(document);
+                    documents.put(document.getTitle(), document);
                 } else {
-                    line = compRules.readLine();
+                    counts[1]++;
+                }
+            }
+
+            @Override
+            public void example(int start, int end) {
+                if (document != null) {
+                    ruleTexts.add(start, end);
+                    document.addExample();
+                    counts[2]++;
+                }
+            }
+        });
+        this.buildReport.lap("rules.parse");
+        this.buildReport.transfer("rules.parse", "rules.analysis", analysisNanos[0]);
+        this.buildReport.setCount(BuildReport.RULES, counts[0]);
+        this.buildReport.setCount(BuildReport.RULES_DROPPED, counts[1]);
+        this.buildReport.setCount(BuildReport.DOCUMENTS, documentsById.size());
+        this.buildReport.setCount(BuildReport.EXAMPLES, counts[2]);
+        this.ruleTexts.trimToSize();
+        this.documentStore.index(documentsById);
+    }
+
+    /***
+     *  Creates the document of a rule line with its indexes, reading the bytes of the line only once:
+     *      The title is the first token (separated by whitespace), lowercased
+     *      The indexes are the runs of ASCII letters and digits after it, lowercased, as tokenizing, removing the
+     *      special characters and tokenizing again would give them (every non-ASCII character is special)
+     *      Rules with less than 5 indexes are dropped
+     *      Removes stoplist words and stems
+     * @param text buffer of the rules file
+     * @param start first byte of the line
+     * @param end end of the line
+     * @param analysisNanos time spent removing the stoplist words and stemming, increased by this rule's
+     * @return the document, null if the rule is dropped
+     */
+    private Document analyzeRule(ByteBuffer text, int start, int end, long[] analysisNanos){
+        int position = start;
+        while (position < end && isTokenDelimiter(text.get(position))) position++;
+        int titleStart = position;
+        while (position < end && !isTokenDelimiter(text.get(position))) position++;
+        String title = CorpusParser.decode(text, titleStart, position).trim().toLowerCase(Locale.ROOT);
+
+        ArrayList<String> indexes = new ArrayList<>();
+        char[] token = new char[32];
+        int length = 0;
+        for (; position <= end; position++) {
+            int c = position < end ? text.get(position) : ' ';
+            if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                if (length == token.length) token = Arrays.copyOf(token, 2 * length);
+                token[length++] = (char) c;
+            } else if (length > 0) {
+                indexes.add(new String(token, 0, length));
+                length = 0;
+            }
+        }
+        if (indexes.size() < 5) return null;
+
+        Document document = new Document(this.documentStore, this.ruleTexts.add(start, end));
+        document.setTitle(title);
+        long analysisStart = System.nanoTime();
+        document.setIndexes(stemIndexes(removeStopWords(indexes)));
+        analysisNanos[0] += System.nanoTime() - analysisStart;
+        return document;
+    }
+
+    /***
+     *  The delimiters of StringTokenizer, which splits the title from the rest of a rule
+     */
+    private static boolean isTokenDelimiter(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+
+    /***
+     *  Builds the forward index of every document: its indexes are replaced by the sorted ids of the distinct indexes
+     *  and their frequencies. The ids come from the shared dictionary, so every distinct index is stored only once.
+     * @param documentsById the documents in doc id order
+     * @param dictionary the dictionary to be filled
+     */
+    private void buildForwardIndexes(ArrayList<Document> documentsById, TermDictionary dictionary){
+        for (Document document : documentsById) {
+            ArrayList<String> indexes = document.getIndexes();
+            int[] occurrences = new int[indexes.size()];
+            for (int i = 0; i < occurrences.length; i++) {
+                occurrences[i] = dictionary.intern(indexes.get(i));
+            }
+            Arrays.sort(occurrences);
+
+            int distinct = 0;
+            for (int i = 0; i < occurrences.length; i++) {
+                if (i == 0 || occurrences[i] != occurrences[i - 1]) distinct++;
+            }
+            int[] termIds = new int[distinct];
+            int[] termFrequencies = new int[distinct];
+            int position = -1;
+            for (int i = 0; i < occurrences.length; i++) {
+                if (i == 0 || occurrences[i] != occurrences[i - 1]) {
+                    termIds[++position] = occurrences[i];
                 }
+                termFrequencies[position]++;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+            document.setForwardIndex(termIds, termFrequencies);
         }
     }
 
     /***
      *  Builds the inverse index structure to represent the term-document matrix and spare a lot of space.
+     *  The posts are collected in one pass over the forward indexes in doc id order, so every index's posts are
+     *  sorted by doc id. Then the documents' norms are calculated and their index lists are released.
+     * @param documentsById the documents in doc id order
+     * @param dictionary the dictionary of the indexes
+     * @param inverseIndexes map of the posts by index, to be filled
+     * @return the same posts in term id order
      */
-    private void buildInverseIndexes(){
-        ArrayList<String> allIndexes = new ArrayList<>();
-        for (Document document : this.documents.values()) {
-            allIndexes.addAll(document.getIndexes());
+    private IndexData[] buildInverseIndexes(ArrayList<Document> documentsById, TermDictionary dictionary, HashMap<String, IndexData> inverseIndexes){
+        int[] documentFrequencies = new int[dictionary.size()];
+        for (Document document : documentsById) {
+            for (int termId : document.getTermIds()) documentFrequencies[termId]++;
+        }
+        IndexData[] inverseIndexesById = new IndexData[dictionary.size()];
+        for (int id = 0; id < inverseIndexesById.length; id++) {
+            inverseIndexesById[id] = new IndexData(dictionary.term(id), id, documentFrequencies[id]);
         }
-        Set<String> distinctIndexes = new LinkedHashSet<>(allIndexes);
 
         /** Cut on the indexes **/
         //distinctIndexes.remove("abil");
 
-        for (String index : distinctIndexes) {
-            IndexData indexdata = new IndexData(index, this.documents);
-            inverseIndexes.putIfAbsent(index, indexdata);
+        long occurrences = 0;
+        for (Document document : documentsById) {
+            int[] termIds = document.getTermIds();
+            for (int i = 0; i < termIds.length; i++) {
+                inverseIndexesById[termIds[i]].addPost(document.getId(), document.getTermFrequencies()[i]);
+                occurrences += document.getTermFrequencies()[i];
+            }
+        }
+        this.buildReport.setCount(BuildReport.TERMS, dictionary.size());
+        this.buildReport.setCount(BuildReport.TERM_OCCURRENCES, occurrences);
+        long posts = 0;
+        for (int documentFrequency : documentFrequencies) posts += documentFrequency;
+        this.buildReport.setCount(BuildReport.POSTS, posts);
+        this.buildReport.setTopTerms(documentFrequencies, dictionary);
+        this.buildReport.lap("postings");
+
+        double[] norms = new double[documentsById.size()];
+        for (IndexData indexData : inverseIndexesById) {
+            indexData.createWeights(documentsById.size());
+            inverseIndexes.putIfAbsent(indexData.getWord(), indexData);
+            for (int post = 0; post < indexData.getDocumentFrequency(); post++) {
+                double w_ik = indexData.getW_ij()[post];
+                norms[indexData.getDocIds()[post]] += indexData.getFrequencies()[post] * w_ik * w_ik;
+            }
+        }
+        for (Document document : documentsById) {
+            document.setNorm(norms[document.getId()]);
+            document.setIndexes(null);
         }
+        this.buildReport.lap("weights");
+        return inverseIndexesById;
     }
 
     /***
@@ -284,21 +1228,15 @@ public class SearchEngine {
     }
 
     /***
-     *  Stems a list of tokens with the Porter Stemming algorithm
+     *  Stems a list of tokens with the Porter Stemming algorithm, through the stem cache
      * @param arrayList tokens created from text of documents
      * @return list of stemmed tokens
      */
     private ArrayList<String> stemIndexes(ArrayList<String> arrayList){
-        ArrayList<String> temp = new ArrayList<>();
+        ArrayList<String> temp = new ArrayList<>(arrayList.size());
 
         for (String item : arrayList) {
-
-            Stemmer stemmer = new Stemmer();
-            item = item.toLowerCase(Locale.ROOT);
-
-            for (int c = 0; c < item.length(); c++) stemmer.add(item.charAt(c));
-            stemmer.stem();
-            temp.add(stemmer.toString());
+            temp.add(this.stemCache.stem(item.toLowerCase(Locale.ROOT)));
         }
         return temp;
     }
@@ -336,22 +1274,12 @@ public class SearchEngine {
 
     /***
      *  Loads the stoplist. Words which will be removed from indexes list
-     * @param stoplist read BufferedReader
-     * @return list of words
+     * @param stoplist parser of the stoplist file
+     * @return set of words
      */
-    private ArrayList<String> loadStoplist(BufferedReader stoplist) {
-        ArrayList<String> temp = new ArrayList<>();
-        try {
-            String line = stoplist.readLine();
-            while (line != null) {
-                if (line.trim().length() != 0){
-                    temp.add(line.toLowerCase(Locale.ROOT).trim());
-                }
-                line = stoplist.readLine();
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    private Set<String> loadStoplist(CorpusParser stoplist) {
+        HashSet<String> temp = new HashSet<>();
+        stoplist.parseLines((start, end) -> temp.add(stoplist.decode(start, end).toLowerCase(Locale.ROOT).trim()));
         return temp;
     }
 
@@ -374,70 +1302,259 @@ public class SearchEngine {
 
     /***
      *  Creates the glossaries to the glossary list
-     * @param compRulesGlossary read in the InitActivity
+     * @param compRulesGlossary parser of the glossary file
+     * @return list of the glossary entries
      */
-    private void loadGlossary(BufferedReader compRulesGlossary){
-        try {
-            String line = compRulesGlossary.readLine();
-            while (line != null) {
-                if (line.trim().length() != 0){
-                    String title = line.toLowerCase(Locale.ROOT);
-                    StringBuilder text = new StringBuilder();
-                    line = compRulesGlossary.readLine();
-                    while (line != null && line.trim().length() != 0){
-                        text.append(" ");
-                        text.append(line);
-                        line = compRulesGlossary.readLine();
-                    }
-                    GloassaryData gloassaryData = new GloassaryData(title, text.toString());
-                    gloassaryData.setTitleTokens(tokenizeDocument(title));
-                    this.glossaries.add(gloassaryData);
-                } else {
-                    line = compRulesGlossary.readLine();
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    private ArrayList<GloassaryData> loadGlossary(CorpusParser compRulesGlossary){
+        ArrayList<GloassaryData> glossaries = new ArrayList<>();
+        compRulesGlossary.parseGlossary((titleStart, titleEnd, textStart, textEnd) -> {
+            int titlePiece = this.glossaryTexts.add(titleStart, titleEnd);
+            this.glossaryTexts.add(textStart, textEnd);
+            GloassaryData gloassaryData = new GloassaryData(this.documentStore, titlePiece);
+            gloassaryData.setTitleTokens(tokenizeDocument(gloassaryData.getTitle()));
+            glossaries.add(gloassaryData);
+        });
+        this.glossaryTexts.trimToSize();
+        return glossaries;
     }
 
     /***
-     *  Prints the frequency of all indexes in the whole document set in the engine
-     *  Ordered in reverse.
+     *  Estimates the retained heap of the engine's data structures, broken down by structure.
+     *  The size model is described in FootprintReport.
+     * @return FootprintReport object
      */
-    public void frequency() {
-        ArrayList<String> list = new ArrayList<>();
-        HashMap<String, Integer> words = new HashMap<>();
+    public FootprintReport footprint() {
+        FootprintReport report = new FootprintReport();
+        IndexSnapshot index = this.index;
+        Map<String, Document> documents = index.getDocuments();
 
-        for (Document document : this.documents.values()) {
-            list.addAll(document.getIndexes());
+        long terms = 0, forwardBytes = 0, titleBytes = 0;
+        for (Document document : documents.values()) {
+            titleBytes += FootprintReport.string(document.getTitle());
+            int[] termIds = document.getTermIds();
+            if (termIds != null) {
+                terms += termIds.length;
+                forwardBytes += 2 * FootprintReport.array(termIds.length, 4);
+            }
         }
-        for (String string: list) {
-            if (words.containsKey(string)){
-                words.put(string, words.get(string) + 1);
-            }else{
-                words.put(string, 1);
+        report.add("documents.map", documents.size(),
+                FootprintReport.hashMap(documents) + FootprintReport.arrayList(index.getDocumentsById())
+                        + documents.size() * FootprintReport.object(11) + titleBytes);
+        report.add("documents.text", this.ruleTexts.getPieceCount(), this.ruleTexts.footprint());
+        report.add("documents.decoded", this.documentStore.getDecodedCount(), this.documentStore.footprint());
+        report.add("documents.source", this.compRules.getBuffer().capacity(), this.compRules.footprint());
+        report.add("rulebook", this.rulebook.getCount(), this.rulebook.footprint());
+        report.add("documents.forwardIndex", terms, forwardBytes);
+        report.add("dictionary", index.getDictionary().size(), index.getDictionary().footprint());
+
+        long postings = 0, postBytes = 0, skips = 0, skipBytes = 0;
+        for (int termId = 0; termId < index.getTermCount(); termId++) {
+            IndexData indexData = index.postings(termId);
+            postings += indexData.getDocumentFrequency();
+            postBytes += 2 * FootprintReport.array(indexData.getDocumentFrequency(), 4) + FootprintReport.array(indexData.getDocumentFrequency(), 4);
+            if (indexData.getSkipDocIds() != null) {
+                skips += indexData.getSkipDocIds().length;
+                skipBytes += FootprintReport.array(indexData.getSkipDocIds().length, 4);
             }
         }
+        report.add("inverseIndexes.map", index.getTermCount(), FootprintReport.hashMap(index.getInverseIndexes())
+                + FootprintReport.array(index.getTermCount(), FootprintReport.REFERENCE)
+                + index.getTermCount() * FootprintReport.object(7));
+        report.add("inverseIndexes.postings", postings, postBytes);
+        report.add("inverseIndexes.skips", skips, skipBytes);
 
-        HashMap<String, Integer> reverseSortedMap = new LinkedHashMap<>();
+        long glossaryBytes = FootprintReport.arrayList(index.getGlossaries()) + this.glossaryTexts.footprint();
+        for (GloassaryData gloassaryData : index.getGlossaries()) {
+            glossaryBytes += FootprintReport.object(3)
+                    + FootprintReport.arrayList(gloassaryData.getTitleTokens())
+                    + FootprintReport.strings(gloassaryData.getTitleTokens());
+        }
+        report.add("glossaries", index.getGlossaries().size(), glossaryBytes);
+        ByteBuffer glossarySource = this.glossaryTexts.getBytes();
+        report.add("glossaries.source", glossarySource.capacity(),
+                glossarySource.hasArray() ? FootprintReport.array(glossarySource.capacity(), 1) : 0);
+        report.add("shards", index.getShards().getShardCount(), index.getShards().footprint());
+        report.add("trigrams", index.getTrigrams().getPostCount(), index.getTrigrams().footprint());
+        report.add("denseColumns", index.getDenseColumns().getColumnCount(), index.getDenseColumns().footprint());
+        report.add("neighbours", index.getNeighbours().getNeighbours() * (long) index.documentCount(), index.getNeighbours().footprint());
+        report.add("stoplist", this.stoplist.size(), FootprintReport.hashSet(this.stoplist) + FootprintReport.strings(this.stoplist));
+        report.add("stemCache", this.stemCache.size(), this.stemCache.footprint());
+        LatentIndex latentIndex = this.latentIndex;
+        if (latentIndex != null) {
+            report.add("latentIndex", latentIndex.getDimensions(), latentIndex.footprint());
+        }
+        return report;
+    }
+
+    /***
+     *  Drops the data which can be rebuilt, to give back memory when the system runs low on it. The dictionary, the
+     *  posts, the shards, the neighbour table and the glossary are always kept, everything dropped here is built
+     *  again the first time it is needed:
+     *      TRIM_CACHES: the stem cache, the decoded documents of the DocumentStore and the accumulators kept for
+     *      retrieveAll()
+     *      TRIM_REBUILDABLE: also the forward indexes (rebuilt from the posts), the posts of the trigram index
+     *      (rebuilt from the rules file) and the latent index if the LSI mode is off (computed again when it is
+     *      turned on)
+     *  Searches can run while trimming, they may only be slower until the dropped data is back.
+     * @param level TRIM_CACHES or TRIM_REBUILDABLE
+     * @return the freed bytes of each structure which lost any, see FootprintReport
+     */
+    public FootprintReport trimMemory(int level) {
+        FootprintReport before = footprint();
+        stemCache.clear();
+        documentStore.clear();
+        batchSlots.clear();
+        if (level >= TRIM_REBUILDABLE) {
+            synchronized (forwardIndexLock) {
+                for (Document document : index.getDocumentsById()) {
+                    document.setForwardIndex(null, null);
+                }
+                forwardIndexesReleased = true;
+            }
+            index.getTrigrams().release();
+            synchronized (this) {
+                if (this.latentIndex == null) this.builtLatentIndex = null;
+            }
+        }
+        FootprintReport after = footprint();
 
-        words
-                .entrySet()
-                .stream()
-                .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
-                .forEachOrdered(x -> reverseSortedMap.put(x.getKey(), x.getValue()));
-        System.out.println("Reverse Sorted Map: " + reverseSortedMap);
-        System.out.println("Reverse Sorted Map size: " + reverseSortedMap.size());
+        FootprintReport freed = new FootprintReport();
+        for (FootprintReport.Item item : before.getItems()) {
+            long entries = item.getEntries(), bytes = item.getBytes();
+            for (FootprintReport.Item kept : after.getItems()) {
+                if (kept.getName().equals(item.getName())) {
+                    entries -= kept.getEntries();
+                    bytes -= kept.getBytes();
+                }
+            }
+            if (bytes > 0) freed.add(item.getName(), entries, bytes);
+        }
+        return freed;
+    }
 
+    /***
+     *  Builds the forward indexes again from the posts if trimMemory() dropped them. Walking the indexes in term id
+     *  order gives every document its term ids in ascending order. The caller holds forwardIndexLock.
+     */
+    private void loadForwardIndexes() {
+        if (!forwardIndexesReleased) return;
+        IndexSnapshot index = this.index;
+        int[] counts = new int[index.documentCount()];
+        for (int termId = 0; termId < index.getTermCount(); termId++) {
+            IndexData indexData = index.postings(termId);
+            for (int post = 0; post < indexData.getDocumentFrequency(); post++) counts[indexData.getDocIds()[post]]++;
+        }
+        int[][] termIds = new int[counts.length][];
+        int[][] termFrequencies = new int[counts.length][];
+        for (int doc = 0; doc < counts.length; doc++) {
+            termIds[doc] = new int[counts[doc]];
+            termFrequencies[doc] = new int[counts[doc]];
+            counts[doc] = 0;
+        }
+        for (int termId = 0; termId < index.getTermCount(); termId++) {
+            IndexData indexData = index.postings(termId);
+            for (int post = 0; post < indexData.getDocumentFrequency(); post++) {
+                int doc = indexData.getDocIds()[post];
+                termIds[doc][counts[doc]] = termId;
+                termFrequencies[doc][counts[doc]++] = indexData.getFrequencies()[post];
+            }
+        }
+        for (int doc = 0; doc < counts.length; doc++) {
+            index.document(doc).setForwardIndex(termIds[doc], termFrequencies[doc]);
+        }
+        forwardIndexesReleased = false;
     }
 
     /** GETTERS & SETTERS **/
 
-    public HashMap<String, Document> getDocuments() {
-        return documents;
+    public IndexSnapshot getIndex() {
+        return index;
+    }
+    public BuildReport getBuildReport() {
+        return buildReport;
+    }
+    public Map<String, Document> getDocuments() {
+        return index.getDocuments();
+    }
+    public List<Document> getDocumentsById() {
+        return index.getDocumentsById();
+    }
+    public TermDictionary getDictionary() {
+        return index.getDictionary();
+    }
+    public Map<String, IndexData> getInverseIndexes() {
+        return index.getInverseIndexes();
+    }
+    public void setMetricsEnabled(boolean enabled) {
+        this.metrics.setEnabled(enabled);
+    }
+    public boolean isMetricsEnabled() {
+        return this.metrics.isEnabled();
+    }
+    public MetricsSnapshot getMetricsSnapshot() {
+        return this.metrics.snapshot(this.stemCache);
+    }
+    public void resetMetrics() {
+        this.metrics.reset();
+    }
+    /***
+     *  Records every retrieval() from now on into a query log (the searches of a batch are not recorded)
+     * @param queryLog the log, null to stop recording
+     */
+    public void setQueryLog(QueryLog queryLog) {
+        this.queryLog = queryLog;
+    }
+    public QueryLog getQueryLog() {
+        return queryLog;
+    }
+    public RulebookIndex getRulebook() {
+        return rulebook;
+    }
+    public StemCache getStemCache() {
+        return stemCache;
+    }
+    public DocumentStore getDocumentStore() {
+        return documentStore;
+    }
+    public int getParallelPostings() {
+        return parallelPostings;
+    }
+    /***
+     * @param parallelPostings number of posts from which a plain question is scored in parallel (see rank()),
+     *                         Integer.MAX_VALUE to always score on one thread
+     */
+    public void setParallelPostings(int parallelPostings) {
+        this.parallelPostings = parallelPostings;
+    }
+    public int getParallelParts() {
+        return parallelParts;
+    }
+    /***
+     * @param parallelParts most doc id ranges of a parallel search, the parallelism of SCORING_POOL by default (a
+     *                      range is not tied to a worker, so more ranges than workers give the same results)
+     */
+    public void setParallelParts(int parallelParts) {
+        this.parallelParts = parallelParts;
+    }
+    /***
+     *  Turns the LSI mode on or off. The latent semantic index is computed the first time the mode is turned on
+     *  (see LatentIndex.build) and kept for later, so call it from a background thread.
+     * @param enabled true to blend the latent measure into the scores of the plain (not boolean) searches
+     */
+    public synchronized void setLatentEnabled(boolean enabled) {
+        if (enabled && this.builtLatentIndex == null) {
+            IndexData[] inverseIndexesById = new IndexData[index.getTermCount()];
+            for (int termId = 0; termId < inverseIndexesById.length; termId++) {
+                inverseIndexesById[termId] = index.postings(termId);
+            }
+            this.builtLatentIndex = LatentIndex.build(inverseIndexesById, index.documentCount(), LatentIndex.DEFAULT_DIMENSIONS);
+        }
+        this.latentIndex = enabled ? this.builtLatentIndex : null;
+    }
+    public boolean isLatentEnabled() {
+        return this.latentIndex != null;
     }
-    public HashMap<String, IndexData> getInverseIndexes() {
-        return inverseIndexes;
+    public synchronized LatentIndex getLatentIndex() {
+        return builtLatentIndex;
     }
 }
@@ -0,0 +1,102 @@
+package com.mtgcre;
+
+import java.util.EnumMap;
+
+/***
+ *  A SearchMetrics object collects the instrumentation of the searches of an engine as:
+ *      enabled (if false, the searches do not measure anything, retrieval() only pays a field read)
+ *      phaseHistograms (pairs of <phase of the search, latency histogram of it>)
+ *      candidates (histogram of the number of documents scored per query)
+ *      postings (histogram of the number of postings touched per query)
+ *      lastQuery (the timer of the most recently finished query, for the debug overlay)
+ */
+public class SearchMetrics {
+
+    /***
+     *  The measured phases of a retrieval(), TOTAL is the whole call.
+     */
+    public enum Phase {
+        ANALYSIS,
+        SPECIFIC_LOOKUP,
+        COLLECTING,
+        SCORING,
+        SORTING,
+        TOTAL
+    }
+
+    private volatile boolean enabled;
+    private final EnumMap<Phase, LatencyHistogram> phaseHistograms;
+    private final LatencyHistogram candidates;
+    private final LatencyHistogram postings;
+    private volatile QueryTimer lastQuery;
+
+    public SearchMetrics() {
+        this.phaseHistograms = new EnumMap<>(Phase.class);
+        for (Phase phase : Phase.values()) {
+            phaseHistograms.put(phase, new LatencyHistogram());
+        }
+        this.candidates = new LatencyHistogram();
+        this.postings = new LatencyHistogram();
+    }
+
+    /***
+     *  Gives back a timer for a new query, or null if the instrumentation is turned off
+     * @return QueryTimer object or null
+     */
+    public QueryTimer startQuery() {
+        return enabled ? new QueryTimer() : null;
+    }
+
+    /***
+     *  Adds the measurements of a finished query to the histograms
+     * @param timer timer of the query, returned by startQuery()
+     */
+    public void record(QueryTimer timer) {
+        if (timer == null) return;
+        timer.finish();
+        for (Phase phase : Phase.values()) {
+            phaseHistograms.get(phase).record(timer.getNanos(phase));
+        }
+        candidates.record(timer.getCandidates());
+        postings.record(timer.getPostings());
+        lastQuery = timer;
+    }
+
+    /***
+     *  Makes an immutable copy of the current state of the histograms
+     * @return MetricsSnapshot object
+     */
+    public MetricsSnapshot snapshot() {
+        return snapshot(null);
+    }
+
+    /***
+     *  Makes an immutable copy of the current state of the histograms, with the counters of a stem cache
+     * @param stemCache StemCache object of the engine, or null
+     * @return MetricsSnapshot object
+     */
+    public MetricsSnapshot snapshot(StemCache stemCache) {
+        return new MetricsSnapshot(phaseHistograms, candidates, postings, lastQuery, stemCache);
+    }
+
+    /***
+     *  Clears all the collected measurements
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : phaseHistograms.values()) {
+            histogram.reset();
+        }
+        candidates.reset();
+        postings.reset();
+        lastQuery = null;
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+}
@@ -0,0 +1,217 @@
+package com.mtgcre;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.ViewModel;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/***
+ *  Runs the searches of the ShowRules activity on a background thread and keeps their results while the activity is
+ *  recreated (eg. on rotation), so the same question is not searched again. The rows of the answers are styled on the
+ *  same background thread (see RuleRowFormatter), with the question's indexes highlighted. It contains:
+ *      result (the state of the latest search, observed by the activity)
+ *      question (the question of the latest search, without its restriction)
+ *      restriction (the part of the rulebook the latest search is restricted to, eg. in:702, null for none)
+ *      facets (the matches of the unrestricted question by chapter, the restrictions the activity offers)
+ *      cancellation (token of the running search, cancelled when a new search replaces it or the activity is left)
+ *      lock (guards swapping cancellation, so only the search of the current token posts its result)
+ */
+public class SearchViewModel extends ViewModel {
+
+    /***
+     *  The state of a search: running, or finished with its answers and their rows (null answers means nothing was found),
+     *  or failed, and the facets of its question
+     */
+    public static class Result {
+        private final String question;
+        private final String restriction;
+        private final boolean running;
+        private final ArrayList<Document> answers;
+        private final List<RuleRow> rows;
+        private final FacetCounts facets;
+        private final boolean failed;
+
+        Result(String question, String restriction, boolean running, ArrayList<Document> answers, List<RuleRow> rows,
+               FacetCounts facets, boolean failed) {
+            this.question = question;
+            this.restriction = restriction;
+            this.running = running;
+            this.answers = answers;
+            this.rows = rows;
+            this.facets = facets;
+            this.failed = failed;
+        }
+
+        public String getQuestion() {
+            return question;
+        }
+        public String getRestriction() {
+            return restriction;
+        }
+        public FacetCounts getFacets() {
+            return facets;
+        }
+        public boolean isRunning() {
+            return running;
+        }
+        public ArrayList<Document> getAnswers() {
+            return answers;
+        }
+        public List<RuleRow> getRows() {
+            return rows;
+        }
+        /***
+         * @return true if the engine threw an error, the search is finished without answers
+         */
+        public boolean isFailed() {
+            return failed;
+        }
+    }
+
+    static final ExecutorService SEARCH_EXECUTOR = Executors.newFixedThreadPool(2, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "mtgcre-search");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final MutableLiveData<Result> result = new MutableLiveData<>();
+    private String question;
+    private String restriction;
+    private volatile FacetCounts facets;
+    private CancellationToken cancellation;
+    private final Object lock = new Object();
+
+    /***
+     *  Starts searching the question, unless it is the question of the latest search (the activity was recreated).
+     *  A recreated activity keeps the restriction of the latest search, only a new question searches the whole
+     *  rulebook again.
+     * @param newQuestion string which was entered
+     */
+    public void search(final String newQuestion) {
+        if (newQuestion == null || newQuestion.equals(question)) {
+            return;
+        }
+        start(newQuestion, null, null);
+    }
+
+    /***
+     *  Searches the question of the latest search again, restricted to a part of the rulebook
+     * @param newRestriction the restriction (see FacetCounts.Facet.getRestriction()), null for the whole rulebook
+     */
+    public void restrict(final String newRestriction) {
+        if (question == null || (newRestriction == null ? restriction == null : newRestriction.equals(restriction))) {
+            return;
+        }
+        start(question, newRestriction, null);
+    }
+
+    /***
+     *  Turns the LSI mode of the engine on or off and searches the question of the latest search again with it. The
+     *  latent semantic index is computed on the search's thread the first time, while the progress is shown.
+     * @param enabled true to blend the latent measure into the scores (see SearchEngine.setLatentEnabled())
+     */
+    public void setLatentEnabled(final boolean enabled) {
+        if (question == null || InitActivity.getSearchEngine().isLatentEnabled() == enabled) {
+            return;
+        }
+        start(question, restriction, enabled);
+    }
+
+    /***
+     *  Cancels the running search and starts the new one. An unrestricted search counts the facets of its question,
+     *  a restricted one keeps the facets of the question it restricts.
+     * @param latent the LSI mode to switch the engine to before searching, null to keep it
+     */
+    private void start(final String newQuestion, final String newRestriction, final Boolean latent) {
+        final CancellationToken token = new CancellationToken();
+        synchronized (lock) {
+            if (cancellation != null) {
+                cancellation.cancel();
+            }
+            this.cancellation = token;
+        }
+        this.question = newQuestion;
+        this.restriction = newRestriction;
+        final FacetCounts questionFacets = newRestriction == null ? new FacetCounts() : this.facets;
+        result.setValue(new Result(newQuestion, newRestriction, true, null, null, newRestriction == null ? null : questionFacets, false));
+
+        final SearchEngine searchEngine = InitActivity.getSearchEngine();
+        final String searched = newRestriction == null ? newQuestion : newRestriction + " " + newQuestion;
+        SEARCH_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                ArrayList<Document> shown = null;
+                try {
+                    if (latent != null) searchEngine.setLatentEnabled(latent);
+                    ArrayList<Document> answers = searchEngine.retrieval(searched, token,
+                            newRestriction == null ? questionFacets : null);
+                    List<RuleRow> rows = answers == null ? null : RuleRowFormatter.shared().format(searchEngine, answers,
+                            RuleRowFormatter.GROUP_RESULTS, searchEngine.analyze(newQuestion));
+                    synchronized (lock) {
+                        if (cancellation == token) {
+                            if (newRestriction == null) facets = questionFacets;
+                            result.postValue(new Result(newQuestion, newRestriction, false, answers, rows, questionFacets, false));
+                            shown = answers;
+                        }
+                    }
+                } catch (CancellationException ignored) {
+                    /* a newer search replaced this one, or the activity was left */
+                } catch (RuntimeException e) {
+                    Log.w(InitActivity.TAG, "The search of \"" + searched + "\" failed", e);
+                    synchronized (lock) {
+                        if (cancellation == token) {
+                            result.postValue(new Result(newQuestion, newRestriction, false, null, null, questionFacets, true));
+                        }
+                    }
+                }
+                if (shown != null) prefetchTopRule(searchEngine, shown);
+            }
+        });
+    }
+
+    /***
+     *  The top rule of the answers is the one most likely to be opened next: the texts of its page in ShowDeepRules
+     *  (its subsection and its related rules, see DeepRulesViewModel) are decoded in the background while the
+     *  answers are shown. The answers themselves are already decoded by their rows.
+     * @param answers shown answers of the search
+     */
+    private static void prefetchTopRule(SearchEngine searchEngine, ArrayList<Document> answers) {
+        for (Document answer : answers) {
+            if (answer.getStore() == null) continue;
+            ArrayList<Document> page = DeepRulesViewModel.subsection(searchEngine, answer.getTitle());
+            ArrayList<Document> relatedRules = searchEngine.relatedRules(answer.getTitle());
+            if (relatedRules != null) page.addAll(relatedRules);
+            searchEngine.getDocumentStore().prefetch(page);
+            return;
+        }
+    }
+
+    /***
+     *  The activity is finished for good, the running search is abandoned
+     */
+    @Override
+    protected void onCleared() {
+        synchronized (lock) {
+            if (cancellation != null) {
+                cancellation.cancel();
+            }
+        }
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public LiveData<Result> getResult() {
+        return result;
+    }
+}
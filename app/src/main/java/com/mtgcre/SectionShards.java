@@ -0,0 +1,212 @@
+package com.mtgcre;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/***
+ *  A SectionShards object splits the inverse indexes by the sections of the rulebook (1. Game Concepts ...
+ *  9. Casual Variants) without copying them. The doc ids follow the rulebook, so the documents of a section are a
+ *  run of doc ids, and so are its posts in every index's doc id sorted posts:
+ *      sections (the section number of each shard, in rulebook order)
+ *      firstDocs (doc id of the first document of each shard, the last entry is the number of documents)
+ *      postOffsets (position of the first post of each shard in each index's posts, shardCount + 1 entries per
+ *      term id, the last one is the document frequency)
+ *      chapters (the distinct chapter numbers of the documents in rulebook order, eg. 100, 101 ... 903)
+ *      chapterSlots (position of each document's chapter in chapters, by doc id, for counting facets)
+ *  A search restricted to some sections walks only the posts between their offsets. The weights are the ones of
+ *  the whole index, so a document has the same measure with or without a restriction, and an unrestricted search
+ *  is all the shards merged in rulebook order.
+ */
+public class SectionShards {
+
+    private final int[] sections;
+    private final int[] firstDocs;
+    private final int[] postOffsets;
+    private final int[] chapters;
+    private final short[] chapterSlots;
+
+    private SectionShards(int[] sections, int[] firstDocs, int[] postOffsets, int[] chapters, short[] chapterSlots) {
+        this.sections = sections;
+        this.firstDocs = firstDocs;
+        this.postOffsets = postOffsets;
+        this.chapters = chapters;
+        this.chapterSlots = chapterSlots;
+    }
+
+    /***
+     *  Builds the shards: a new shard starts where the first digit of the documents' titles changes
+     * @param documentsById the documents in doc id order
+     * @param inverseIndexesById the posts in term id order
+     * @return SectionShards object
+     */
+    public static SectionShards build(List<Document> documentsById, IndexData[] inverseIndexesById) {
+        int[] sections = new int[10];
+        int[] firstDocs = new int[11];
+        int shardCount = 0;
+        for (int doc = 0; doc < documentsById.size(); doc++) {
+            int section = section(documentsById.get(doc).getTitle());
+            if (shardCount == 0 || sections[shardCount - 1] != section) {
+                if (shardCount + 1 == firstDocs.length) {
+                    sections = Arrays.copyOf(sections, 2 * shardCount);
+                    firstDocs = Arrays.copyOf(firstDocs, 2 * shardCount + 1);
+                }
+                sections[shardCount] = section;
+                firstDocs[shardCount++] = doc;
+            }
+        }
+        firstDocs[shardCount] = documentsById.size();
+
+        int[] postOffsets = new int[inverseIndexesById.length * (shardCount + 1)];
+        for (int termId = 0; termId < inverseIndexesById.length; termId++) {
+            IndexData indexData = inverseIndexesById[termId];
+            int[] docIds = indexData.getDocIds();
+            int base = termId * (shardCount + 1);
+            int post = 0;
+            for (int shard = 0; shard <= shardCount; shard++) {
+                while (post < indexData.getDocumentFrequency() && docIds[post] < firstDocs[shard]) post++;
+                postOffsets[base + shard] = post;
+            }
+        }
+
+        int[] chapters = new int[0];
+        short[] chapterSlots = new short[documentsById.size()];
+        for (int doc = 0; doc < documentsById.size(); doc++) {
+            int chapter = chapter(documentsById.get(doc).getTitle());
+            int slot = 0;
+            while (slot < chapters.length && chapters[slot] != chapter) slot++;
+            if (slot == chapters.length) {
+                chapters = Arrays.copyOf(chapters, slot + 1);
+                chapters[slot] = chapter;
+            }
+            chapterSlots[doc] = (short) slot;
+        }
+        return new SectionShards(Arrays.copyOf(sections, shardCount), Arrays.copyOf(firstDocs, shardCount + 1), postOffsets,
+                chapters, chapterSlots);
+    }
+
+    /***
+     * @return the section number of a title (its first digit), 0 if it does not start with one
+     */
+    private static int section(String title) {
+        return title.length() > 0 && title.charAt(0) >= '0' && title.charAt(0) <= '9' ? title.charAt(0) - '0' : 0;
+    }
+
+    /***
+     * @return the chapter number of a title (its digits before the first dot, 702 for 702.19b), 0 if it has none
+     */
+    private static int chapter(String title) {
+        int chapter = 0;
+        for (int i = 0; i < title.length() && title.charAt(i) >= '0' && title.charAt(i) <= '9'; i++) {
+            chapter = 10 * chapter + title.charAt(i) - '0';
+        }
+        return chapter;
+    }
+
+    /***
+     * @return the section number of a chapter number (7 for 702)
+     */
+    public static int sectionOfChapter(int chapter) {
+        while (chapter >= 10) chapter /= 10;
+        return chapter;
+    }
+
+    /***
+     *  Finds the documents of some parts of the rulebook, as ranges of doc ids
+     * @param documentsById the documents in doc id order
+     * @param parts numbers of the parts: a section (9), a chapter (702), a rule (702.19) or a single rule (702.19b)
+     * @return sorted and merged [from, to) pairs of doc ids, empty if no document is in the parts
+     */
+    public int[] restrict(List<Document> documentsById, List<String> parts) {
+        boolean[] inside = new boolean[documentsById.size()];
+        for (String part : parts) {
+            String prefix = part.toLowerCase(Locale.ROOT);
+            if (prefix.endsWith(".")) prefix = prefix.substring(0, prefix.length() - 1);
+            if (prefix.isEmpty()) continue;
+            int section = section(prefix);
+            for (int shard = 0; shard < sections.length; shard++) {
+                if (sections[shard] != section) continue;
+                for (int doc = firstDocs[shard]; doc < firstDocs[shard + 1]; doc++) {
+                    inside[doc] |= prefix.length() == 1 || isInPart(documentsById.get(doc).getTitle(), prefix);
+                }
+            }
+        }
+
+        int[] ranges = new int[16];
+        int size = 0;
+        for (int doc = 0; doc < inside.length; doc++) {
+            if (!inside[doc]) continue;
+            if (size > 0 && ranges[size - 1] == doc) {
+                ranges[size - 1] = doc + 1;
+            } else {
+                if (size == ranges.length) ranges = Arrays.copyOf(ranges, 2 * size);
+                ranges[size++] = doc;
+                ranges[size++] = doc + 1;
+            }
+        }
+        return Arrays.copyOf(ranges, size);
+    }
+
+    /***
+     *  702.19b is in 702, 702.19 and 702.19b, but not in 70 or 702.1
+     */
+    private static boolean isInPart(String title, String prefix) {
+        if (!title.startsWith(prefix)) return false;
+        return title.length() == prefix.length() || !Character.isDigit(title.charAt(prefix.length()));
+    }
+
+    /***
+     *  Position of the first post of an index at or after a document, found within the document's shard only
+     * @param termId term id of the index
+     * @param indexData posts of the index
+     * @param doc doc id, the number of documents for the end of the posts
+     * @return position in the posts, the document frequency if every post is before the document
+     */
+    public int firstPost(int termId, IndexData indexData, int doc) {
+        int shard = shardOf(doc);
+        int base = termId * (sections.length + 1);
+        int from = postOffsets[base + shard];
+        if (shard == sections.length || doc == firstDocs[shard]) return from;
+        int position = Arrays.binarySearch(indexData.getDocIds(), from, postOffsets[base + shard + 1], doc);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    /***
+     * @return the shard of a doc id, the number of shards past the last document
+     */
+    public int shardOf(int doc) {
+        if (doc >= firstDocs[sections.length]) return sections.length;
+        int position = Arrays.binarySearch(firstDocs, 0, sections.length, doc);
+        return position >= 0 ? position : -position - 2;
+    }
+
+    /***
+     *  Estimated retained bytes of the shards, see FootprintReport
+     */
+    public long footprint() {
+        return FootprintReport.object(5) + 2 * FootprintReport.array(sections.length + 1, 4)
+                + FootprintReport.array(postOffsets.length, 4) + FootprintReport.array(chapters.length, 4)
+                + FootprintReport.array(chapterSlots.length, 2);
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public int getShardCount() {
+        return sections.length;
+    }
+    public int getSection(int shard) {
+        return sections[shard];
+    }
+    public int getFirstDoc(int shard) {
+        return firstDocs[shard];
+    }
+    public int getChapterCount() {
+        return chapters.length;
+    }
+    public int getChapter(int slot) {
+        return chapters[slot];
+    }
+    public short[] getChapterSlots() {
+        return chapterSlots;
+    }
+}
@@ -1,26 +1,27 @@
 package com.mtgcre;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Observer;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.RecyclerView;
 
 import android.content.Intent;
 import android.os.Bundle;
-import android.widget.ArrayAdapter;
-import android.widget.ListView;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Map;
+import java.util.List;
 
 /***
  *  An activity that shows all rules in that subsection as the rule that was clicked.
  *  Based on the number of it as Section.subsection (eg. 107.4)
+ *  Below them it lists the rules most similar to the clicked one from anywhere in the rulebook (see NeighbourTable).
+ *  The rows are collected and styled on a background thread by the DeepRulesViewModel.
  */
 public class ShowDeepRules extends AppCompatActivity {
 
     /***
      *  First it gets the title of the clicked rule.
-     *  From the documents, if it is in the same subcategory as the clicked rule, adds it to a list.
-     *  Converts the list to a ListView to be scrollable through an adapter
+     *  Asks the DeepRulesViewModel for the rows of its subsection and its related rules.
+     *  Shows them in a scrollable list through a RuleListAdapter when they are ready
      */
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -32,39 +33,18 @@ public class ShowDeepRules extends AppCompatActivity {
         String clickedRule = intent.getStringExtra(ShowRules.EXTRA_CLICKEDITEM);
         getSupportActionBar().setTitle("Rules related to "+clickedRule);
         getSupportActionBar().setDisplayHomeAsUpEnabled(true);
-        clickedRule = getOnlyRuleNumber(clickedRule);
 
-        SearchEngine se = InitActivity.getSearchEngine();
-        ListView deepRulesListView = findViewById(R.id.deep_rule);
-        ArrayList<String> deepRulesArrayList = new ArrayList<>();
-
-        for(Map.Entry<String, Document> entry : se.getDocuments().entrySet()){
-            if (getOnlyRuleNumber(entry.getValue().getTitle()).equals(clickedRule)){
-                deepRulesArrayList.add(entry.getValue().getText());
-            }
-        }
-        Collections.sort(deepRulesArrayList);
-        ArrayAdapter<String> adapter = new ArrayAdapter<>(ShowDeepRules.this, android.R.layout.simple_list_item_1, deepRulesArrayList);
-        deepRulesListView.setClickable(false);
+        RecyclerView deepRulesListView = findViewById(R.id.deep_rule);
+        final RuleListAdapter adapter = new RuleListAdapter(null);
         deepRulesListView.setAdapter(adapter);
 
-    }
-
-    /***
-     *  Gets only the numbers (section,subsection) from a rule title (paragraph name)
-     * @param str A rule's paragraph's title as a string
-     * @return a string that contains only the numbers
-     */
-    private String getOnlyRuleNumber(String str){
-        StringBuilder temp = new StringBuilder();
-        for (int i = 0; i < str.length(); i++) {
-            if (Character.isLetter(str.charAt(i))){
-                break;
-            }else{
-                temp.append(str.charAt(i));
+        DeepRulesViewModel deepRulesViewModel = new ViewModelProvider(this).get(DeepRulesViewModel.class);
+        deepRulesViewModel.getRows().observe(this, new Observer<List<RuleRow>>() {
+            @Override
+            public void onChanged(List<RuleRow> rows) {
+                adapter.submitList(rows);
             }
-        }
-        temp = new StringBuilder(temp.toString().replaceAll("\\.", ""));
-        return temp.toString().trim();
+        });
+        deepRulesViewModel.load(clickedRule, getString(R.string.related_rules_header));
     }
-}
\ No newline at end of file
+}
@@ -1,29 +1,54 @@
 package com.mtgcre;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Observer;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.RecyclerView;
 import android.content.Intent;
 import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
-import android.widget.ListView;
+import android.widget.TextView;
 
-import java.util.ArrayList;
+import com.google.android.material.chip.Chip;
+import com.google.android.material.chip.ChipGroup;
+
+import java.util.List;
 
 /***
- *  This activity shows the results of the search in a scrollable view
+ *  This activity shows the results of the search in a scrollable view.
+ *  The search runs on a background thread in the SearchViewModel, which keeps the results when the activity is recreated.
+ *  The results are rows of a RecyclerView (see RuleListAdapter), styled on the search's thread.
+ *  The chapters with the most matches are offered as chips above them, a checked chip restricts the search to its
+ *  chapter (see FacetCounts).
  */
 public class ShowRules extends AppCompatActivity {
     public static final String EXTRA_CLICKEDITEM = "EXTRA_CLICKEDITEM";
     public static final String EXTRA_TRYAGAIN = "EXTRA_TRYAGAIN";
 
-    private ArrayList<Document> answers;
+    /** Number of chapters offered as chips */
+    private static final int FACET_CHIPS = 8;
+
+    private SearchViewModel searchViewModel;
+
+    private final RuleListAdapter adapter = new RuleListAdapter(new RuleListAdapter.OnRuleClickListener() {
+        /***
+         *  Opens the ShowDeeprules activity with passing the clicked rule's title when any is clicked
+         *  The adapter only reports the rules, not the glossary elements
+         */
+        @Override
+        public void onRuleClick(RuleRow row) {
+            Intent itemIntent = new Intent(ShowRules.this, ShowDeepRules.class);
+            itemIntent.putExtra(EXTRA_CLICKEDITEM, row.getTitle());
+            startActivity(itemIntent);
+        }
+    });
 
     /***
      *  Gets the question from the Search activity.
-     *  Performs the search with the question.
-     *  Wraps the answer objects into single texts.
-     *  Shows the wrapped answers in a scrollable and clickable view.
+     *  Starts the search with the question (only once, a recreated activity gets the kept results).
+     *  Shows the answers when the search is finished.
      *
      */
     @Override
@@ -32,46 +57,122 @@ public class ShowRules extends AppCompatActivity {
         setContentView(R.layout.activity_show_rules);
         getSupportActionBar().setTitle("Results");
 
+        RecyclerView answersList = findViewById(R.id.answer_list);
+        answersList.setAdapter(adapter);
+
         Intent intent = getIntent();
-        SearchEngine searchEngine = InitActivity.getSearchEngine();
         String question = intent.getStringExtra(Search.EXTRA_QUESTION);
 
         /* SEARCH */
-        answers = searchEngine.retrieval(question);
-        if (answers == null){
+        searchViewModel = new ViewModelProvider(this).get(SearchViewModel.class);
+        searchViewModel.getResult().observe(this, new Observer<SearchViewModel.Result>() {
+            @Override
+            public void onChanged(SearchViewModel.Result result) {
+                findViewById(R.id.search_progress).setVisibility(result.isRunning() ? View.VISIBLE : View.GONE);
+                showFacets(result.getFacets(), result.getRestriction());
+                if (!result.isRunning()) {
+                    showAnswers(result.getRows(), result.isFailed());
+                }
+            }
+        });
+        searchViewModel.search(question);
+    }
+
+    /***
+     *  Shows the rows of the answers in the scrollable and clickable list, only the changed rows are bound again.
+     *  Goes back to the Search activity if there are no answers, or if the search failed.
+     * @param rows rows of the answers of the search, null if nothing was found
+     * @param failed true if the engine threw an error instead of finishing the search
+     */
+    private void showAnswers(List<RuleRow> rows, boolean failed) {
+        if (rows == null){
             Intent newSearch = new Intent(this, Search.class);
-            newSearch.putExtra(EXTRA_TRYAGAIN, "Please, specify the search a bit more!");
+            newSearch.putExtra(EXTRA_TRYAGAIN, failed ? "The search failed, please try another question!"
+                    : "Please, specify the search a bit more!");
             startActivity(newSearch);
             this.finish();
             return;
         }
 
-        /* WRAP */
-        ArrayList<String> wrapAnswers = new ArrayList<>();
-        for (Document document : answers) {
-            String title = document.getTitle();
-            String text = document.getText();
-            wrapAnswers.add(title+"\n"+text);
-        }
-
         /* SHOW */
-        ListView answersList = findViewById(R.id.answer_list);
-        ArrayAdapter<String> adapter = new ArrayAdapter<>(ShowRules.this, android.R.layout.simple_list_item_1, wrapAnswers);
-        answersList.setAdapter(adapter);
-        answersList.setOnItemClickListener(new AdapterView.OnItemClickListener(){
+        showDebugOverlay();
+        adapter.submitList(rows);
+    }
 
-            /***
-             *  Opens the ShowDeeprules activity with passing the clicked rule's title when any is clicked
-             *  Opens that activity only if not a glossary element was clicked
-             */
-            @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id){
-                if (searchEngine.getDocuments().get(answers.get(position).getTitle()) != null){
-                    Intent itemIntent = new Intent(view.getContext(), ShowDeepRules.class);
-                    itemIntent.putExtra(EXTRA_CLICKEDITEM, answers.get(position).getTitle());
-                    startActivity(itemIntent);
+    /***
+     *  Shows a chip for each of the chapters with the most matches, the one the search is restricted to checked.
+     *  Checking a chip searches the same question in its chapter only, unchecking it searches the whole rulebook again.
+     * @param facets matches of the question by chapter, null while they are being counted
+     * @param restriction restriction of the shown search, null for none
+     */
+    private void showFacets(FacetCounts facets, String restriction) {
+        View scroll = findViewById(R.id.facet_scroll);
+        if (facets == null) {
+            scroll.setVisibility(View.GONE);
+            return;
+        }
+        ChipGroup chips = findViewById(R.id.facet_chips);
+        chips.removeAllViews();
+        List<FacetCounts.Facet> chapters = facets.getChapters();
+        for (int i = 0; i < Math.min(FACET_CHIPS, chapters.size()); i++) {
+            final FacetCounts.Facet facet = chapters.get(i);
+            final Chip chip = new Chip(this);
+            chip.setText(getResources().getQuantityString(R.plurals.facet_hits, facet.getCount(), facet.getPart(), facet.getCount()));
+            chip.setCheckable(true);
+            chip.setChecked(facet.getRestriction().equals(restriction));
+            chip.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    searchViewModel.restrict(chip.isChecked() ? facet.getRestriction() : null);
                 }
-            }
-        });
+            });
+            chips.addView(chip);
+        }
+        scroll.setVisibility(chapters.size() > 1 || restriction != null ? View.VISIBLE : View.GONE);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_show_rules, menu);
+        menu.findItem(R.id.action_debug_timings).setChecked(InitActivity.getSearchEngine().isMetricsEnabled());
+        menu.findItem(R.id.action_latent).setChecked(InitActivity.getSearchEngine().isLatentEnabled());
+        return true;
+    }
+
+    /***
+     *  Turns the search instrumentation and its overlay on or off from the menu, or the LSI mode, which searches the
+     *  shown question again with the latent measure blended in (see SearchEngine.setLatentEnabled())
+     */
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_debug_timings) {
+            boolean enabled = !item.isChecked();
+            item.setChecked(enabled);
+            InitActivity.getSearchEngine().setMetricsEnabled(enabled);
+            showDebugOverlay();
+            return true;
+        }
+        if (item.getItemId() == R.id.action_latent) {
+            boolean enabled = !item.isChecked();
+            item.setChecked(enabled);
+            searchViewModel.setLatentEnabled(enabled);
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /***
+     *  Shows the phase timings of the last search and the latency percentiles over the overlay,
+     *  hides it if the instrumentation is turned off
+     */
+    private void showDebugOverlay() {
+        TextView overlay = findViewById(R.id.debug_overlay);
+        SearchEngine searchEngine = InitActivity.getSearchEngine();
+        if (searchEngine.isMetricsEnabled()) {
+            overlay.setText(searchEngine.getMetricsSnapshot().toString());
+            overlay.setVisibility(View.VISIBLE);
+        } else {
+            overlay.setVisibility(View.GONE);
+        }
     }
-}
\ No newline at end of file
+}
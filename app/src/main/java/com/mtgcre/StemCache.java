@@ -0,0 +1,116 @@
+package com.mtgcre;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/***
+ *  A StemCache object remembers the Porter stem of the words it has already seen as:
+ *      capacity (maximum number of remembered words, the table is cleared when it gets full)
+ *      stems (pairs of <surface form, stem>)
+ *      stemmers (one reusable Stemmer per thread, so a miss doesn't allocate anything but the stem itself)
+ *      hits, misses (lookup counters for the hit rate)
+ *  The rules vocabulary is only a few thousand words, so after the index is built almost every lookup is a hit.
+ *  It is safe to use from any number of threads at once.
+ */
+public class StemCache {
+
+    public static final int DEFAULT_CAPACITY = 16384;
+
+    private final int capacity;
+    private final ConcurrentHashMap<String, String> stems;
+    private final ThreadLocal<Stemmer> stemmers;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    public StemCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public StemCache(int capacity) {
+        this.capacity = capacity;
+        this.stems = new ConcurrentHashMap<>();
+        this.stemmers = new ThreadLocal<Stemmer>() {
+            @Override
+            protected Stemmer initialValue() {
+                return new Stemmer();
+            }
+        };
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /***
+     *  Gives back the stem of a lower case word, stemming it only the first time it is seen
+     * @param word lower case token
+     * @return stem (the same String instance as word, if stemming doesn't change it)
+     */
+    public String stem(String word) {
+        String stem = stems.get(word);
+        if (stem != null) {
+            hits.increment();
+            return stem;
+        }
+        misses.increment();
+
+        Stemmer stemmer = stemmers.get();
+        int length = stemmer.stem(word, 0, word.length());
+        stem = unchanged(word, stemmer.getResultBuffer(), length) ? word : new String(stemmer.getResultBuffer(), 0, length);
+
+        if (stems.size() >= capacity) {
+            stems.clear();
+        }
+        stems.put(word, stem);
+        return stem;
+    }
+
+    private static boolean unchanged(String word, char[] buffer, int length) {
+        if (word.length() != length) return false;
+        for (int c = 0; c < length; c++) {
+            if (word.charAt(c) != buffer[c]) return false;
+        }
+        return true;
+    }
+
+    /***
+     *  Forgets every stem, the counters are kept
+     */
+    public void clear() {
+        stems.clear();
+    }
+
+    /***
+     *  Estimated retained bytes of the table, see FootprintReport (stems equal to their word are not counted twice)
+     */
+    public long footprint() {
+        long bytes = FootprintReport.object(6) + FootprintReport.hashMap(stems);
+        for (Map.Entry<String, String> entry : stems.entrySet()) {
+            bytes += FootprintReport.string(entry.getKey());
+            if (entry.getValue() != entry.getKey()) bytes += FootprintReport.string(entry.getValue());
+        }
+        return bytes;
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public int size() {
+        return stems.size();
+    }
+    public int getCapacity() {
+        return capacity;
+    }
+    public long getHits() {
+        return hits.sum();
+    }
+    public long getMisses() {
+        return misses.sum();
+    }
+    /***
+     * @return hits / lookups, 0 if there was no lookup yet
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+}
@@ -63,6 +63,40 @@ public class Stemmer {
         for (int c = 0; c < wLen; c++) b[i++] = w[c];
     }
 
+    /**
+     * Stems wLen characters of w starting at offset, without allocating
+     * (the internal buffer only grows when a word is longer than every word
+     * before it). The result is in getResultBuffer(), from 0 to the
+     * returned length, until the next call.
+     */
+    public int stem(char[] w, int offset, int wLen) {
+        reserve(wLen);
+        System.arraycopy(w, offset, b, 0, wLen);
+        i = wLen;
+        stem();
+        return i_end;
+    }
+
+    /**
+     * Same as stem(char[], int, int), for the characters of a CharSequence
+     * (eg. a String) from start (inclusive) to end (exclusive).
+     */
+    public int stem(CharSequence w, int start, int end) {
+        int wLen = end - start;
+        reserve(wLen);
+        for (int c = 0; c < wLen; c++) b[c] = w.charAt(start + c);
+        i = wLen;
+        stem();
+        return i_end;
+    }
+
+    /* reserve(wLen) makes room for a word of wLen characters, plus the
+       character step1() can append (eg. "at" -> "ate"). */
+
+    private void reserve(int wLen) {
+        if (wLen + 1 >= b.length) b = new char[wLen + INC];
+    }
+
     /**
      * After a word has been stemmed, it can be retrieved by toString(),
      * or a reference to the internal buffer can be retrieved by getResultBuffer
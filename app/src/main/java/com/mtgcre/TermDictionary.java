@@ -0,0 +1,64 @@
+package com.mtgcre;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/***
+ *  A TermDictionary object maps every distinct index (stemmed term) of the engine to a dense integer id as:
+ *      ids (pairs of <term, id of it>)
+ *      terms (the terms in id order, the id of a term is its position)
+ *  Every term is stored once, so the documents can refer to their terms by id instead of by String.
+ */
+public class TermDictionary {
+
+    private final HashMap<String, Integer> ids;
+    private final ArrayList<String> terms;
+
+    public TermDictionary() {
+        this.ids = new HashMap<>();
+        this.terms = new ArrayList<>();
+    }
+
+    /***
+     *  Gives back the id of a term, adds the term to the dictionary if it is not in it yet
+     * @param term stemmed index
+     * @return id of the term
+     */
+    public int intern(String term) {
+        Integer id = ids.get(term);
+        if (id == null) {
+            id = terms.size();
+            ids.put(term, id);
+            terms.add(term);
+        }
+        return id;
+    }
+
+    /***
+     * @param term stemmed index
+     * @return id of the term, -1 if it is not in the dictionary
+     */
+    public int id(String term) {
+        Integer id = ids.get(term);
+        return id == null ? -1 : id;
+    }
+
+    /***
+     * @param id id of a term
+     * @return the term itself
+     */
+    public String term(int id) {
+        return terms.get(id);
+    }
+
+    /***
+     * @return estimated retained bytes of the dictionary, terms included (see FootprintReport)
+     */
+    public long footprint() {
+        return FootprintReport.object(2) + FootprintReport.hashMap(ids) + FootprintReport.arrayList(terms) + FootprintReport.strings(terms);
+    }
+
+    public int size() {
+        return terms.size();
+    }
+}
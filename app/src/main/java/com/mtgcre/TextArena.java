@@ -0,0 +1,96 @@
+package com.mtgcre;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/***
+ *  A TextArena object stores many pieces of text (the rules, their examples, the glossary entries) as UTF-8 in a
+ *  single buffer with an offset table, instead of one String per piece:
+ *      bytes (the buffer, the memory mapped file the pieces are in, so the text is not on the heap at all)
+ *      spans ([start, end) byte offsets of every piece in bytes, the piece id p is at 2 * p)
+ *  A piece is decoded every time it is asked for, nothing decoded is kept: the screens cache what they show (see
+ *  RuleRowFormatter). The pieces are added while the files are parsed and never change after, so once the
+ *  engine is built the arena can be read from any number of threads.
+ */
+public class TextArena {
+
+    private final ByteBuffer bytes;
+    private int[] spans;
+    private int size;
+
+    /***
+     * @param bytes the buffer the pieces are in
+     */
+    public TextArena(ByteBuffer bytes) {
+        this.bytes = bytes;
+        this.spans = new int[256];
+    }
+
+    /***
+     *  Adds a piece of the buffer
+     * @param start first byte of the piece
+     * @param end end of the piece
+     * @return the id of the piece, the ids are given in ascending order from 0
+     */
+    public int add(int start, int end) {
+        if (2 * size == spans.length) spans = Arrays.copyOf(spans, 2 * spans.length);
+        spans[2 * size] = start;
+        spans[2 * size + 1] = end;
+        return size++;
+    }
+
+    /***
+     *  Drops the unused end of the offset table, once every piece was added
+     */
+    public void trimToSize() {
+        spans = Arrays.copyOf(spans, 2 * size);
+    }
+
+    /***
+     * @param piece id of a piece
+     * @return the piece as a String
+     */
+    public String decode(int piece) {
+        return CorpusParser.decode(bytes, spans[2 * piece], spans[2 * piece + 1]);
+    }
+
+    /***
+     * @param piece id of a piece of several lines
+     * @return the piece as one line, see CorpusParser.decodeJoined()
+     */
+    public String decodeJoined(int piece) {
+        return CorpusParser.decodeJoined(bytes, spans[2 * piece], spans[2 * piece + 1]);
+    }
+
+    public int start(int piece) {
+        return spans[2 * piece];
+    }
+
+    public int end(int piece) {
+        return spans[2 * piece + 1];
+    }
+
+    /***
+     *  Estimated retained bytes of the offset table, see FootprintReport (the buffer is counted by its parser)
+     */
+    public long footprint() {
+        return FootprintReport.object(3) + FootprintReport.array(spans.length, 4);
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public ByteBuffer getBytes() {
+        return bytes;
+    }
+    public int getPieceCount() {
+        return size;
+    }
+    /***
+     * @return the UTF-8 bytes of all the pieces
+     */
+    public long getTextBytes() {
+        long total = 0;
+        for (int piece = 0; piece < size; piece++) total += spans[2 * piece + 1] - spans[2 * piece];
+        return total;
+    }
+}
@@ -0,0 +1,65 @@
+package com.mtgcre;
+
+/***
+ *  A TopK object keeps the best scoring documents of a search as:
+ *      docIds, scores (the kept documents, best first; equal scores are ordered by doc id)
+ *      limit (the maximum number of documents to keep)
+ *  Offering a document which is worse than all the kept ones costs a single comparison.
+ */
+public class TopK {
+
+    private final int[] docIds;
+    private final double[] scores;
+    private final int limit;
+    private int size;
+
+    public TopK(int limit) {
+        this.limit = limit;
+        this.docIds = new int[limit];
+        this.scores = new double[limit];
+    }
+
+    /***
+     *  Keeps the document if it is among the best ones so far. NaN scores (0/0 cosine measures) are ignored.
+     * @param docId id of the document
+     * @param score cosine measure of it
+     */
+    public void offer(int docId, double score) {
+        if (limit == 0 || Double.isNaN(score)) return;
+        if (size == limit && !better(docId, score, size - 1)) return;
+        int position = size == limit ? size - 1 : size++;
+        while (position > 0 && better(docId, score, position - 1)) {
+            docIds[position] = docIds[position - 1];
+            scores[position] = scores[position - 1];
+            position--;
+        }
+        docIds[position] = docId;
+        scores[position] = score;
+    }
+
+    /***
+     *  Offers all the documents of another TopK, used to merge partial results
+     * @param other TopK of a part of the documents
+     */
+    public void merge(TopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.docIds[i], other.scores[i]);
+        }
+    }
+
+    private boolean better(int docId, double score, int position) {
+        return score > scores[position] || (score == scores[position] && docId < docIds[position]);
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public int size() {
+        return size;
+    }
+    public int getDocId(int rank) {
+        return docIds[rank];
+    }
+    public double getScore(int rank) {
+        return scores[rank];
+    }
+}
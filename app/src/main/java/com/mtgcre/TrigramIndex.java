@@ -0,0 +1,258 @@
+package com.mtgcre;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/***
+ *  A TrigramIndex object finds the documents containing an exact piece of text (a card name, "+1/+1", "{T}"),
+ *  which the stemmed indexes lose. It is built on the raw UTF-8 bytes of the rules and their examples:
+ *      keys (the distinct trigrams, three bytes with ASCII letters lowercased, in ascending order)
+ *      offsets (position of the first post of each trigram, the posts of keys[k] are offsets[k] to offsets[k + 1])
+ *      docIds (doc ids of the documents containing the trigram, ascending for each trigram)
+ *      store (the DocumentStore of the documents, the trigrams are read from the pieces of its rules arena)
+ *  A search intersects the posts of the pattern's trigrams, starting from the rarest one, and then checks the
+ *  pattern on the spans of the remaining candidates only. Trigrams never cross the end of a line, so a match
+ *  is always within one line of a rule or an example.
+ *  The keys, offsets and docIds can be dropped under memory pressure (see release()), the next search builds
+ *  them again from the arena.
+ */
+public class TrigramIndex {
+
+    /** Shortest pattern which can be searched, in UTF-8 bytes */
+    public static final int MIN_LENGTH = 3;
+
+    private static final int[] NO_DOCS = new int[0];
+
+    /***
+     *  The part of the index built from the spans, it is replaced as a whole so a search sees all of it or none
+     */
+    private static class Posts {
+        private final int[] keys;
+        private final int[] offsets;
+        private final int[] docIds;
+
+        private Posts(int[] keys, int[] offsets, int[] docIds) {
+            this.keys = keys;
+            this.offsets = offsets;
+            this.docIds = docIds;
+        }
+    }
+
+    private final DocumentStore store;
+    private final TextArena texts;
+    private final ByteBuffer source;
+    private volatile Posts posts;
+
+    private TrigramIndex(DocumentStore store) {
+        this.store = store;
+        this.texts = store.getRules();
+        this.source = texts.getBytes();
+    }
+
+    /***
+     *  Builds the index from the pieces of the documents' text and examples
+     * @param store store of the documents, with its doc id offset table built
+     * @return TrigramIndex object
+     */
+    public static TrigramIndex build(DocumentStore store) {
+        TrigramIndex index = new TrigramIndex(store);
+        index.posts = index.buildPosts();
+        return index;
+    }
+
+    /***
+     *  Builds the posts: the distinct trigrams of each document are collected as (trigram, doc id) pairs in one
+     *  long each, so a single sort orders them by trigram and then by doc id
+     */
+    private Posts buildPosts() {
+        int documentCount = store.getDocumentCount();
+        long[] pairs = new long[1024];
+        int pairCount = 0;
+        int[] trigrams = new int[256];
+        for (int doc = 0; doc < documentCount; doc++) {
+            int count = 0;
+            for (int piece = store.firstPiece(doc); piece < store.endPiece(doc); piece++) {
+                /* the key is rolled over the piece, one byte in and one out */
+                int key = 0;
+                for (int position = texts.start(piece); position < texts.end(piece); position++) {
+                    key = ((key << 8) | (fold(source.get(position)) & 0xFF)) & 0xFFFFFF;
+                    if (position - texts.start(piece) < MIN_LENGTH - 1) continue;
+                    if (count == trigrams.length) trigrams = Arrays.copyOf(trigrams, 2 * count);
+                    trigrams[count++] = key;
+                }
+            }
+            Arrays.sort(trigrams, 0, count);
+            for (int i = 0; i < count; i++) {
+                if (i > 0 && trigrams[i] == trigrams[i - 1]) continue;
+                if (pairCount == pairs.length) pairs = Arrays.copyOf(pairs, 2 * pairCount);
+                pairs[pairCount++] = ((long) trigrams[i] << 32) | doc;
+            }
+        }
+        Arrays.sort(pairs, 0, pairCount);
+
+        int keyCount = 0;
+        for (int i = 0; i < pairCount; i++) {
+            if (i == 0 || (pairs[i] >>> 32) != (pairs[i - 1] >>> 32)) keyCount++;
+        }
+        int[] keys = new int[keyCount];
+        int[] offsets = new int[keyCount + 1];
+        int[] docIds = new int[pairCount];
+        int k = 0;
+        for (int i = 0; i < pairCount; i++) {
+            int key = (int) (pairs[i] >>> 32);
+            if (i == 0 || key != keys[k - 1]) {
+                keys[k] = key;
+                offsets[k++] = i;
+            }
+            docIds[i] = (int) pairs[i];
+        }
+        offsets[keyCount] = pairCount;
+        return new Posts(keys, offsets, docIds);
+    }
+
+    /***
+     * @return the posts, built again if they were released
+     */
+    private Posts posts() {
+        Posts posts = this.posts;
+        if (posts == null) {
+            synchronized (this) {
+                posts = this.posts;
+                if (posts == null) {
+                    posts = buildPosts();
+                    this.posts = posts;
+                }
+            }
+        }
+        return posts;
+    }
+
+    /***
+     *  Drops the posts, they are built again from the arena on the next search
+     */
+    public void release() {
+        this.posts = null;
+    }
+
+    public boolean isReleased() {
+        return posts == null;
+    }
+
+    /***
+     *  Finds the documents containing a piece of text, in their text or in one of their examples. The ASCII
+     *  letters are matched ignoring their case, anything else (punctuation, symbols, other letters) exactly.
+     * @param text text to be found
+     * @return ids of the matching documents in ascending order, none if the text is shorter than MIN_LENGTH bytes
+     */
+    public int[] find(String text) {
+        byte[] pattern = text.getBytes(StandardCharsets.UTF_8);
+        if (pattern.length < MIN_LENGTH) return NO_DOCS;
+        for (int i = 0; i < pattern.length; i++) pattern[i] = fold(pattern[i]);
+        Posts posts = posts();
+        int[] keys = posts.keys;
+        int[] offsets = posts.offsets;
+        int[] docIds = posts.docIds;
+
+        /* the distinct trigrams of the pattern, rarest first */
+        int[] lists = new int[pattern.length - MIN_LENGTH + 1];
+        int listCount = 0;
+        for (int position = 0; position < lists.length; position++) {
+            int k = Arrays.binarySearch(keys, key(pattern[position], pattern[position + 1], pattern[position + 2]));
+            if (k < 0) return NO_DOCS;
+            boolean seen = false;
+            for (int i = 0; i < listCount && !seen; i++) seen = lists[i] == k;
+            if (!seen) lists[listCount++] = k;
+        }
+        for (int i = 1; i < listCount; i++) {
+            int list = lists[i];
+            int j = i;
+            for (; j > 0 && length(offsets, lists[j - 1]) > length(offsets, list); j--) lists[j] = lists[j - 1];
+            lists[j] = list;
+        }
+
+        int[] candidates = Arrays.copyOfRange(docIds, offsets[lists[0]], offsets[lists[0] + 1]);
+        int size = candidates.length;
+        for (int i = 1; i < listCount && size > 0; i++) {
+            int from = offsets[lists[i]];
+            int to = offsets[lists[i] + 1];
+            int kept = 0;
+            for (int c = 0; c < size && from < to; c++) {
+                int position = Arrays.binarySearch(docIds, from, to, candidates[c]);
+                if (position >= 0) {
+                    candidates[kept++] = candidates[c];
+                    from = position + 1;
+                } else {
+                    from = -position - 1;
+                }
+            }
+            size = kept;
+        }
+
+        int matches = 0;
+        for (int c = 0; c < size; c++) {
+            if (contains(candidates[c], pattern)) candidates[matches++] = candidates[c];
+        }
+        return Arrays.copyOf(candidates, matches);
+    }
+
+    /***
+     *  Checks the folded pattern on the pieces of a document
+     */
+    private boolean contains(int doc, byte[] pattern) {
+        for (int piece = store.firstPiece(doc); piece < store.endPiece(doc); piece++) {
+            int last = texts.end(piece) - pattern.length;
+            for (int start = texts.start(piece); start <= last; start++) {
+                int i = 0;
+                while (i < pattern.length && fold(source.get(start + i)) == pattern[i]) i++;
+                if (i == pattern.length) return true;
+            }
+        }
+        return false;
+    }
+
+    private static int length(int[] offsets, int k) {
+        return offsets[k + 1] - offsets[k];
+    }
+
+    private static int key(byte b0, byte b1, byte b2) {
+        return ((b0 & 0xFF) << 16) | ((b1 & 0xFF) << 8) | (b2 & 0xFF);
+    }
+
+    /***
+     *  Lowercases the ASCII letters, the bytes of multi-byte characters are never in that range
+     */
+    private static byte fold(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    /***
+     *  Estimated retained bytes of the index, see FootprintReport (the store is counted by the engine)
+     */
+    public long footprint() {
+        long bytes = FootprintReport.object(4);
+        Posts posts = this.posts;
+        if (posts != null) {
+            bytes += FootprintReport.object(3) + FootprintReport.array(posts.keys.length, 4)
+                    + FootprintReport.array(posts.offsets.length, 4) + FootprintReport.array(posts.docIds.length, 4);
+        }
+        return bytes;
+    }
+
+    /** GETTERS & SETTERS **/
+
+    /***
+     * @return the number of distinct trigrams, 0 while the posts are released
+     */
+    public int getTrigramCount() {
+        Posts posts = this.posts;
+        return posts == null ? 0 : posts.keys.length;
+    }
+    /***
+     * @return the number of posts, 0 while they are released
+     */
+    public int getPostCount() {
+        Posts posts = this.posts;
+        return posts == null ? 0 : posts.docIds.length;
+    }
+}
@@ -0,0 +1,230 @@
+package com.mtgcre;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Walks small crafted files with the byte parser and compares the spans it finds with the lines the reader based
+ * loading of the rules, the glossary and the stop list used to find with readLine().
+ */
+public class CorpusParserTest {
+
+    private static final String RULES = "\ufeffComprehensive Rules\r\n"
+            + "Contents\r\n"
+            + "100. General\r\n"
+            + "100.1. These Magic rules apply to any Magic game with two or more players.\r\n"
+            + "Example: A two-player game.\r\n"
+            + "Example: Another one.\r\n"
+            + "\r\n"
+            + "Example: Not after a rule any more.\r\n"
+            + "100.1a A two-player game is a game that begins with only two players.\r"
+            + "Something else\r"
+            + "Example: The rule was left behind by the line above.\r"
+            + "   \t \r\n"
+            + "\f\n"
+            + "702.19b The controller of an attacking creature with trample first assigns damage.\n"
+            + "Examples of trample follow the rule too.\n"
+            + "  Example: leading whitespace is not an example.\n"
+            + "x\n"
+            + "\u00e9\u00e9.1x long line whose fifth character is not a digit\n"
+            + "\u00e9\u00e91234 fifth character counted after two accented letters\n"
+            + "\ud83d\udd2512345 fifth character counted after a surrogate pair\n"
+            + "\ud83d\udd2512a45 fifth character a letter after a surrogate pair\n"
+            + "abc\ud83d\udd25xyz fifth character the low surrogate of a pair\n"
+            + "\ud83d\udd25ab\n"
+            + "\ud83d\udd25abc\n"
+            + "  \u00e9  \n"
+            + "ab\u00a0cd\n"
+            + "\u4e00\u4e8c\u4e09\u56db5 three byte characters\n"
+            + "999.9z The last rule.\n"
+            + "Example: the last example, without a line break";
+
+    private static final String GLOSSARY = "\ufeffAbandon\r\n"
+            + "To turn a face-up scheme card face down.\r\n"
+            + "See rule 701.26, \u201cAbandon.\u201d\r\n"
+            + "\r\n"
+            + "\r\n"
+            + "Ability\r"
+            + "1. Text on an object.\r"
+            + "2. An activated or triggered ability.\r"
+            + "  \t\r"
+            + "Active Player\n"
+            + "   \n"
+            + "\ud83d\udd25 Fire \u00e9t\u00e9\n"
+            + "Burning, \ud83d\udd25.\n"
+            + "Last Entry Without Definition";
+
+    private static final String STOPLIST = "\ufeffa\r\nabout\r\n\r\n  \t\rabove\r  after  \n\f\nagain";
+
+    @Test
+    public void rulesAndExamplesAsTheReader() throws IOException {
+        assertEquals(readRules(RULES), parseRules(RULES));
+        assertEquals(readRules(RULES.replace("\r\n", "\n")), parseRules(RULES.replace("\r\n", "\n")));
+        assertEquals(readRules(RULES.replace("\r\n", "\r").replace('\n', '\r')),
+                parseRules(RULES.replace("\r\n", "\r").replace('\n', '\r')));
+    }
+
+    @Test
+    public void glossaryEntriesAsTheReader() throws IOException {
+        assertEquals(readGlossary(GLOSSARY), parseGlossary(GLOSSARY));
+        assertEquals(readGlossary(GLOSSARY + "\n"), parseGlossary(GLOSSARY + "\n"));
+        assertEquals(readGlossary(GLOSSARY.replace("\r\n", "\n").replace('\r', '\n')),
+                parseGlossary(GLOSSARY.replace("\r\n", "\n").replace('\r', '\n')));
+    }
+
+    @Test
+    public void nonBlankLinesAsTheReader() throws IOException {
+        assertEquals(readLines(STOPLIST), parseLines(STOPLIST));
+        assertEquals(readLines(RULES), parseLines(RULES));
+        assertEquals(readLines(GLOSSARY), parseLines(GLOSSARY));
+    }
+
+    @Test
+    public void emptyAndBomOnlyFiles() throws IOException {
+        for (String text : new String[]{"", "\ufeff", "\r\n", "\ufeff\n\n", "\r"}) {
+            assertEquals(readRules(text), parseRules(text));
+            assertEquals(readGlossary(text), parseGlossary(text));
+            assertEquals(readLines(text), parseLines(text));
+        }
+    }
+
+    @Test
+    public void randomFilesAsTheReader() throws IOException {
+        String[] pieces = {"702.19b Trample rule text here", "Example: an example", "Examples", "", "  ", "\t\f",
+                "\u00e9\u00e9123", "\ud83d\udd25123", "\ud83d\udd25\ud83d\udd251", "ab", "Contents", "1.", "\u00a0"};
+        String[] breaks = {"\n", "\r", "\r\n"};
+        Random random = new Random(38);
+        for (int file = 0; file < 500; file++) {
+            StringBuilder text = new StringBuilder(random.nextBoolean() ? "\ufeff" : "");
+            int lines = random.nextInt(12);
+            for (int line = 0; line < lines; line++) {
+                text.append(pieces[random.nextInt(pieces.length)]);
+                if (random.nextInt(3) == 0) text.append(pieces[random.nextInt(pieces.length)]);
+                if (line < lines - 1 || random.nextBoolean()) text.append(breaks[random.nextInt(breaks.length)]);
+            }
+            String crafted = text.toString();
+            assertEquals(crafted, readRules(crafted), parseRules(crafted));
+            assertEquals(crafted, readGlossary(crafted), parseGlossary(crafted));
+            assertEquals(crafted, readLines(crafted), parseLines(crafted));
+        }
+    }
+
+    /* the byte parser, over a heap and a direct buffer which must agree */
+
+    private static List<String> parseRules(String text) {
+        List<String> heap = null;
+        for (final CorpusParser parser : parsers(text)) {
+            final List<String> spans = new ArrayList<>();
+            parser.parseRules(new CorpusParser.RuleHandler() {
+                @Override
+                public void rule(int start, int end) {
+                    spans.add("rule " + parser.decode(start, end));
+                }
+
+                @Override
+                public void example(int start, int end) {
+                    spans.add("example " + parser.decode(start, end));
+                }
+            });
+            if (heap != null) assertEquals(heap, spans);
+            heap = spans;
+        }
+        return heap;
+    }
+
+    private static List<String> parseGlossary(String text) {
+        List<String> heap = null;
+        for (final CorpusParser parser : parsers(text)) {
+            final List<String> entries = new ArrayList<>();
+            parser.parseGlossary((titleStart, titleEnd, textStart, textEnd) ->
+                    entries.add(parser.decode(titleStart, titleEnd) + " =" + parser.decodeJoined(textStart, textEnd)));
+            if (heap != null) assertEquals(heap, entries);
+            heap = entries;
+        }
+        return heap;
+    }
+
+    private static List<String> parseLines(String text) {
+        List<String> heap = null;
+        for (final CorpusParser parser : parsers(text)) {
+            final List<String> lines = new ArrayList<>();
+            parser.parseLines((start, end) -> lines.add(parser.decode(start, end)));
+            if (heap != null) assertEquals(heap, lines);
+            heap = lines;
+        }
+        return heap;
+    }
+
+    private static CorpusParser[] parsers(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes);
+        direct.flip();
+        return new CorpusParser[]{new CorpusParser(ByteBuffer.wrap(bytes)), new CorpusParser(direct)};
+    }
+
+    /* the reader based loading, a byte order mark skipped as the parser does */
+
+    private static List<String> readRules(String text) throws IOException {
+        List<String> spans = new ArrayList<>();
+        BufferedReader reader = reader(text);
+        boolean afterRule = false;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            if (afterRule && line.startsWith("Example")) {
+                spans.add("example " + line);
+                continue;
+            }
+            afterRule = false;
+            if (line.trim().length() > 4 && !Character.isDigit(line.charAt(4))) continue;
+            if (line.trim().length() != 0) {
+                spans.add("rule " + line);
+                afterRule = true;
+            }
+        }
+        return spans;
+    }
+
+    private static List<String> readGlossary(String text) throws IOException {
+        List<String> entries = new ArrayList<>();
+        BufferedReader reader = reader(text);
+        String line = reader.readLine();
+        while (line != null) {
+            if (line.trim().length() != 0) {
+                String title = line;
+                StringBuilder definition = new StringBuilder();
+                line = reader.readLine();
+                while (line != null && line.trim().length() != 0) {
+                    definition.append(' ').append(line);
+                    line = reader.readLine();
+                }
+                entries.add(title + " =" + definition);
+            } else {
+                line = reader.readLine();
+            }
+        }
+        return entries;
+    }
+
+    private static List<String> readLines(String text) throws IOException {
+        List<String> lines = new ArrayList<>();
+        BufferedReader reader = reader(text);
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            if (line.trim().length() != 0) lines.add(line);
+        }
+        return lines;
+    }
+
+    private static BufferedReader reader(String text) {
+        return new BufferedReader(new StringReader(text.startsWith("\ufeff") ? text.substring(1) : text));
+    }
+}
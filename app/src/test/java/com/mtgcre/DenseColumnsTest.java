@@ -0,0 +1,79 @@
+package com.mtgcre;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the dense columns against the posts of their indexes, and the answers of the boolean questions scored with
+ * them against the plain questions scored from the posts.
+ */
+public class DenseColumnsTest {
+
+    private static SearchEngine searchEngine;
+
+    @BeforeClass
+    public static void buildEngine() throws IOException {
+        searchEngine = TestCorpus.engine();
+    }
+
+    @Test
+    public void columnsHoldTheWeightsOfThePosts() {
+        IndexSnapshot index = searchEngine.getIndex();
+        DenseColumns columns = index.getDenseColumns();
+        assertTrue(columns.getColumnCount() > 0);
+        assertTrue(columns.getColumnCount() <= DenseColumns.MAX_COLUMNS);
+        for (int column = 0; column < columns.getColumnCount(); column++) {
+            int termId = columns.getTermId(column);
+            assertEquals(column, columns.column(termId));
+            IndexData indexData = index.postings(termId);
+            assertTrue(indexData.getDocumentFrequency() >= index.documentCount() / DenseColumns.DENSE_FRACTION);
+
+            float[] expected = new float[index.documentCount()];
+            for (int post = 0; post < indexData.getDocumentFrequency(); post++) {
+                expected[indexData.getDocIds()[post]] = indexData.getW_ij()[post];
+            }
+            for (int doc = 0; doc < index.documentCount(); doc++) {
+                int offset = columns.offset(column) + doc;
+                assertEquals(expected[doc], columns.getWeights()[offset], 0.0f);
+                assertEquals(expected[doc] != 0 ? 1 : 0, columns.getPresence()[offset]);
+            }
+        }
+    }
+
+    @Test
+    public void columnScoresEqualPostScores() {
+        String[][] questions = {
+                {"player card", "player OR card"},
+                {"player card deathtouch", "player OR card OR deathtouch"},
+                {"creature ability permanent", "creature OR ability OR permanent"}
+        };
+        for (String[] question : questions) {
+            assertTrue(question[0], denseIndexes(question[0]) > 0);
+            assertEquals(question[0], titles(searchEngine.retrieval(question[0])), titles(searchEngine.retrieval(question[1])));
+        }
+    }
+
+    private static int denseIndexes(String question) {
+        int dense = 0;
+        for (String term : searchEngine.analyze(question)) {
+            int termId = searchEngine.getDictionary().id(term);
+            if (searchEngine.getIndex().getDenseColumns().column(termId) >= 0) dense++;
+        }
+        return dense;
+    }
+
+    private static List<String> titles(List<Document> documents) {
+        List<String> titles = new ArrayList<>();
+        if (documents != null) {
+            for (Document document : documents) titles.add(document.getTitle());
+        }
+        return titles;
+    }
+}
@@ -0,0 +1,110 @@
+package com.mtgcre;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the facets counted while searching against the chapters of the documents matching the question.
+ */
+public class FacetCountsTest {
+
+    private static SearchEngine searchEngine;
+
+    @BeforeClass
+    public static void buildEngine() throws IOException {
+        searchEngine = TestCorpus.engine();
+    }
+
+    @Test
+    public void plainQuestionCountsEveryDocumentWithOneOfItsIndexes() {
+        TreeSet<Integer> matching = docs("deathtouch");
+        matching.addAll(docs("trample"));
+        assertFacets(matching, search("deathtouch trample"));
+    }
+
+    @Test
+    public void booleanQuestionCountsItsMatches() {
+        TreeSet<Integer> matching = docs("creature");
+        matching.retainAll(docs("damage"));
+        matching.removeAll(docs("combat"));
+        assertFacets(matching, search("creature AND damage -combat"));
+    }
+
+    @Test
+    public void restrictedQuestionCountsItsPartsOnly() {
+        TreeSet<Integer> matching = new TreeSet<>();
+        for (int doc : docs("damage")) {
+            if (searchEngine.getDocumentsById().get(doc).getTitle().startsWith("5")) matching.add(doc);
+        }
+        FacetCounts facets = search("in:5 damage");
+        assertFacets(matching, facets);
+        assertEquals(1, facets.getSections().size());
+        assertEquals("in:5", facets.getSections().get(0).getRestriction());
+    }
+
+    @Test
+    public void countsStartOverForEverySearch() {
+        FacetCounts facets = new FacetCounts();
+        searchEngine.retrieval("creature", CancellationToken.NONE, facets);
+        searchEngine.retrieval("deathtouch", CancellationToken.NONE, facets);
+        assertFacets(docs("deathtouch"), facets);
+    }
+
+    private static FacetCounts search(String question) {
+        FacetCounts facets = new FacetCounts();
+        searchEngine.retrieval(question, CancellationToken.NONE, facets);
+        return facets;
+    }
+
+    /**
+     * Compares the facets with the chapters and sections of the documents' titles
+     */
+    private static void assertFacets(Set<Integer> matching, FacetCounts facets) {
+        TreeMap<Integer, Integer> chapters = new TreeMap<>();
+        TreeMap<Integer, Integer> sections = new TreeMap<>();
+        for (int doc : matching) {
+            String title = searchEngine.getDocumentsById().get(doc).getTitle();
+            increment(chapters, Integer.parseInt(title.substring(0, 3)));
+            increment(sections, title.charAt(0) - '0');
+        }
+        assertEquals(matching.size(), facets.getTotal());
+        assertEquals(chapters, counts(facets.getChapters()));
+        assertEquals(sections, counts(facets.getSections()));
+
+        /* most matches first */
+        List<FacetCounts.Facet> ordered = facets.getChapters();
+        for (int i = 1; i < ordered.size(); i++) assertTrue(ordered.get(i - 1).getCount() >= ordered.get(i).getCount());
+    }
+
+    private static TreeMap<Integer, Integer> counts(List<FacetCounts.Facet> facets) {
+        TreeMap<Integer, Integer> counts = new TreeMap<>();
+        for (FacetCounts.Facet facet : facets) counts.put(facet.getPart(), facet.getCount());
+        return counts;
+    }
+
+    private static void increment(TreeMap<Integer, Integer> counts, int part) {
+        Integer count = counts.get(part);
+        counts.put(part, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * @return the documents in the posts of a word's index
+     */
+    private static TreeSet<Integer> docs(String word) {
+        List<String> terms = searchEngine.analyze(word);
+        assertEquals(word, 1, terms.size());
+        IndexData indexData = searchEngine.getInverseIndexes().get(terms.get(0));
+        TreeSet<Integer> docs = new TreeSet<>();
+        for (int post = 0; post < indexData.getDocumentFrequency(); post++) docs.add(indexData.getDocIds()[post]);
+        return docs;
+    }
+}
@@ -0,0 +1,88 @@
+package com.mtgcre;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sanity checks of the LSI mode on rules whose neighbours are known: the rules of the same keyword, and the rules
+ * the neighbour table relates to them.
+ */
+public class LatentModeTest {
+
+    private static SearchEngine searchEngine;
+
+    @BeforeClass
+    public static void buildEngine() throws IOException {
+        searchEngine = TestCorpus.engine();
+    }
+
+    @After
+    public void disableLatent() {
+        searchEngine.setLatentEnabled(false);
+    }
+
+    @Test
+    public void latentMeasureFindsTheSameKeyword() {
+        searchEngine.setLatentEnabled(true);
+        /* trample (702.19b) and the rest of trample, double strike (702.4b) and the rest of double strike */
+        assertTrue(titles(searchEngine.moreLikeThis("702.19b")).contains("702.19d"));
+        assertTrue(titles(searchEngine.moreLikeThis("702.19b")).contains("702.19e"));
+        List<String> doubleStrike = titles(searchEngine.moreLikeThis("702.4b"));
+        assertTrue(doubleStrike.subList(0, 10).contains("702.4a"));
+        assertTrue(doubleStrike.subList(0, 10).contains("702.4e"));
+    }
+
+    @Test
+    public void latentModeAgreesMoreWithTheRelatedRules() {
+        int plain = relatedOverlap();
+        searchEngine.setLatentEnabled(true);
+        int latent = relatedOverlap();
+        assertTrue(plain + " < " + latent, latent > plain);
+    }
+
+    @Test
+    public void turningItOffRestoresThePlainResults() {
+        List<String> plain = titles(searchEngine.retrieval("trample damage blocking creatures"));
+        searchEngine.setLatentEnabled(true);
+        assertTrue(searchEngine.isLatentEnabled());
+        assertFalse(plain.equals(titles(searchEngine.retrieval("trample damage blocking creatures"))));
+        searchEngine.setLatentEnabled(false);
+        assertEquals(plain, titles(searchEngine.retrieval("trample damage blocking creatures")));
+    }
+
+    /**
+     * @return the number of the first 10 moreLikeThis() answers which relatedRules() has too, over every 7th rule
+     */
+    private static int relatedOverlap() {
+        int overlap = 0;
+        List<Document> documentsById = searchEngine.getDocumentsById();
+        for (int doc = 0; doc < documentsById.size(); doc += 7) {
+            String title = documentsById.get(doc).getTitle();
+            Set<String> related = new HashSet<>(titles(searchEngine.relatedRules(title)));
+            List<String> similar = titles(searchEngine.moreLikeThis(title));
+            for (int i = 0; i < Math.min(10, similar.size()); i++) {
+                if (related.contains(similar.get(i))) overlap++;
+            }
+        }
+        return overlap;
+    }
+
+    private static List<String> titles(List<Document> documents) {
+        List<String> titles = new ArrayList<>();
+        if (documents != null) {
+            for (Document document : documents) titles.add(document.getTitle());
+        }
+        return titles;
+    }
+}
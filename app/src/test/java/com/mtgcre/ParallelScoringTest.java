@@ -0,0 +1,103 @@
+package com.mtgcre;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scores long plain questions split by doc id ranges and checks their results and facets against the
+ * single-threaded ones, on both sides of the parallel threshold.
+ */
+public class ParallelScoringTest {
+
+    private static final String JUDGE_CALL = "the player who controls a creature card with an activated ability "
+            + "pays its mana cost, then the spell or ability resolves and its effect deals damage to each permanent on "
+            + "the battlefield that turn, any object or source an opponent targets is put into a zone";
+    private static final String COMBAT_CALL = "during the combat phase the attacking player declares attackers, each "
+            + "blocking creature and attacking creature with first strike deals combat damage, then a triggered ability "
+            + "of a permanent the player controls goes on the stack and a spell with a target is cast, the opponent "
+            + "chooses a card in their hand, library or graveyard and the game ends if a player has no life";
+    private static final String[] QUESTIONS = {
+            JUDGE_CALL,
+            COMBAT_CALL,
+            "in:1 in:7 " + JUDGE_CALL,
+            "in:1 in:5 in:7 " + COMBAT_CALL
+    };
+    /** Two ranges of SearchEngine.PARALLEL_GRAIN posts at least, so the questions are split */
+    private static final int SPLIT_POSTINGS = 2 * 2048;
+    private static final int PARTS = 4;
+
+    private static SearchEngine searchEngine;
+
+    @BeforeClass
+    public static void buildEngine() throws IOException {
+        searchEngine = TestCorpus.engine();
+        /* more ranges than workers are fine, so the ranges are split whatever the number of cores */
+        searchEngine.setParallelParts(PARTS);
+    }
+
+    @After
+    public void restoreThreshold() {
+        searchEngine.setParallelPostings(SearchEngine.PARALLEL_POSTINGS);
+        searchEngine.setMetricsEnabled(false);
+    }
+
+    @Test
+    public void parallelRangesMatchSingleThreadedResults() {
+        for (String question : QUESTIONS) {
+            assertTrue(question, postings(question) >= SPLIT_POSTINGS);
+            searchEngine.setParallelPostings(Integer.MAX_VALUE);
+            FacetCounts expectedFacets = new FacetCounts();
+            List<String> expected = titles(searchEngine.retrieval(question, CancellationToken.NONE, expectedFacets));
+            assertTrue(question, expected.size() > 0);
+
+            searchEngine.setParallelPostings(0);
+            FacetCounts facets = new FacetCounts();
+            assertEquals(question, expected, titles(searchEngine.retrieval(question, CancellationToken.NONE, facets)));
+            assertEquals(question, expectedFacets.toString(), facets.toString());
+            assertEquals(question, expectedFacets.getTotal(), facets.getTotal());
+        }
+    }
+
+    @Test
+    public void resultsMatchAtTheThreshold() {
+        for (String question : QUESTIONS) {
+            long postings = postings(question);
+            assertTrue(question, postings >= SPLIT_POSTINGS);
+
+            /* one post below the threshold it is scored on one thread, at the threshold by ranges */
+            searchEngine.setParallelPostings((int) postings + 1);
+            List<String> below = titles(searchEngine.retrieval(question));
+            searchEngine.setParallelPostings((int) postings);
+            assertEquals(question, below, titles(searchEngine.retrieval(question)));
+        }
+    }
+
+    /**
+     * @return the posts walked by a question, from the metrics of its search
+     */
+    private static long postings(String question) {
+        searchEngine.setMetricsEnabled(true);
+        searchEngine.resetMetrics();
+        assertNotNull(searchEngine.retrieval(question));
+        return searchEngine.getMetricsSnapshot().getPostings()[MetricsSnapshot.MAX];
+    }
+
+    private static List<String> titles(List<Document> documents) {
+        List<String> titles = new ArrayList<>();
+        if (documents != null) {
+            for (Document document : documents) {
+                titles.add(document.getTitle() + " " + document.getText());
+            }
+        }
+        return titles;
+    }
+}
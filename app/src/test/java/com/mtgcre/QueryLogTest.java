@@ -0,0 +1,109 @@
+package com.mtgcre;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Records searches into small query logs and checks the lines of their files, the dropped searches of a full ring
+ * and the rotation of the files.
+ */
+public class QueryLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writesOneLinePerSearch() throws IOException {
+        File file = new File(folder.getRoot(), "queries.log");
+        QueryLog queryLog = new QueryLog(file);
+        assertTrue(queryLog.record("deathtouch\ttrample", Arrays.asList("deathtouch", "trampl"), 12, "702.19b", 1500000));
+        assertTrue(queryLog.record("xyzzy", new ArrayList<String>(), 0, null, 2000));
+        queryLog.close();
+
+        List<String> lines = lines(file);
+        assertEquals(2, lines.size());
+        String[] fields = lines.get(0).split("\t");
+        assertEquals(6, fields.length);
+        assertEquals("1500", fields[1]);
+        assertEquals("12", fields[2]);
+        assertEquals("702.19b", fields[3]);
+        assertEquals("deathtouch trampl", fields[4]);
+        assertEquals("deathtouch trample", fields[5]);
+        assertTrue(lines.get(1).endsWith("\t2\t0\t-\t\txyzzy"));
+    }
+
+    @Test
+    public void fullRingDropsSearches() throws IOException {
+        File file = new File(folder.getRoot(), "queries.log");
+        QueryLog queryLog = new QueryLog(file, 4, QueryLog.DEFAULT_MAX_BYTES, 1);
+        assertEquals(4, queryLog.getCapacity());
+        for (int i = 0; i < 4; i++) assertTrue(queryLog.record("question " + i, terms(), 1, "100.1", 1000));
+        assertFalse(queryLog.record("question 4", terms(), 1, "100.1", 1000));
+        assertFalse(queryLog.record("question 5", terms(), 1, "100.1", 1000));
+        assertEquals(2, queryLog.getDroppedCount());
+
+        /* the written entries are given back to the ring */
+        queryLog.flush();
+        assertTrue(queryLog.record("question 6", terms(), 1, "100.1", 1000));
+        queryLog.close();
+
+        List<String> lines = lines(file);
+        assertEquals("# dropped 2", lines.get(0));
+        assertEquals(6, lines.size());
+        for (int i = 0; i < 4; i++) assertTrue(lines.get(i + 1).endsWith("\tquestion " + i));
+        assertTrue(lines.get(5).endsWith("\tquestion 6"));
+    }
+
+    @Test
+    public void rotatesTheFiles() throws IOException {
+        File file = new File(folder.getRoot(), "queries.log");
+        QueryLog queryLog = new QueryLog(file, 16, 200, 3);
+        for (int i = 0; i < 40; i++) {
+            queryLog.record("question " + i, terms(), 1, "100.1", 1000);
+            queryLog.flush();
+        }
+        queryLog.close();
+
+        File first = new File(file.getPath() + ".1");
+        File second = new File(file.getPath() + ".2");
+        assertTrue(file.exists() && first.exists() && second.exists());
+        assertFalse(new File(file.getPath() + ".3").exists());
+        for (File kept : new File[]{file, first, second}) assertTrue(kept.getName(), kept.length() <= 200);
+
+        /* the newest searches are in the current file, the ones before them in file.1 */
+        List<String> current = lines(file);
+        assertTrue(current.get(current.size() - 1).endsWith("\tquestion 39"));
+        List<String> previous = lines(first);
+        String firstQuestion = current.get(0).substring(current.get(0).lastIndexOf('\t') + 1);
+        String lastPrevious = previous.get(previous.size() - 1);
+        assertEquals(Integer.parseInt(firstQuestion.substring("question ".length())) - 1,
+                Integer.parseInt(lastPrevious.substring(lastPrevious.lastIndexOf(' ') + 1)));
+    }
+
+    private static List<String> terms() {
+        return Arrays.asList("question");
+    }
+
+    private static List<String> lines(File file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) lines.add(line);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,120 @@
+package com.mtgcre;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the documents matched by the boolean questions against the posts of their indexes.
+ */
+public class QueryParserTest {
+
+    private static SearchEngine searchEngine;
+
+    @BeforeClass
+    public static void buildEngine() throws IOException {
+        searchEngine = TestCorpus.engine();
+    }
+
+    @Test
+    public void andBindsTighterThanOr() {
+        TreeSet<Integer> expected = docs("flying");
+        TreeSet<Integer> reachAndBlock = docs("reach");
+        reachAndBlock.retainAll(docs("block"));
+        expected.addAll(reachAndBlock);
+
+        assertEquals(expected, matches("flying OR reach AND block"));
+        assertEquals(expected, matches("flying reach AND block"));
+    }
+
+    @Test
+    public void nestedGroups() {
+        TreeSet<Integer> expected = docs("flying");
+        expected.addAll(docs("reach"));
+        expected.retainAll(docs("block"));
+        expected.removeAll(docs("trample"));
+
+        assertEquals(expected, matches("(flying OR reach) AND block -trample"));
+        assertEquals(expected, matches("((flying OR reach) AND +block) NOT trample"));
+    }
+
+    @Test
+    public void standaloneHyphenIsNotAnOperator() {
+        assertFalse(QueryParser.hasOperators("deathtouch - trample"));
+        assertFalse(QueryParser.hasOperators("deathtouch + trample"));
+        assertFalse(QueryParser.hasOperators("+1/+1 counter -1"));
+        assertTrue(QueryParser.hasOperators("deathtouch -trample"));
+        assertTrue(QueryParser.hasOperators("deathtouch -(trample OR flying)"));
+
+        boolean trampleRule = false;
+        for (Document document : searchEngine.retrieval("deathtouch - trample")) {
+            trampleRule |= document.getTitle().startsWith("702.19");
+        }
+        assertTrue(trampleRule);
+    }
+
+    @Test
+    public void excludedGroup() {
+        TreeSet<Integer> expected = docs("deathtouch");
+        expected.removeAll(docs("trample"));
+        expected.removeAll(docs("flying"));
+
+        assertEquals(expected, matches("+deathtouch -(trample OR flying)"));
+        assertEquals("deathtouch", QueryParser.lookupText("+deathtouch -(trample OR (flying AND reach))"));
+        assertEquals("deathtouch", QueryParser.lookupText("deathtouch NOT \"first strike\""));
+    }
+
+    @Test
+    public void quotedPhraseIsFoundAsWritten() {
+        TreeSet<Integer> found = matches("\"Gutter Grime\"");
+        assertFalse(found.isEmpty());
+        for (int doc : found) {
+            Document document = searchEngine.getIndex().document(doc);
+            assertTrue((document.getText() + document.getExamples()).toLowerCase().contains("gutter grime"));
+        }
+        TreeSet<Integer> expected = docs("creature");
+        expected.removeAll(found);
+        assertEquals(expected, matches("creature -\"gutter grime\""));
+    }
+
+    @Test
+    public void negativeOnlyQueryMatchesEverythingElse() {
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int doc = 0; doc < searchEngine.getIndex().documentCount(); doc++) expected.add(doc);
+        expected.removeAll(docs("planeswalker"));
+
+        assertEquals(expected, matches("-planeswalker"));
+        ArrayList<Document> results = searchEngine.retrieval("-planeswalker");
+        assertNotNull(results);
+        for (Document document : results) {
+            assertFalse(document.getText().toLowerCase().contains("planeswalker"));
+        }
+    }
+
+    private static TreeSet<Integer> matches(String question) {
+        TreeSet<Integer> matches = new TreeSet<>();
+        for (int doc : QueryParser.parse(question, searchEngine).matches(searchEngine.getIndex())) matches.add(doc);
+        return matches;
+    }
+
+    /**
+     * @return the documents in the posts of a word's index
+     */
+    private static TreeSet<Integer> docs(String word) {
+        List<String> terms = searchEngine.analyze(word);
+        assertEquals(word, 1, terms.size());
+        IndexData indexData = searchEngine.getInverseIndexes().get(terms.get(0));
+        TreeSet<Integer> docs = new TreeSet<>();
+        for (int post = 0; post < indexData.getDocumentFrequency(); post++) docs.add(indexData.getDocIds()[post]);
+        return docs;
+    }
+}
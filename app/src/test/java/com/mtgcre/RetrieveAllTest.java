@@ -0,0 +1,71 @@
+package com.mtgcre;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks the answers of a batch of questions against retrieval() of each question.
+ */
+public class RetrieveAllTest {
+
+    private static final String[] WORDS = {
+            "creature", "damage", "player", "spell", "ability", "permanent", "combat", "mana", "token", "counter"
+    };
+
+    private static SearchEngine searchEngine;
+
+    @BeforeClass
+    public static void buildEngine() throws IOException {
+        searchEngine = TestCorpus.engine();
+    }
+
+    @Test
+    public void batchMatchesOneByOne() {
+        List<String> questions = new ArrayList<>();
+        /* more questions sharing the same indexes than fit in one chunk */
+        for (int i = 0; i < WORDS.length; i++) {
+            for (int j = i + 1; j < WORDS.length; j++) {
+                questions.add(WORDS[i] + " " + WORDS[j]);
+            }
+        }
+        questions.add("deathtouch AND trample -planeswalker");
+        questions.add("in:702 trample");
+        questions.add("702.19b");
+        questions.add("commander damage");
+        questions.add("commander damage");
+
+        List<ArrayList<Document>> answers = searchEngine.retrieveAll(questions);
+        assertEquals(questions.size(), answers.size());
+        for (int q = 0; q < questions.size(); q++) {
+            assertEquals(questions.get(q), titles(searchEngine.retrieval(questions.get(q))), titles(answers.get(q)));
+        }
+    }
+
+    @Test
+    public void questionWithoutAnswersIsNull() {
+        List<String> questions = new ArrayList<>();
+        questions.add("xyzzyplugh");
+        questions.add("trample");
+        List<ArrayList<Document>> answers = searchEngine.retrieveAll(questions);
+        assertNull(searchEngine.retrieval("xyzzyplugh"));
+        assertNull(answers.get(0));
+        assertEquals(titles(searchEngine.retrieval("trample")), titles(answers.get(1)));
+    }
+
+    private static List<String> titles(List<Document> documents) {
+        List<String> titles = new ArrayList<>();
+        if (documents != null) {
+            for (Document document : documents) {
+                titles.add(document.getTitle() + " " + document.getText());
+            }
+        }
+        return titles;
+    }
+}
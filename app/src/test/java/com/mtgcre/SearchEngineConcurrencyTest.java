@@ -0,0 +1,99 @@
+package com.mtgcre;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the same questions from many threads against one engine and checks every result list against the
+ * single-threaded one.
+ */
+public class SearchEngineConcurrencyTest {
+
+    private static final String[] QUESTIONS = {
+            "deathtouch trample damage",
+            "commander damage",
+            "what happens when my creature dies",
+            "702.19b",
+            "flying",
+            "convoke spell mana cost creature tap",
+            "planeswalker loyalty ability activate",
+            "first strike double strike combat damage step",
+            "legend rule",
+            "token copy",
+            "deathtouch AND trample -planeswalker",
+            "+commander damage",
+            "(flying OR reach) AND +block"
+    };
+    private static final int THREADS = 8;
+    private static final int SEARCHES_PER_THREAD = 300;
+
+    private static SearchEngine searchEngine;
+
+    @BeforeClass
+    public static void buildEngine() throws IOException {
+        searchEngine = TestCorpus.engine();
+    }
+
+    @Test
+    public void concurrentSearchesMatchSingleThreadedResults() throws Exception {
+        final Map<String, List<String>> expected = new HashMap<>();
+        for (String question : QUESTIONS) {
+            expected.put(question, titles(searchEngine.retrieval(question)));
+        }
+
+        searchEngine.resetMetrics();
+        searchEngine.setMetricsEnabled(true);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> workers = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            final long seed = thread;
+            workers.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    Random random = new Random(seed);
+                    start.await();
+                    for (int i = 0; i < SEARCHES_PER_THREAD; i++) {
+                        String question = QUESTIONS[random.nextInt(QUESTIONS.length)];
+                        assertEquals(question, expected.get(question), titles(searchEngine.retrieval(question)));
+                    }
+                    return SEARCHES_PER_THREAD;
+                }
+            }));
+        }
+        start.countDown();
+        int searches = 0;
+        for (Future<Integer> worker : workers) {
+            searches += worker.get();
+        }
+        executor.shutdown();
+        searchEngine.setMetricsEnabled(false);
+
+        assertEquals(THREADS * SEARCHES_PER_THREAD, searchEngine.getMetricsSnapshot().getQueries());
+        assertEquals(THREADS * SEARCHES_PER_THREAD, searches);
+    }
+
+    private static List<String> titles(List<Document> documents) {
+        List<String> titles = new ArrayList<>();
+        if (documents != null) {
+            for (Document document : documents) {
+                titles.add(document.getTitle() + " " + document.getText());
+            }
+        }
+        return titles;
+    }
+}
@@ -0,0 +1,103 @@
+package com.mtgcre;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the documents of the in: restrictions against the titles of the rules, and the answers of the restricted
+ * questions.
+ */
+public class SectionShardsTest {
+
+    private static SearchEngine searchEngine;
+
+    @BeforeClass
+    public static void buildEngine() throws IOException {
+        searchEngine = TestCorpus.engine();
+    }
+
+    @Test
+    public void restrictionsCoverTheirRules() {
+        for (String part : new String[]{"1", "7", "9", "702", "702.", "702.19", "702.19b", "100.1"}) {
+            List<Integer> docs = restricted(part);
+            assertFalse(part, docs.isEmpty());
+            assertEquals(part, scan(part.endsWith(".") ? part.substring(0, part.length() - 1) : part), docs);
+        }
+        /* 702.1 is not 702.19, 70 is not 702 */
+        assertFalse(restricted("702.1").contains(searchEngine.getDocuments().get("702.19b").getId()));
+        assertTrue(restricted("70").isEmpty());
+    }
+
+    @Test
+    public void invalidOrOutOfRangeRestrictionsAreEmpty() {
+        for (String part : new String[]{"0", "999", "7020", "702.999", "702.19zz", "."}) {
+            assertTrue(part, restricted(part).isEmpty());
+        }
+        assertEquals(restricted("702"), restricted("702", "999"));
+    }
+
+    @Test
+    public void restrictedQuestionsOnlyAnswerFromTheirParts() {
+        List<String> rules = rules(searchEngine.retrieval("in:702 trample damage"));
+        assertFalse(rules.isEmpty());
+        for (String title : rules) assertTrue(title, title.startsWith("702."));
+
+        rules = rules(searchEngine.retrieval("in:702.19b in:9 trample"));
+        assertTrue(rules.contains("702.19b"));
+        for (String title : rules) assertTrue(title, title.equals("702.19b") || title.startsWith("9"));
+
+        assertEquals(rules(searchEngine.retrieval("in:702 trample")), rules(searchEngine.retrieval("in:702 in:999 trample")));
+        /* the glossary entries of the question's words are still answered, but no rule */
+        assertTrue(rules(searchEngine.retrieval("in:999 trample")).isEmpty());
+        assertTrue(rules(searchEngine.retrieval("in:0 trample")).isEmpty());
+    }
+
+    private static List<Integer> restricted(String... parts) {
+        IndexSnapshot index = searchEngine.getIndex();
+        int[] ranges = index.getShards().restrict(index.getDocumentsById(), Arrays.asList(parts));
+        List<Integer> docs = new ArrayList<>();
+        for (int r = 0; r < ranges.length; r += 2) {
+            for (int doc = ranges[r]; doc < ranges[r + 1]; doc++) docs.add(doc);
+        }
+        return docs;
+    }
+
+    /**
+     * @return the documents of a section (7), or whose title is the part or starts with it followed by anything but
+     * a digit
+     */
+    private static List<Integer> scan(String part) {
+        List<Integer> docs = new ArrayList<>();
+        List<Document> documentsById = searchEngine.getDocumentsById();
+        for (int doc = 0; doc < documentsById.size(); doc++) {
+            String title = documentsById.get(doc).getTitle();
+            if (title.startsWith(part) && (part.length() == 1 || title.length() == part.length()
+                    || !Character.isDigit(title.charAt(part.length())))) {
+                docs.add(doc);
+            }
+        }
+        return docs;
+    }
+
+    /**
+     * @return the titles of the rules among the answers, without the glossary entries
+     */
+    private static List<String> rules(List<Document> documents) {
+        List<String> titles = new ArrayList<>();
+        if (documents != null) {
+            for (Document document : documents) {
+                if (document.getStore() != null) titles.add(document.getTitle());
+            }
+        }
+        return titles;
+    }
+}
@@ -0,0 +1,34 @@
+package com.mtgcre;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * The rules, glossary and stop list of the app, read from its raw resources, for the tests which need the real corpus.
+ */
+final class TestCorpus {
+
+    private static final File RAW = new File("src/main/res/raw");
+
+    private TestCorpus() {
+    }
+
+    /**
+     * @return a new engine over the real corpus. Every call builds its own, since some tests change the settings of
+     * their engine (setParallelParts, setLatentEnabled) or trim its memory.
+     */
+    static SearchEngine engine() throws IOException {
+        return new SearchEngine(CorpusParser.read(new FileInputStream(file("mtg_cr.txt"))),
+                CorpusParser.read(new FileInputStream(file("mtg_cr_glossary.txt"))),
+                CorpusParser.read(new FileInputStream(file("time_stoplist.txt"))));
+    }
+
+    /**
+     * @param name name of a raw resource, mtg_cr.txt
+     * @return the file of the resource
+     */
+    static File file(String name) {
+        return new File(RAW, name);
+    }
+}
@@ -0,0 +1,145 @@
+package com.mtgcre;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decodes the pieces of text arenas, and the documents of a DocumentStore, and compares them with the lines they
+ * come from.
+ */
+public class TextArenaTest {
+
+    private static final String TEXT = "Abandon\nTo turn a face-up scheme card face down. See rule 701.26, \u201cAbandon.\u201d\n"
+            + "\n{T}: Add {G}. \u2014 \u00e9t\u00e9 \ud83d\udd25\r\nlast line";
+
+    private static SearchEngine searchEngine;
+
+    @BeforeClass
+    public static void buildEngine() throws IOException {
+        searchEngine = TestCorpus.engine();
+    }
+
+    @Test
+    public void piecesDecodeToTheirText() {
+        byte[] bytes = TEXT.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes);
+        direct.flip();
+        for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.wrap(bytes), direct}) {
+            TextArena arena = new TextArena(buffer);
+            List<String> lines = new ArrayList<>();
+            int start = 0;
+            for (int end = 0; end <= bytes.length; end++) {
+                if (end == bytes.length || bytes[end] == '\n') {
+                    int last = end > start && bytes[end - 1] == '\r' ? end - 1 : end;
+                    assertEquals(lines.size(), arena.add(start, last));
+                    lines.add(new String(bytes, start, last - start, StandardCharsets.UTF_8));
+                    start = end + 1;
+                }
+            }
+            int all = arena.add(0, bytes.length);
+            arena.trimToSize();
+
+            for (int piece = 0; piece < lines.size(); piece++) assertEquals(lines.get(piece), arena.decode(piece));
+            assertEquals("", arena.decode(2));
+            assertEquals(TEXT, arena.decode(all));
+            assertEquals(" " + TEXT.replace("\r\n", " ").replace('\n', ' '), arena.decodeJoined(all));
+            assertEquals(lines.size() + 1, arena.getPieceCount());
+            /* the buffer is only read, never moved */
+            assertEquals(0, buffer.position());
+        }
+    }
+
+    @Test
+    public void offsetTableGrows() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) text.append("piece ").append(i).append('\n');
+        TextArena arena = new TextArena(ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8)));
+        int start = 0;
+        for (int i = 0; i < 1000; i++) {
+            int end = start + ("piece " + i).length();
+            arena.add(start, end);
+            start = end + 1;
+        }
+        arena.trimToSize();
+        assertEquals(1000, arena.getPieceCount());
+        for (int i = 0; i < 1000; i++) assertEquals("piece " + i, arena.decode(i));
+        assertEquals(text.length() - 1000, arena.getTextBytes());
+    }
+
+    @Test
+    public void documentsDecodeToTheirLines() throws IOException {
+        List<String> lines = new ArrayList<>();
+        Map<String, Integer> lineNumbers = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(TestCorpus.file("mtg_cr.txt")), StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (!lineNumbers.containsKey(line)) lineNumbers.put(line, lines.size());
+                lines.add(line);
+            }
+        }
+
+        DocumentStore store = searchEngine.getDocumentStore();
+        /* twice: decoded from the file, then again once the cache has forgotten them */
+        for (int pass = 0; pass < 2; pass++) {
+            for (int doc = 0; doc < store.getDocumentCount(); doc++) {
+                Integer line = lineNumbers.get(store.getText(doc));
+                assertNotNull(store.getText(doc), line);
+                assertTrue(store.getText(doc).startsWith(searchEngine.getDocumentsById().get(doc).getTitle()));
+                List<String> examples = store.getExamples(doc);
+                for (int example = 0; example < examples.size(); example++) {
+                    assertEquals(lines.get(line + 1 + example), examples.get(example));
+                }
+                int next = line + 1 + examples.size();
+                assertFalse(next < lines.size() && lines.get(next).startsWith("Example:"));
+            }
+            assertTrue(store.getDecodedCount() <= DocumentStore.CACHE_SIZE);
+        }
+    }
+
+    @Test
+    public void definitionsAreTheGlossaryEntriesJoined() throws IOException {
+        /* an entry is its title line and the lines of its definition, up to a blank line */
+        Map<String, String> definitions = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(TestCorpus.file("mtg_cr_glossary.txt")), StandardCharsets.UTF_8))) {
+            String title = null;
+            StringBuilder definition = new StringBuilder();
+            for (String line = reader.readLine(); ; line = reader.readLine()) {
+                if (line == null || line.isEmpty()) {
+                    if (title != null) definitions.put(title, definition.toString());
+                    if (line == null) break;
+                    title = null;
+                } else if (title == null) {
+                    title = line.toLowerCase(Locale.ROOT);
+                    definition.setLength(0);
+                } else {
+                    definition.append(' ').append(line);
+                }
+            }
+        }
+
+        List<GloassaryData> entries = searchEngine.getIndex().getGlossaries();
+        assertFalse(entries.isEmpty());
+        for (GloassaryData entry : entries) {
+            assertEquals(entry.getTitle(), definitions.get(entry.getTitle()), entry.getText());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.mtgcre;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the documents found by the trigram index against a scan of every text and example, before and after its
+ * posts are released.
+ */
+public class TrigramIndexTest {
+
+    private static final String[] PATTERNS = {
+            "+1/+1", "{T}", "Gutter Grime", "gUTTER gRIME", "first strike", "702.19", "can't", "\u2014", "xyzzyplugh"
+    };
+
+    private static SearchEngine searchEngine;
+
+    @BeforeClass
+    public static void buildEngine() throws IOException {
+        searchEngine = TestCorpus.engine();
+    }
+
+    @Test
+    public void findsExactlyTheDocumentsContainingTheText() {
+        TrigramIndex trigrams = searchEngine.getIndex().getTrigrams();
+        for (String pattern : PATTERNS) {
+            assertEquals(pattern, scan(pattern), found(trigrams, pattern));
+        }
+        assertFalse(scan("+1/+1").isEmpty());
+        assertEquals(0, trigrams.find("{T").length);
+    }
+
+    @Test
+    public void rebuildsTheReleasedPosts() {
+        TrigramIndex trigrams = searchEngine.getIndex().getTrigrams();
+        int posts = trigrams.getPostCount();
+        List<List<Integer>> before = new ArrayList<>();
+        for (String pattern : PATTERNS) before.add(found(trigrams, pattern));
+
+        trigrams.release();
+        assertTrue(trigrams.isReleased());
+        assertEquals(0, trigrams.getPostCount());
+        for (int p = 0; p < PATTERNS.length; p++) {
+            assertEquals(PATTERNS[p], before.get(p), found(trigrams, PATTERNS[p]));
+        }
+        assertFalse(trigrams.isReleased());
+        assertEquals(posts, trigrams.getPostCount());
+    }
+
+    private static List<Integer> found(TrigramIndex trigrams, String pattern) {
+        List<Integer> docs = new ArrayList<>();
+        for (int doc : trigrams.find(pattern)) docs.add(doc);
+        return docs;
+    }
+
+    /**
+     * @return the documents whose text or one of whose examples contains the pattern, ASCII letters in any case
+     */
+    private static List<Integer> scan(String pattern) {
+        String folded = fold(pattern);
+        List<Integer> docs = new ArrayList<>();
+        DocumentStore store = searchEngine.getDocumentStore();
+        for (int doc = 0; doc < store.getDocumentCount(); doc++) {
+            boolean contains = fold(store.getText(doc)).contains(folded);
+            for (String example : store.getExamples(doc)) contains |= fold(example).contains(folded);
+            if (contains) docs.add(doc);
+        }
+        return docs;
+    }
+
+    private static String fold(String text) {
+        StringBuilder folded = new StringBuilder(text);
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (c >= 'A' && c <= 'Z') folded.setCharAt(i, (char) (c + ('a' - 'A')));
+        }
+        return folded.toString();
+    }
+}
@@ -0,0 +1,88 @@
+package com.mtgcre;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Trims the memory of an engine and checks that it answers the same as before, while the dropped data is built
+ * again.
+ */
+public class TrimMemoryTest {
+
+    private static final String[] QUESTIONS = {
+            "deathtouch trample damage",
+            "what happens when my creature dies",
+            "702.19b",
+            "deathtouch AND trample -planeswalker",
+            "\"+1/+1\" counter",
+            "in:702 flying",
+            "first strike"
+    };
+    private static final String[] TITLES = {"702.19b", "702.2c", "702.4b"};
+
+    private static SearchEngine searchEngine;
+
+    @BeforeClass
+    public static void buildEngine() throws IOException {
+        searchEngine = TestCorpus.engine();
+    }
+
+    @Test
+    public void cachesTrimmedAnswersUnchanged() {
+        List<String> before = answers();
+        searchEngine.trimMemory(SearchEngine.TRIM_CACHES);
+        assertEquals(0, searchEngine.getDocumentStore().getDecodedCount());
+        assertEquals(0, searchEngine.getStemCache().size());
+        assertEquals(before, answers());
+    }
+
+    @Test
+    public void rebuildableTrimmedAnswersUnchanged() {
+        List<String> before = answers();
+        FootprintReport freed = searchEngine.trimMemory(SearchEngine.TRIM_REBUILDABLE);
+        assertFalse(freed.getItems().isEmpty());
+        assertTrue(searchEngine.getIndex().getTrigrams().isReleased());
+        assertEquals(before, answers());
+        assertFalse(searchEngine.getIndex().getTrigrams().isReleased());
+
+        /* trimmed twice in a row, the second time with nothing rebuilt in between */
+        searchEngine.trimMemory(SearchEngine.TRIM_REBUILDABLE);
+        searchEngine.trimMemory(SearchEngine.TRIM_REBUILDABLE);
+        assertEquals(before, answers());
+    }
+
+    /**
+     * @return the answers of the questions and of the related rules with their texts and examples
+     */
+    private static List<String> answers() {
+        List<String> answers = new ArrayList<>();
+        for (String question : QUESTIONS) {
+            answers.add(question + ": " + describe(searchEngine.retrieval(question)));
+        }
+        for (String title : TITLES) {
+            assertTrue(title, searchEngine.getDocuments().containsKey(title));
+            answers.add(title + " like: " + describe(searchEngine.moreLikeThis(title)));
+            answers.add(title + " related: " + describe(searchEngine.relatedRules(title)));
+        }
+        return answers;
+    }
+
+    private static String describe(List<Document> documents) {
+        StringBuilder builder = new StringBuilder();
+        if (documents != null) {
+            for (Document document : documents) {
+                builder.append(document.getTitle()).append(' ').append(document.getText()).append(' ')
+                        .append(document.getExamples()).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,40 @@
+package com.mtgcre.tools;
+
+import com.mtgcre.BuildReport;
+import com.mtgcre.SearchEngine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+/***
+ *  Writes the report of an index build from the real rules corpus: the phases with their time and allocations,
+ *  the counts and the indexes with the most documents.
+ *  Usage: BuildReportTool raw-resource-folder [output-file]
+ */
+public final class BuildReportTool {
+
+    private BuildReportTool() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: BuildReportTool raw-resource-folder [output-file]");
+            System.exit(2);
+        }
+        SearchEngine searchEngine = Corpus.load(new File(args[0]));
+        BuildReport report = searchEngine.getBuildReport();
+        System.out.println(report);
+
+        if (args.length > 1) {
+            File output = new File(args[1]);
+            if (output.getParentFile() != null) output.getParentFile().mkdirs();
+            try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8))) {
+                writer.println(report);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.mtgcre.tools;
+
+import com.mtgcre.BuildReport;
+import com.mtgcre.SearchEngine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/***
+ *  Loads the search engine on a plain JVM from the app's raw resource folder (app/src/main/res/raw).
+ */
+public final class Corpus {
+
+    public static final String RULES = "mtg_cr.txt";
+    public static final String GLOSSARY = "mtg_cr_glossary.txt";
+    public static final String STOPLIST = "time_stoplist.txt";
+
+    private Corpus() {
+    }
+
+    /***
+     *  Builds a SearchEngine from the three corpus files, the same way InitActivity does on the device. The
+     *  allocations of the build are measured for its report if the JVM can do it.
+     * @param rawDirectory folder of the raw resources
+     * @return the initialized engine
+     */
+    public static SearchEngine load(File rawDirectory) throws IOException {
+        return new SearchEngine(map(new File(rawDirectory, RULES)), map(new File(rawDirectory, GLOSSARY)),
+                map(new File(rawDirectory, STOPLIST)), allocationCounter());
+    }
+
+    /***
+     *  Counts the bytes allocated by the current thread with the HotSpot extension of the ThreadMXBean
+     * @return the counter, null if the JVM does not support it
+     */
+    static BuildReport.AllocationCounter allocationCounter() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return null;
+        final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        if (!allocations.isThreadAllocatedMemorySupported() || !allocations.isThreadAllocatedMemoryEnabled()) return null;
+        return new BuildReport.AllocationCounter() {
+            @Override
+            public long allocatedBytes() {
+                return allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        };
+    }
+
+    /***
+     *  Maps a file read-only, the mapping stays valid after the channel is closed
+     */
+    static ByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.mtgcre.tools;
+
+import com.mtgcre.FootprintReport;
+import com.mtgcre.SearchEngine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+/***
+ *  Writes the estimated heap footprint of an engine built from the real rules corpus.
+ *  Usage: FootprintReportTool raw-resource-folder [output-file]
+ */
+public final class FootprintReportTool {
+
+    private FootprintReportTool() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: FootprintReportTool raw-resource-folder [output-file]");
+            System.exit(2);
+        }
+        SearchEngine searchEngine = Corpus.load(new File(args[0]));
+        FootprintReport report = searchEngine.footprint();
+        System.out.println(report);
+
+        if (args.length > 1) {
+            File output = new File(args[1]);
+            if (output.getParentFile() != null) output.getParentFile().mkdirs();
+            try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8))) {
+                writer.println(report);
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.mtgcre.tools;
+
+import com.mtgcre.Document;
+import com.mtgcre.LatencyHistogram;
+import com.mtgcre.SearchEngine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ *  Replays a query log (one question per line, or the file written by QueryLog) against an engine built from the real rules corpus and reports:
+ *      throughput (queries per second over the measured run)
+ *      latency (p50/p95/p99/mean/max of retrieval() per query)
+ *      allocation (bytes allocated by the searching thread per query, if the JVM can measure it)
+ *      result changes (the top K titles of every question compared to a stored baseline)
+ *  The log is first run --warmup times (once by default) on a single thread, so the JIT has compiled the engine
+ *  before the measured run.
+ *  Exits with 1 if the results differ from the baseline.
+ *
+ *  Usage: ReplayTool raw-resource-folder query-log [--threads N] [--top K] [--warmup PASSES]
+ *                    [--baseline file] [--write-baseline file] [--report file]
+ */
+public final class ReplayTool {
+
+    /** Separates the question from its titles in a baseline file */
+    private static final String SEPARATOR = "\t";
+    private static final int MAX_LISTED_CHANGES = 20;
+
+    private final SearchEngine searchEngine;
+    private final List<String> queries;
+    private final int top;
+    private final ThreadMXBean threads;
+    private final boolean allocationSupported;
+
+    private ReplayTool(SearchEngine searchEngine, List<String> queries, int top) {
+        this.searchEngine = searchEngine;
+        this.queries = queries;
+        this.top = top;
+        this.threads = ManagementFactory.getThreadMXBean();
+        this.allocationSupported = threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: ReplayTool raw-resource-folder query-log [--threads N] [--top K] [--warmup PASSES]"
+                    + " [--baseline file] [--write-baseline file] [--report file]");
+            System.exit(2);
+        }
+        int threadCount = 1, top = 10, warmup = 1;
+        File baseline = null, writeBaseline = null, report = null;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--threads": threadCount = Integer.parseInt(args[i + 1]); break;
+                case "--top": top = Integer.parseInt(args[i + 1]); break;
+                case "--warmup": warmup = Integer.parseInt(args[i + 1]); break;
+                case "--baseline": baseline = new File(args[i + 1]); break;
+                case "--write-baseline": writeBaseline = new File(args[i + 1]); break;
+                case "--report": report = new File(args[i + 1]); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        ArrayList<String> queries = new ArrayList<>();
+        for (String line : Files.readAllLines(new File(args[1]).toPath(), StandardCharsets.UTF_8)) {
+            /* a line of the app's QueryLog has the question after its last tab */
+            if (line.startsWith("#")) continue;
+            String query = line.substring(line.lastIndexOf('\t') + 1).trim();
+            if (!query.isEmpty()) queries.add(query);
+        }
+        ReplayTool tool = new ReplayTool(Corpus.load(new File(args[0])), queries, top);
+        for (int pass = 0; pass < warmup; pass++) {
+            tool.run(1);
+        }
+        Run run = tool.run(threadCount);
+
+        StringBuilder text = new StringBuilder(tool.summarize(run, threadCount));
+        int changed = 0;
+        if (baseline != null) {
+            Map<String, String> expected = readBaseline(baseline);
+            changed = tool.diff(run, expected, text);
+        }
+        System.out.print(text);
+
+        if (writeBaseline != null) {
+            writeFile(writeBaseline, tool.baseline(run));
+        }
+        if (report != null) {
+            writeFile(report, text.toString());
+        }
+        if (changed > 0) {
+            System.exit(1);
+        }
+    }
+
+    /***
+     *  The measurements of one pass over the log
+     */
+    private static final class Run {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram allocation = new LatencyHistogram();
+        final String[] titles;
+        long wallNanos;
+
+        Run(int queries) {
+            this.titles = new String[queries];
+        }
+    }
+
+    /***
+     *  Runs every question of the log once, spread over the given number of threads
+     */
+    private Run run(int threadCount) throws InterruptedException {
+        Run run = new Run(queries.size());
+        AtomicInteger next = new AtomicInteger();
+        Runnable worker = () -> {
+            long threadId = Thread.currentThread().getId();
+            for (int i = next.getAndIncrement(); i < queries.size(); i = next.getAndIncrement()) {
+                long allocatedBefore = allocatedBytes(threadId);
+                long start = System.nanoTime();
+                ArrayList<Document> results = searchEngine.retrieval(queries.get(i));
+                run.latency.record(System.nanoTime() - start);
+                long allocatedAfter = allocatedBytes(threadId);
+                if (allocatedBefore >= 0 && allocatedAfter >= 0) run.allocation.record(allocatedAfter - allocatedBefore);
+                run.titles[i] = titles(results);
+            }
+        };
+
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            ArrayList<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                futures.add(executor.submit(worker));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A replayed search failed", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        run.wallNanos = System.nanoTime() - start;
+        return run;
+    }
+
+    private long allocatedBytes(long threadId) {
+        if (!allocationSupported) return -1;
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threadId);
+    }
+
+    /***
+     *  The titles of the first K results separated by spaces (spaces in glossary titles are written as _)
+     */
+    private String titles(ArrayList<Document> results) {
+        if (results == null) return "";
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < Math.min(top, results.size()); i++) {
+            if (i > 0) builder.append(' ');
+            builder.append(results.get(i).getTitle().replace(' ', '_'));
+        }
+        return builder.toString();
+    }
+
+    private String summarize(Run run, int threadCount) {
+        StringBuilder builder = new StringBuilder();
+        double seconds = run.wallNanos / 1e9;
+        builder.append(String.format(Locale.ROOT, "queries: %d, threads: %d, wall: %.1f ms, throughput: %.1f queries/s%n",
+                queries.size(), threadCount, run.wallNanos / 1e6, queries.size() / seconds));
+        builder.append(String.format(Locale.ROOT, "latency ms  p50/p95/p99: %.3f/%.3f/%.3f  mean: %.3f  max: %.3f%n",
+                run.latency.percentile(0.50) / 1e6, run.latency.percentile(0.95) / 1e6, run.latency.percentile(0.99) / 1e6,
+                run.latency.getMean() / 1e6, run.latency.getMax() / 1e6));
+        if (run.allocation.getTotal() > 0) {
+            builder.append(String.format(Locale.ROOT, "allocated bytes per query  p50/p95/p99: %d/%d/%d  mean: %.0f%n",
+                    run.allocation.percentile(0.50), run.allocation.percentile(0.95), run.allocation.percentile(0.99),
+                    run.allocation.getMean()));
+        } else {
+            builder.append(String.format("allocated bytes per query: not supported by this JVM%n"));
+        }
+        return builder.toString();
+    }
+
+    /***
+     *  Compares the titles of every question with the baseline and lists the first changes
+     * @return number of changed questions
+     */
+    private int diff(Run run, Map<String, String> expected, StringBuilder text) {
+        int changed = 0, missing = 0;
+        ArrayList<String> listed = new ArrayList<>();
+        for (int i = 0; i < queries.size(); i++) {
+            String question = queries.get(i);
+            String titles = expected.get(question);
+            if (titles == null) {
+                missing++;
+            } else if (!titles.equals(run.titles[i])) {
+                changed++;
+                if (listed.size() < MAX_LISTED_CHANGES && !listed.contains(question)) {
+                    listed.add(question);
+                    text.append(String.format("changed: %s%n  baseline: %s%n  now:      %s%n", question, titles, run.titles[i]));
+                }
+            }
+        }
+        text.append(String.format(Locale.ROOT, "baseline: %d changed, %d not in the baseline, %d unchanged%n",
+                changed, missing, queries.size() - changed - missing));
+        return changed;
+    }
+
+    private String baseline(Run run) {
+        LinkedHashMap<String, String> lines = new LinkedHashMap<>();
+        for (int i = 0; i < queries.size(); i++) {
+            lines.put(queries.get(i), run.titles[i]);
+        }
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, String> line : lines.entrySet()) {
+            builder.append(line.getKey()).append(SEPARATOR).append(line.getValue()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static Map<String, String> readBaseline(File file) throws IOException {
+        LinkedHashMap<String, String> expected = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            int separator = line.lastIndexOf(SEPARATOR);
+            if (separator > 0) expected.put(line.substring(0, separator), line.substring(separator + 1));
+        }
+        return expected;
+    }
+
+    private static void writeFile(File output, String text) throws IOException {
+        if (output.getParentFile() != null) output.getParentFile().mkdirs();
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8))) {
+            writer.print(text);
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package com.mtgcre.tools;
+
+import com.mtgcre.CancellationToken;
+import com.mtgcre.Document;
+import com.mtgcre.FacetCounts;
+import com.mtgcre.GloassaryData;
+import com.mtgcre.IndexSnapshot;
+import com.mtgcre.SearchEngine;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/***
+ *  Serves the search engine over a small JSON HTTP API, with the JDK's built-in HTTP server:
+ *      GET /search?q=question[&limit=N]   results of retrieval() (exact rule and glossary matches included), with the
+ *                                         matches by chapter and section (see FacetCounts)
+ *      GET /rules/702.19b                 the rule with that number, or every rule whose number starts with it (702.19)
+ *      GET /glossary/trample              the glossary entry with that title (ignoring case), or the ones containing it
+ *      GET /health                        status and the number of documents
+ *  One engine is built at start and shared by every request, searches read its immutable index without copying
+ *  anything. Requests are read by a fixed pool of request threads, and at most `workers` of them search at the same
+ *  time. The timeout of a search starts when its request arrives: the time it waited for a request thread and for a
+ *  free worker is counted against it, and a search which has no worker when its timeout is over gets 503. A search
+ *  which runs longer than what is left of the timeout is cancelled through its CancellationToken and gets 504.
+ *
+ *  Usage: SearchServer raw-resource-folder [port] [workers] [timeout-ms]
+ */
+public final class SearchServer {
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_LIMIT = 20;
+
+    /* time at which the dispatcher handed the request of this request thread over, see arrivalNanos() */
+    private static final ThreadLocal<Long> ARRIVAL = new ThreadLocal<>();
+
+    private final SearchEngine searchEngine;
+    private final HttpServer server;
+    private final ExecutorService requestThreads;
+    private final Semaphore workers;
+    private final ScheduledExecutorService timeouts;
+    private final long timeoutMillis;
+
+    /***
+     * @param searchEngine the shared engine
+     * @param port port to listen on (0 picks a free one, see getPort())
+     * @param workerCount number of searches running at the same time
+     * @param requestThreadCount number of threads reading requests (searches waiting for a worker included)
+     * @param timeoutMillis maximum time of a search, waiting for a request thread and for a worker included
+     */
+    public SearchServer(SearchEngine searchEngine, int port, int workerCount, int requestThreadCount, long timeoutMillis) throws IOException {
+        this.searchEngine = searchEngine;
+        this.timeoutMillis = timeoutMillis;
+        this.workers = new Semaphore(workerCount, true);
+        this.requestThreads = Executors.newFixedThreadPool(requestThreadCount);
+        this.timeouts = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-timeouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.setExecutor(exchange -> {
+            long arrival = System.nanoTime();
+            requestThreads.execute(() -> {
+                ARRIVAL.set(arrival);
+                try {
+                    exchange.run();
+                } finally {
+                    ARRIVAL.remove();
+                }
+            });
+        });
+        this.server.createContext("/search", admitted(this::search));
+        this.server.createContext("/rules/", admitted(this::rules));
+        this.server.createContext("/glossary/", admitted(this::glossary));
+        this.server.createContext("/health", admitted(this::health));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: SearchServer raw-resource-folder [port] [workers] [timeout-ms]");
+            System.exit(2);
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        int workerCount = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        long timeoutMillis = args.length > 3 ? Long.parseLong(args[3]) : 2000;
+
+        SearchServer searchServer = new SearchServer(Corpus.load(new File(args[0])), port, workerCount, workerCount * 8, timeoutMillis);
+        searchServer.start();
+        System.out.println("Serving " + searchServer.searchEngine.getIndex().documentCount() + " rules on port " + searchServer.getPort());
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /***
+     *  Stops accepting requests, waits at most a second for the running ones and stops the request threads
+     */
+    public void stop() {
+        server.stop(1);
+        requestThreads.shutdownNow();
+        timeouts.shutdownNow();
+    }
+
+    /** HANDLERS **/
+
+    /***
+     *  Wraps a handler with the method check and the error responses
+     */
+    private HttpHandler admitted(HttpHandler handler) {
+        return exchange -> {
+            try {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    respond(exchange, 405, error("only GET is supported"));
+                } else {
+                    handler.handle(exchange);
+                }
+            } catch (RuntimeException e) {
+                respond(exchange, 500, error(String.valueOf(e.getMessage())));
+            } finally {
+                exchange.close();
+            }
+        };
+    }
+
+    private void search(HttpExchange exchange) throws IOException {
+        String question = parameter(exchange, "q");
+        if (question == null || question.trim().isEmpty()) {
+            respond(exchange, 400, error("missing parameter q"));
+            return;
+        }
+        int limit = DEFAULT_LIMIT;
+        String limitParameter = parameter(exchange, "limit");
+        if (limitParameter != null) {
+            try {
+                limit = Integer.parseInt(limitParameter);
+            } catch (NumberFormatException e) {
+                respond(exchange, 400, error("limit is not a number"));
+                return;
+            }
+        }
+
+        long start = arrivalNanos();
+        try {
+            long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (waitedMillis >= timeoutMillis) {
+                respond(exchange, 503, error("waited " + waitedMillis + " ms for a request thread"));
+                return;
+            }
+            if (!workers.tryAcquire(timeoutMillis - waitedMillis, TimeUnit.MILLISECONDS)) {
+                respond(exchange, 503, error("no free worker within " + timeoutMillis + " ms"));
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, error("the server is stopping"));
+            return;
+        }
+
+        ArrayList<Document> results;
+        FacetCounts facets = new FacetCounts();
+        try {
+            long remainingMillis = Math.max(0, timeoutMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            CancellationToken cancellation = new CancellationToken();
+            ScheduledFuture<?> timeout = timeouts.schedule(cancellation::cancel, remainingMillis, TimeUnit.MILLISECONDS);
+            try {
+                results = searchEngine.retrieval(question, cancellation, facets);
+            } finally {
+                timeout.cancel(false);
+            }
+        } catch (CancellationException e) {
+            respond(exchange, 504, error("the search took longer than " + timeoutMillis + " ms"));
+            return;
+        } finally {
+            workers.release();
+        }
+        long tookNanos = System.nanoTime() - start;
+
+        IndexSnapshot index = searchEngine.getIndex();
+        StringBuilder json = new StringBuilder();
+        json.append("{\"query\":").append(quote(question))
+                .append(",\"tookMs\":").append(String.format(Locale.ROOT, "%.3f", tookNanos / 1e6))
+                .append(",\"results\":[");
+        if (results != null) {
+            for (int i = 0; i < Math.min(limit, results.size()); i++) {
+                Document document = results.get(i);
+                if (i > 0) json.append(',');
+                appendDocument(json, document, index.getDocuments().get(document.getTitle()) == document ? "rule" : "glossary");
+            }
+        }
+        json.append("],\"matches\":").append(facets.getTotal());
+        appendFacets(json, "chapters", facets.getChapters());
+        appendFacets(json, "sections", facets.getSections());
+        json.append('}');
+        respond(exchange, 200, json.toString());
+    }
+
+    private static void appendFacets(StringBuilder json, String name, List<FacetCounts.Facet> facets) {
+        json.append(",\"").append(name).append("\":[");
+        for (int i = 0; i < facets.size(); i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"part\":").append(facets.get(i).getPart()).append(",\"count\":").append(facets.get(i).getCount()).append('}');
+        }
+        json.append(']');
+    }
+
+    private void rules(HttpExchange exchange) throws IOException {
+        String number = pathTail(exchange, "/rules/");
+        IndexSnapshot index = searchEngine.getIndex();
+        ArrayList<Document> rules = new ArrayList<>();
+        Document exact = index.getDocuments().get(number);
+        if (exact != null) {
+            rules.add(exact);
+        } else if (!number.isEmpty()) {
+            for (Document document : index.getDocumentsById()) {
+                if (document.getTitle().startsWith(number)) rules.add(document);
+            }
+        }
+        if (rules.isEmpty()) {
+            respond(exchange, 404, error("no rule " + number));
+            return;
+        }
+        StringBuilder json = new StringBuilder("{\"rules\":[");
+        for (int i = 0; i < rules.size(); i++) {
+            if (i > 0) json.append(',');
+            appendDocument(json, rules.get(i), "rule");
+        }
+        json.append("]}");
+        respond(exchange, 200, json.toString());
+    }
+
+    private void glossary(HttpExchange exchange) throws IOException {
+        String word = pathTail(exchange, "/glossary/").toLowerCase(Locale.ROOT);
+        List<GloassaryData> glossaries = searchEngine.getIndex().getGlossaries();
+        ArrayList<GloassaryData> entries = new ArrayList<>();
+        for (GloassaryData gloassaryData : glossaries) {
+            if (gloassaryData.getTitle().toLowerCase(Locale.ROOT).equals(word)) entries.add(gloassaryData);
+        }
+        if (entries.isEmpty() && !word.isEmpty()) {
+            for (GloassaryData gloassaryData : glossaries) {
+                if (gloassaryData.getTitle().toLowerCase(Locale.ROOT).contains(word)) entries.add(gloassaryData);
+            }
+        }
+        if (entries.isEmpty()) {
+            respond(exchange, 404, error("no glossary entry " + word));
+            return;
+        }
+        StringBuilder json = new StringBuilder("{\"glossary\":[");
+        for (int i = 0; i < entries.size(); i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"title\":").append(quote(entries.get(i).getTitle()))
+                    .append(",\"text\":").append(quote(entries.get(i).getText())).append('}');
+        }
+        json.append("]}");
+        respond(exchange, 200, json.toString());
+    }
+
+    private void health(HttpExchange exchange) throws IOException {
+        respond(exchange, 200, "{\"status\":\"ok\",\"documents\":" + searchEngine.getIndex().documentCount() + "}");
+    }
+
+    /** JSON & HTTP HELPERS **/
+
+    /***
+     *  Arrival time of the request of the current request thread, in System.nanoTime(): requests wait in the queue of
+     *  the request threads when all of them are busy, and this wait is part of their timeout
+     */
+    private static long arrivalNanos() {
+        Long arrival = ARRIVAL.get();
+        return arrival != null ? arrival : System.nanoTime();
+    }
+
+    private static void appendDocument(StringBuilder json, Document document, String type) {
+        json.append("{\"type\":").append(quote(type))
+                .append(",\"title\":").append(quote(document.getTitle()))
+                .append(",\"text\":").append(quote(document.getText()))
+                .append(",\"examples\":[");
+        for (int i = 0; i < document.getExamples().size(); i++) {
+            if (i > 0) json.append(',');
+            json.append(quote(document.getExamples().get(i)));
+        }
+        json.append("]}");
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    /***
+     *  JSON string literal of a text, null as null
+     */
+    static String quote(String text) {
+        if (text == null) return "null";
+        StringBuilder builder = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': builder.append("\\\""); break;
+                case '\\': builder.append("\\\\"); break;
+                case '\n': builder.append("\\n"); break;
+                case '\r': builder.append("\\r"); break;
+                case '\t': builder.append("\\t"); break;
+                default:
+                    if (c < 0x20) builder.append(String.format("\\u%04x", (int) c));
+                    else builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    private static String parameter(HttpExchange exchange, String name) throws UnsupportedEncodingException {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return null;
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String key = equals < 0 ? pair : pair.substring(0, equals);
+            if (URLDecoder.decode(key, "UTF-8").equals(name)) {
+                return equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+            }
+        }
+        return null;
+    }
+
+    private static String pathTail(HttpExchange exchange, String context) {
+        String path = exchange.getRequestURI().getPath();
+        return path.length() > context.length() ? path.substring(context.length()).trim() : "";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    /** GETTERS & SETTERS **/
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    public SearchEngine getSearchEngine() {
+        return searchEngine;
+    }
+}
@@ -0,0 +1,167 @@
+package com.mtgcre.tools;
+
+import com.mtgcre.Document;
+import com.mtgcre.SearchEngine;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/***
+ *  Runs the server on a free localhost port against the real rules corpus
+ */
+public class SearchServerTest {
+
+    private static SearchEngine searchEngine;
+    private static SearchServer server;
+
+    @BeforeClass
+    public static void startServer() throws IOException {
+        searchEngine = Corpus.load(new File("../app/src/main/res/raw"));
+        server = new SearchServer(searchEngine, 0, 4, 16, 5000);
+        server.start();
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void searchReturnsTheEngineResultsInOrder() throws IOException {
+        String question = "deathtouch trample damage";
+        Response response = get(server, "/search?q=" + URLEncoder.encode(question, "UTF-8") + "&limit=5");
+        assertEquals(200, response.status);
+
+        ArrayList<Document> expected = searchEngine.retrieval(question);
+        int position = 0;
+        for (int i = 0; i < 5; i++) {
+            int next = response.body.indexOf("\"title\":\"" + expected.get(i).getTitle() + "\"", position);
+            assertTrue("missing or out of order: " + expected.get(i).getTitle(), next > position);
+            position = next;
+        }
+        assertTrue(response.body.indexOf("\"title\":\"" + expected.get(5).getTitle() + "\"") < 0);
+    }
+
+    @Test
+    public void lookupsByRuleNumberAndGlossaryTitle() throws IOException {
+        Response rule = get(server, "/rules/702.19b");
+        assertEquals(200, rule.status);
+        assertTrue(rule.body.contains("\"title\":\"702.19b\""));
+
+        Response subrules = get(server, "/rules/702.19");
+        assertEquals(200, subrules.status);
+        assertTrue(subrules.body.contains("\"title\":\"702.19a\"") && subrules.body.contains("\"title\":\"702.19c\""));
+
+        assertEquals(404, get(server, "/rules/999.99z").status);
+        assertEquals(200, get(server, "/glossary/Trample").status);
+        assertEquals(400, get(server, "/search").status);
+    }
+
+    @Test
+    public void concurrentClientsGetTheSameResults() throws Exception {
+        String path = "/search?q=" + URLEncoder.encode("can I block a creature with flying", "UTF-8");
+        String expected = withoutTiming(get(server, path).body);
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> responses = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                responses.add(clients.submit((Callable<String>) () -> {
+                    Response response = get(server, path);
+                    assertEquals(200, response.status);
+                    return withoutTiming(response.body);
+                }));
+            }
+            for (Future<String> response : responses) {
+                assertEquals(expected, response.get());
+            }
+        } finally {
+            clients.shutdown();
+        }
+    }
+
+    @Test
+    public void searchesWithoutAFreeWorkerAreRejected() throws IOException {
+        SearchServer busy = new SearchServer(searchEngine, 0, 0, 2, 50);
+        busy.start();
+        try {
+            assertEquals(503, get(busy, "/search?q=trample").status);
+            assertEquals(200, get(busy, "/health").status);
+        } finally {
+            busy.stop();
+        }
+    }
+
+    @Test
+    public void searchesWaitingForARequestThreadTimeOut() throws Exception {
+        SearchServer busy = new SearchServer(searchEngine, 0, 1, 1, 100);
+        busy.start();
+        ExecutorService clients = Executors.newSingleThreadExecutor();
+        try (Socket slow = new Socket("localhost", busy.getPort())) {
+            /* the only request thread reads the headers of a request which never ends, the search waits behind it */
+            OutputStream output = slow.getOutputStream();
+            output.write("GET /health HTTP/1.1\r\n".getBytes(StandardCharsets.US_ASCII));
+            output.flush();
+            Thread.sleep(100);
+            Future<Response> search = clients.submit(() -> get(busy, "/search?q=trample"));
+            Thread.sleep(300);
+            output.write("Host: localhost\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            output.flush();
+
+            Response response = search.get();
+            assertEquals(503, response.status);
+            assertTrue(response.body, response.body.contains("request thread"));
+        } finally {
+            clients.shutdown();
+            busy.stop();
+        }
+    }
+
+    private static String withoutTiming(String body) {
+        return body.replaceAll("\"tookMs\":[0-9.]+", "");
+    }
+
+    private static final class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private static Response get(SearchServer server, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+        try {
+            int status = connection.getResponseCode();
+            InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read; input != null && (read = input.read(buffer)) > 0; ) body.write(buffer, 0, read);
+            return new Response(status, new String(body.toByteArray(), StandardCharsets.UTF_8));
+        } finally {
+            connection.disconnect();
+        }
+    }
+}